@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Round trip of a fixture command to an in-process fake agent on a loopback
+ * socket. The difference between the fixture and the session benchmark is
+ * the overhead of the fixture around the transport.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AgentRoundTripBenchmark {
+
+	@Param({ "text", "binary", "legacy" })
+	private String protocol;
+
+	private FakeSwtBotAgent agent;
+	private SwtBotFixture fixture;
+	private AgentSession session;
+	private AgentCommand command;
+
+	/**
+	 * Starts the fake agent and connects fixture and session.
+	 *
+	 * @throws IOException
+	 *             on opening the agent socket.
+	 */
+	@Setup
+	public void setUp() throws IOException {
+		agent = new FakeSwtBotAgent(!"legacy".equals(protocol));
+		if ("binary".equals(protocol)) {
+			agent.announce(BinaryAgentCodec.CAPABILITY);
+		}
+		fixture = new SwtBotFixture();
+		fixture.setAgentPort(Integer.toString(agent.getPort()));
+		session = new AgentSession("localhost", agent.getPort());
+		command = new AgentCommand("setTextById", "ID::name", "some text; with delimiter");
+	}
+
+	/**
+	 * Stops the fake agent.
+	 *
+	 * @throws IOException
+	 *             on closing the agent socket.
+	 */
+	@TearDown
+	public void tearDown() throws IOException {
+		session.close();
+		agent.close();
+	}
+
+	/**
+	 *
+	 * @return the result of a fixture command including locator resolution,
+	 *         logging and phase timing.
+	 */
+	@Benchmark
+	public boolean fixtureCommand() {
+		return fixture.setTextById("ID::name", "some text; with delimiter");
+	}
+
+	/**
+	 *
+	 * @return the reply of the agent to a command sent by the session only.
+	 * @throws IOException
+	 *             if the agent is not reachable.
+	 */
+	@Benchmark
+	public AgentResponse sessionSend() throws IOException {
+		return session.send(command, null);
+	}
+
+}
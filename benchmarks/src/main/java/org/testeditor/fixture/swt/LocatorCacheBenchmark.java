@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.testeditor.fixture.core.elementlist.ElementListService;
+import org.testeditor.fixture.core.exceptions.ElementKeyNotFoundException;
+
+/**
+ * Resolution of element keys by the {@link LocatorCache}, warmed up with the
+ * keys of the benchmarks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LocatorCacheBenchmark {
+
+	private static final int KEYS = 500;
+
+	private LocatorCache cache;
+
+	/**
+	 * Creates the cache with an element list of {@value #KEYS} keys and looks
+	 * up the keys of the benchmarks once.
+	 */
+	@Setup
+	public void setUp() {
+		cache = new LocatorCache(new ElementListService() {
+			@Override
+			public String getValue(String key) throws ElementKeyNotFoundException {
+				if (key.startsWith("element")) {
+					return "ID::" + key;
+				}
+				throw new ElementKeyNotFoundException(key);
+			}
+		});
+		for (int i = 0; i < KEYS; i++) {
+			cache.getLocator("element" + i);
+		}
+		cache.getLocator("unknownElement");
+	}
+
+	/**
+	 *
+	 * @return the locator of a key found in the element list.
+	 */
+	@Benchmark
+	public String hit() {
+		return cache.getLocator("element250");
+	}
+
+	/**
+	 *
+	 * @return the key itself, it is missing in the element list.
+	 */
+	@Benchmark
+	public String miss() {
+		return cache.getLocator("unknownElement");
+	}
+
+	/**
+	 *
+	 * @return a literal locator passed through without lookup.
+	 */
+	@Benchmark
+	public String literal() {
+		return cache.getLocator("ID::okButton");
+	}
+
+}
@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Workspace work of the fixture: the reset of the AUT workspace by
+ * {@link SwtBotFixture#prepareAUTWorkspace()} before each launch and the
+ * source lines read by <code>checkTextInCodeLine</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WorkspaceBenchmark {
+
+	private static final int SOURCE_LINES = 2000;
+
+	private final SwtBotFixture fixture = new SwtBotFixture();
+	private final WorkspaceFileOperations fileOperations = new WorkspaceFileOperations();
+	private Path workspace;
+	private Path source;
+	private WorkspaceFileCache cache;
+
+	/**
+	 * Creates the workspace and a source file of {@value #SOURCE_LINES} lines.
+	 *
+	 * @throws IOException
+	 *             on writing the files.
+	 */
+	@Setup
+	public void setUp() throws IOException {
+		workspace = Files.createTempDirectory("benchmark-workspace");
+		fixture.setWorkspacePath(workspace.toString());
+		fixture.prepareAUTWorkspace();
+		List<String> lines = new ArrayList<String>();
+		for (int i = 0; i < SOURCE_LINES; i++) {
+			lines.add("|click button|okButton" + i + "|");
+		}
+		// outside of the workspace, the reset would remove it
+		source = Files.createTempDirectory("benchmark-sources").resolve("content.txt");
+		Files.write(source, lines, Charset.forName("UTF-8"));
+		// older than the timestamp granularity, so the cache trusts it
+		Files.setLastModifiedTime(source, FileTime.fromMillis(System.currentTimeMillis() - 60000));
+		cache = new WorkspaceFileCache();
+	}
+
+	/**
+	 * Removes the workspace and the source file.
+	 *
+	 * @throws IOException
+	 *             on deleting the files.
+	 */
+	@TearDown
+	public void tearDown() throws IOException {
+		fileOperations.delete(workspace);
+		fileOperations.delete(source.getParent());
+	}
+
+	/**
+	 * Resets the workspace, no file is restored as it is unchanged.
+	 *
+	 * @throws IOException
+	 *             on reading the workspace.
+	 */
+	@Benchmark
+	public void prepareUnchangedWorkspace() throws IOException {
+		fixture.prepareAUTWorkspace();
+	}
+
+	/**
+	 *
+	 * @return a line of the source, served from the cache.
+	 * @throws IOException
+	 *             on reading the file.
+	 */
+	@Benchmark
+	public String sourceLineCached() throws IOException {
+		return cache.get(source).getLine(SOURCE_LINES / 2);
+	}
+
+	/**
+	 *
+	 * @return a line of the source, read and indexed again.
+	 * @throws IOException
+	 *             on reading the file.
+	 */
+	@Benchmark
+	public String sourceLineUncached() throws IOException {
+		cache.invalidate(source);
+		return cache.get(source).getLine(SOURCE_LINES / 2);
+	}
+
+	/**
+	 * Workspace with one file removed before each reset.
+	 */
+	@State(Scope.Benchmark)
+	public static class ChangedWorkspace {
+
+		private Path workspace;
+		private final SwtBotFixture fixture = new SwtBotFixture();
+
+		/**
+		 * Creates the workspace.
+		 *
+		 * @throws IOException
+		 *             on writing the files.
+		 */
+		@Setup(Level.Trial)
+		public void setUp() throws IOException {
+			workspace = Files.createTempDirectory("benchmark-changed-workspace");
+			fixture.setWorkspacePath(workspace.toString());
+			fixture.prepareAUTWorkspace();
+		}
+
+		/**
+		 * Changes the workspace like a test does.
+		 *
+		 * @throws IOException
+		 *             on writing the files.
+		 */
+		@Setup(Level.Invocation)
+		public void change() throws IOException {
+			Files.write(workspace.resolve("created-by-test.txt"), new byte[] { 1 });
+		}
+
+		/**
+		 * Removes the workspace.
+		 *
+		 * @throws IOException
+		 *             on deleting the files.
+		 */
+		@TearDown(Level.Trial)
+		public void tearDown() throws IOException {
+			new WorkspaceFileOperations().delete(workspace);
+		}
+	}
+
+	/**
+	 * Resets the workspace and removes the file added by the test.
+	 *
+	 * @param changed
+	 *            workspace with a file added by the test.
+	 * @throws IOException
+	 *             on resetting the workspace.
+	 */
+	@Benchmark
+	public void prepareChangedWorkspace(ChangedWorkspace changed) throws IOException {
+		changed.fixture.prepareAUTWorkspace();
+	}
+
+}
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.testeditor.fixture.swt.SwtBotFixture;
+
+/**
+ * Performance logging of the fixture: the label built for every invoked
+ * fixture method and the files written at the end of each test.
+ */
+@BenchmarkMode(Mode.AverageTime)
+public class PerformanceLogBenchmark {
+
+	/**
+	 * Arguments of a fixture method.
+	 */
+	@State(Scope.Benchmark)
+	public static class Invocation {
+
+		private Method method;
+		private Object[] scalarArguments = { "ID::okButton", 42 };
+		private Object[] arrayArguments = { new String[] { "node1", "node2", "node3" }, "value" };
+
+		/**
+		 * Looks up the method.
+		 *
+		 * @throws NoSuchMethodException
+		 *             if the fixture changed.
+		 */
+		@Setup
+		public void setUp() throws NoSuchMethodException {
+			method = SwtBotFixture.class.getMethod("setTextById", String.class, String.class);
+		}
+	}
+
+	/**
+	 * Performance files of a suite with a number of tests logged before.
+	 */
+	@State(Scope.Benchmark)
+	public static class SuiteLog {
+
+		@Param({ "10", "100", "1000" })
+		private int loggedTests;
+
+		private Path directory;
+		private File template;
+		private PerformanceLogHandler handler;
+		private Map<String, LatencyHistogram> commands = new HashMap<String, LatencyHistogram>();
+
+		/**
+		 * Writes the performance files of the previous tests.
+		 *
+		 * @throws IOException
+		 *             on creating the directory.
+		 */
+		@Setup(Level.Trial)
+		public void setUp() throws IOException {
+			for (String command : new String[] { "clickButton", "setTextById", "compareTextById", "waitSeconds" }) {
+				LatencyHistogram histogram = new LatencyHistogram();
+				for (int i = 1; i <= 20; i++) {
+					histogram.record(i * 250000L);
+				}
+				commands.put(command, histogram);
+			}
+			directory = Files.createTempDirectory("benchmark-performance-log");
+			handler = new PerformanceLogHandler();
+			handler.jmonFile = directory.resolve("jamonReport.html").toFile();
+			handler.jmonRecords = directory.resolve("jamonReport.tsv").toFile();
+			handler.summaryFile = directory.resolve("performanceSummary.json").toFile();
+			template = directory.resolve("plotInputTemplate.xml").toFile();
+			handler.setFile(template);
+			for (int i = 0; i < loggedTests; i++) {
+				handler.logPerformanceData("Suite.Test" + i, commands);
+			}
+			handler.setFile(directory.resolve("plotInput.xml").toFile());
+		}
+
+		/**
+		 * Resets the plot file to the tests logged before.
+		 *
+		 * @throws IOException
+		 *             on copying the file.
+		 */
+		@Setup(Level.Invocation)
+		public void reset() throws IOException {
+			Files.copy(template.toPath(), directory.resolve("plotInput.xml"), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 *
+	 * @param invocation
+	 *            method and arguments.
+	 * @return the label of a method with scalar arguments.
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public String getLabel(Invocation invocation) {
+		return PerformanceLogHandler.getLabel(invocation.method, invocation.scalarArguments);
+	}
+
+	/**
+	 *
+	 * @param invocation
+	 *            method and arguments.
+	 * @return the label of a method with an array argument.
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public String getLabelWithArray(Invocation invocation) {
+		return PerformanceLogHandler.getLabel(invocation.method, invocation.arrayArguments);
+	}
+
+	/**
+	 *
+	 * @param invocation
+	 *            method and arguments.
+	 * @return the formatted array argument.
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public String formatArg(Invocation invocation) {
+		return PerformanceLogHandler.formatArg(invocation.arrayArguments[0]);
+	}
+
+	/**
+	 * Logs one more test to the performance files of the suite.
+	 *
+	 * @param suite
+	 *            the performance files.
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public void logPerformanceData(SuiteLog suite) {
+		suite.handler.logPerformanceData("Suite.NewTest", suite.commands);
+	}
+
+}
@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Encoding of commands and replies on a framed connection to the agent.
+ */
+interface AgentCodec {
+
+	/**
+	 * Writes the command as one frame without flushing it.
+	 *
+	 * @param out
+	 *            buffered stream of the connection.
+	 * @param command
+	 *            to be send.
+	 * @throws IOException
+	 *             on socket errors.
+	 */
+	void writeRequest(OutputStream out, AgentCommand command) throws IOException;
+
+	/**
+	 * Reads one reply frame.
+	 *
+	 * @param in
+	 *            buffered stream of the connection.
+	 * @param reader
+	 *            decoding the payload.
+	 * @param sink
+	 *            receiving the payload of the reply or null.
+	 * @return the reply.
+	 * @throws IOException
+	 *             on socket errors, invalid frames or if the agent closed the
+	 *             connection.
+	 */
+	AgentResponse readReply(InputStream in, AgentResponseReader reader, OutputStream sink) throws IOException;
+
+}
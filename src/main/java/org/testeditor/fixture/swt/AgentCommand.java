@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A command for the SWTBot agent with its arguments. The arguments are kept
+ * apart until the codec of the connection encodes them, so the binary codec
+ * can transmit arguments containing the delimiter of the text format.
+ */
+public class AgentCommand {
+
+	/** Delimiter between command and arguments in the text format. */
+	public static final String DELIMITER = ";";
+
+	private static final Set<String> QUERIES = new HashSet<String>(Arrays.asList("checkDropDownContains",
+			"checkRowNumberOfTable", "checkTableIfInColumnAndRowContains", "checkTableIfInColumnContainsInAllRows",
+			"checkTextExistInWidgets", "checkTextForAllWidgets", "compareLabelById", "compareTextById",
+			"compareTextInStyledById", "countChildrenEquals", "countItemsEquals", "countProjectsEquals",
+			"isButtonEnabled", "isCheckBoxChecked", "isCheckBoxEnabled", "isLaunched", "readAllProjectsInTree", "textIsVisible",
+			"analyzeWidgets", "waitUntil", "waitUntilUiIdle"));
+
+	private final String name;
+	private final List<String> arguments;
+
+	/**
+	 *
+	 * @param name
+	 *            of the agent command.
+	 * @param arguments
+	 *            of the command, converted with {@link String#valueOf(Object)}
+	 *            .
+	 */
+	public AgentCommand(String name, Object... arguments) {
+		this.name = name;
+		String[] values = new String[arguments.length];
+		for (int i = 0; i < arguments.length; i++) {
+			values[i] = String.valueOf(arguments[i]);
+		}
+		this.arguments = Collections.unmodifiableList(Arrays.asList(values));
+	}
+
+	/**
+	 * Splits a message of the text format into command and arguments.
+	 *
+	 * @param message
+	 *            command and arguments separated by {@link #DELIMITER}.
+	 * @return the command.
+	 */
+	public static AgentCommand parse(String message) {
+		String[] parts = message.split(DELIMITER, -1);
+		return new AgentCommand(parts[0], (Object[]) Arrays.copyOfRange(parts, 1, parts.length));
+	}
+
+	/**
+	 *
+	 * @return name of the agent command.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 *
+	 * @return the arguments of the command.
+	 */
+	public List<String> getArguments() {
+		return arguments;
+	}
+
+	/**
+	 *
+	 * @return true if the command only reads the state of the AUT, so sending
+	 *         it twice has no side effect.
+	 */
+	public boolean isQuery() {
+		return QUERIES.contains(name);
+	}
+
+	/**
+	 *
+	 * @return the command in the text format of the agent.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder message = new StringBuilder(name);
+		for (String argument : arguments) {
+			message.append(DELIMITER).append(argument);
+		}
+		return message.toString();
+	}
+
+}
@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.Charset;
+
+import org.apache.log4j.Logger;
+
+/**
+ * One open socket to the SWTBot agent speaking the framed protocol of the
+ * {@link AgentSession}. Frames are encoded by the codec negotiated in the
+ * handshake, the text format until then.
+ */
+class AgentConnection {
+
+	/**
+	 * How far the last exchange got before it ended or failed.
+	 */
+	enum Progress {
+		/** The command was not written completely. */
+		NOT_WRITTEN,
+		/** The command was written, but no byte of the reply was read. */
+		WRITTEN,
+		/** The reply was at least partially read. */
+		REPLY_STARTED
+	}
+
+	private static final Logger LOGGER = Logger.getLogger(AgentConnection.class);
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final int MAX_LINE_LENGTH = 4096;
+
+	private final Socket socket;
+	private final InputStream in;
+	private final OutputStream out;
+	private final AgentResponseReader reader = new AgentResponseReader();
+	private AgentCodec codec = TextAgentCodec.INSTANCE;
+	private Progress progress = Progress.NOT_WRITTEN;
+
+	/**
+	 *
+	 * @param socket
+	 *            connected to the agent.
+	 * @throws IOException
+	 *             on opening the streams of the socket.
+	 */
+	AgentConnection(Socket socket) throws IOException {
+		this.socket = socket;
+		socket.setTcpNoDelay(true);
+		in = new BufferedInputStream(socket.getInputStream());
+		out = new BufferedOutputStream(socket.getOutputStream());
+	}
+
+	/**
+	 * Sends the handshake line and reads the answer line.
+	 *
+	 * @param handshake
+	 *            line without line break.
+	 * @return the answer or null if the agent closed the connection.
+	 * @throws IOException
+	 *             on socket errors.
+	 */
+	String handshake(String handshake) throws IOException {
+		out.write((handshake + "\n").getBytes(UTF_8));
+		out.flush();
+		return readLine();
+	}
+
+	/**
+	 * Selects the format of the following frames.
+	 *
+	 * @param codec
+	 *            negotiated in the handshake.
+	 */
+	void setCodec(AgentCodec codec) {
+		this.codec = codec;
+	}
+
+	/**
+	 * Writes the command as one frame and reads the reply frame.
+	 *
+	 * @param command
+	 *            to be send.
+	 * @param sink
+	 *            receiving the payload of the reply or null.
+	 * @return the reply.
+	 * @throws IOException
+	 *             on socket errors or if the agent closed the connection.
+	 */
+	AgentResponse exchange(AgentCommand command, OutputStream sink) throws IOException {
+		long start = System.nanoTime();
+		progress = Progress.NOT_WRITTEN;
+		writeFrame(command);
+		flush();
+		progress = Progress.WRITTEN;
+		long written = System.nanoTime();
+		in.mark(1);
+		if (in.read() == -1) {
+			throw new IOException("Agent closed the connection without reply.");
+		}
+		in.reset();
+		progress = Progress.REPLY_STARTED;
+		AgentResponse reply = readFrame(sink);
+		reply.setTimings(0, written - start, System.nanoTime() - written);
+		return reply;
+	}
+
+	/**
+	 *
+	 * @return how far the last {@link #exchange(AgentCommand, OutputStream)}
+	 *         got.
+	 */
+	Progress getProgress() {
+		return progress;
+	}
+
+	/**
+	 * Flushes all written frames to the agent.
+	 *
+	 * @throws IOException
+	 *             on socket errors.
+	 */
+	void flush() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * Writes the command as one frame without flushing it.
+	 *
+	 * @param command
+	 *            to be send.
+	 * @throws IOException
+	 *             on socket errors.
+	 */
+	void writeFrame(AgentCommand command) throws IOException {
+		codec.writeRequest(out, command);
+	}
+
+	/**
+	 * Reads one reply frame.
+	 *
+	 * @param sink
+	 *            receiving the payload of the frame or null.
+	 * @return the reply.
+	 * @throws IOException
+	 *             on socket errors or if the agent closed the connection.
+	 */
+	AgentResponse readFrame(OutputStream sink) throws IOException {
+		return codec.readReply(in, reader, sink);
+	}
+
+	/**
+	 * Reads a line terminated by <code>\n</code>.
+	 *
+	 * @return the line without the line break or null on end of stream.
+	 * @throws IOException
+	 *             on socket errors or too long lines.
+	 */
+	private String readLine() throws IOException {
+		StringBuilder line = new StringBuilder();
+		int c;
+		while ((c = in.read()) != -1) {
+			if (c == '\n') {
+				return line.toString();
+			}
+			if (c != '\r') {
+				line.append((char) c);
+			}
+			if (line.length() > MAX_LINE_LENGTH) {
+				throw new IOException("Line from agent exceeds the line limit.");
+			}
+		}
+		if (line.length() == 0) {
+			return null;
+		}
+		return line.toString();
+	}
+
+	/**
+	 * Closes the socket quietly.
+	 */
+	void close() {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			LOGGER.debug("Error closing agent connection.", e);
+		}
+	}
+
+}
@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import java.nio.charset.Charset;
+
+/**
+ * Outcome of one command sent to the SWTBot agent. The response keeps the
+ * head of the reply as bytes; the message is decoded on first access.
+ */
+public class AgentResponse {
+
+	/** Marker of a failed command in the reply of the agent. */
+	public static final String ERROR_MARKER = "ERROR ";
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final byte[] TRUE = "true".getBytes(UTF_8);
+
+	private final byte[] head;
+	private final int headLength;
+	private final long length;
+	private final boolean error;
+	private String message;
+	private long connectNanos;
+	private long writeNanos;
+	private long readNanos;
+	private long agentNanos = -1;
+
+	/**
+	 *
+	 * @param message
+	 *            the complete reply of the agent.
+	 */
+	public AgentResponse(String message) {
+		this.message = message;
+		head = message.getBytes(UTF_8);
+		headLength = head.length;
+		length = headLength;
+		error = message.indexOf(ERROR_MARKER) > -1;
+	}
+
+	/**
+	 *
+	 * @param head
+	 *            the first bytes of the reply.
+	 * @param headLength
+	 *            number of valid bytes in head.
+	 * @param length
+	 *            number of bytes of the complete reply.
+	 * @param error
+	 *            true if the reply contains the {@link #ERROR_MARKER}.
+	 */
+	AgentResponse(byte[] head, int headLength, long length, boolean error) {
+		this.head = head;
+		this.headLength = headLength;
+		this.length = length;
+		this.error = error;
+	}
+
+	/**
+	 *
+	 * @return true if the agent replied with true.
+	 */
+	public boolean isTrue() {
+		if (headLength < TRUE.length) {
+			return false;
+		}
+		for (int i = 0; i < TRUE.length; i++) {
+			if (head[i] != TRUE[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 *
+	 * @return true if the agent reported an error.
+	 */
+	public boolean isError() {
+		return error;
+	}
+
+	/**
+	 *
+	 * @return number of bytes of the complete reply.
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 *
+	 * @return true if the message contains only the head of the reply.
+	 */
+	public boolean isTruncated() {
+		return length > headLength;
+	}
+
+	/**
+	 * The reply of the agent. A reply longer than the retained head is cut
+	 * after the head and marked with <code>... (N bytes more)</code>, N being
+	 * the number of bytes not retained.
+	 *
+	 * @return the reply of the agent, limited to the retained head.
+	 */
+	public String getMessage() {
+		if (message == null) {
+			message = new String(head, 0, headLength, UTF_8);
+			if (isTruncated()) {
+				message += "... (" + (length - headLength) + " bytes more)";
+			}
+		}
+		return message;
+	}
+
+	/**
+	 *
+	 * @param connect
+	 *            nanoseconds spent opening a connection, 0 for a pooled one.
+	 * @param write
+	 *            nanoseconds spent writing the message.
+	 * @param read
+	 *            nanoseconds from the written message to the complete reply.
+	 */
+	void setTimings(long connect, long write, long read) {
+		connectNanos = connect;
+		writeNanos = write;
+		readNanos = read;
+	}
+
+	/**
+	 *
+	 * @param nanos
+	 *            execution time reported by the agent.
+	 */
+	void setAgentNanos(long nanos) {
+		agentNanos = nanos;
+	}
+
+	/**
+	 *
+	 * @return nanoseconds spent opening a connection for the message.
+	 */
+	public long getConnectNanos() {
+		return connectNanos;
+	}
+
+	/**
+	 *
+	 * @return nanoseconds spent writing the message.
+	 */
+	public long getWriteNanos() {
+		return writeNanos;
+	}
+
+	/**
+	 *
+	 * @return nanoseconds from the written message to the complete reply,
+	 *         including the execution in the agent.
+	 */
+	public long getReadNanos() {
+		return readNanos;
+	}
+
+	/**
+	 *
+	 * @return execution time of the command reported by the agent in
+	 *         nanoseconds or -1 if the agent didn't report it.
+	 */
+	public long getAgentNanos() {
+		return agentNanos;
+	}
+
+	@Override
+	public String toString() {
+		return getMessage();
+	}
+
+}
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.testeditor.util.LogOutputStream;
+
+/**
+ * Decodes replies of the SWTBot agent with reusable bulk and head buffers.
+ * Only the head of a reply is copied into the {@link AgentResponse}; the
+ * status is taken
+ * from the bytes and the complete body can be streamed to a sink. An instance
+ * must not be used by two threads at the same time.
+ */
+public class AgentResponseReader {
+
+	/** Number of reply bytes kept in the {@link AgentResponse} by default. */
+	public static final int DEFAULT_RETAINED_BYTES = 8192;
+
+	private static final Logger LOGGER = Logger.getLogger(AgentResponseReader.class);
+	private static final byte[] ERROR_PATTERN = AgentResponse.ERROR_MARKER.getBytes(Charset.forName("US-ASCII"));
+	private static final int BUFFER_SIZE = 8192;
+
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private final int retainedBytes;
+	private byte[] head;
+	private final OutputStream overflowLog = new LogOutputStream(LOGGER, Level.DEBUG);
+
+	/**
+	 * Creates a reader keeping {@link #DEFAULT_RETAINED_BYTES} of each reply.
+	 */
+	public AgentResponseReader() {
+		this(DEFAULT_RETAINED_BYTES);
+	}
+
+	/**
+	 *
+	 * @param retainedBytes
+	 *            maximum number of reply bytes kept in the response.
+	 */
+	public AgentResponseReader(int retainedBytes) {
+		this.retainedBytes = retainedBytes;
+		head = new byte[Math.min(retainedBytes, BUFFER_SIZE)];
+	}
+
+	/**
+	 * Reads one reply.
+	 *
+	 * @param in
+	 *            the stream of the agent connection.
+	 * @param length
+	 *            number of bytes of the reply or -1 to read to the end of the
+	 *            stream.
+	 * @param sink
+	 *            receiving the complete reply or null. Without a sink the part
+	 *            of the reply exceeding the retained bytes is logged on debug
+	 *            level.
+	 * @return the decoded response.
+	 * @throws IOException
+	 *             on read errors or if the stream ends within a reply of known
+	 *             length.
+	 */
+	public AgentResponse read(InputStream in, long length, OutputStream sink) throws IOException {
+		return read(in, length, sink, false);
+	}
+
+	/**
+	 * Reads one reply whose status is known from the frame.
+	 *
+	 * @param in
+	 *            the stream of the agent connection.
+	 * @param length
+	 *            number of bytes of the reply or -1 to read to the end of the
+	 *            stream.
+	 * @param sink
+	 *            receiving the complete reply or null.
+	 * @param failed
+	 *            true if the frame reports an error, regardless of the
+	 *            {@link AgentResponse#ERROR_MARKER} in the reply.
+	 * @return the decoded response.
+	 * @throws IOException
+	 *             on read errors or if the stream ends within a reply of known
+	 *             length.
+	 */
+	AgentResponse read(InputStream in, long length, OutputStream sink, boolean failed) throws IOException {
+		long expected = length;
+		if (length < 0) {
+			expected = Long.MAX_VALUE;
+		}
+		int headLength = 0;
+		long total = 0;
+		int errorState = 0;
+		boolean error = failed;
+		while (total < expected) {
+			int count = in.read(buffer, 0, (int) Math.min(buffer.length, expected - total));
+			if (count < 0) {
+				if (length < 0) {
+					break;
+				}
+				throw new EOFException("Agent closed the connection within a reply.");
+			}
+			for (int i = 0; i < count && !error; i++) {
+				errorState = nextErrorState(errorState, buffer[i]);
+				error = errorState == ERROR_PATTERN.length;
+			}
+			int retained = Math.min(count, retainedBytes - headLength);
+			if (retained > 0) {
+				if (headLength + retained > head.length) {
+					int grown = Math.max(head.length * 2, headLength + retained);
+					head = Arrays.copyOf(head, Math.min(retainedBytes, grown));
+				}
+				System.arraycopy(buffer, 0, head, headLength, retained);
+				headLength += retained;
+			}
+			if (sink != null) {
+				sink.write(buffer, 0, count);
+			} else if (retained < count) {
+				overflowLog.write(buffer, retained, count - retained);
+			}
+			total += count;
+		}
+		if (sink == null && total > headLength) {
+			overflowLog.close();
+		}
+		return new AgentResponse(Arrays.copyOf(head, headLength), headLength, total, error);
+	}
+
+	/**
+	 * Advances the search for the error marker by one byte. The marker
+	 * contains its first character only once, so a mismatch restarts at that
+	 * character.
+	 *
+	 * @param state
+	 *            number of marker bytes matched so far.
+	 * @param b
+	 *            the next byte.
+	 * @return the new number of matched bytes.
+	 */
+	private int nextErrorState(int state, byte b) {
+		if (b == ERROR_PATTERN[state]) {
+			return state + 1;
+		}
+		if (b == ERROR_PATTERN[0]) {
+			return 1;
+		}
+		return 0;
+	}
+
+}
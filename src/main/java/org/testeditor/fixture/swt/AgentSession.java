@@ -0,0 +1,510 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Long-lived session to the SWTBot agent of the AUT. The session keeps a small
+ * pool of open connections and talks the framed protocol to agents which
+ * accept the framed handshake. Agents without framing support are detected on
+ * the first connect and served in the connect-per-message mode of older
+ * fixture versions.
+ *
+ * <pre>
+ * handshake: setProtocol;framed\n  ->  framed[;capability]*\n
+ * frame:     &lt;byte length&gt;\n&lt;UTF-8 payload&gt;
+ * reply:     &lt;byte length&gt;[;&lt;agent time in microseconds&gt;]\n&lt;UTF-8 payload&gt;
+ * </pre>
+ *
+ * Agents announcing the capability <code>timing</code> report the execution
+ * time of each command in the reply header. With agents announcing
+ * <code>binary1</code> the frames after the handshake use the
+ * {@link BinaryAgentCodec}; the text frames above remain the compatibility
+ * format. Commands sent asynchronously use
+ * a connection of their own, see {@link AsyncCommandChannel}.
+ */
+public class AgentSession {
+
+	/** Handshake line sent on a new connection to request the framed mode. */
+	static final String FRAMED_HANDSHAKE = "setProtocol;framed";
+
+	/** Prefix of the handshake reply of an agent supporting frames. */
+	static final String FRAMED_ACK = "framed";
+
+	private static final Logger LOGGER = Logger.getLogger(AgentSession.class);
+	private static final String CHARSET_UTF_8 = "UTF-8";
+	private static final String CAPABILITY_DELIMITER = ";";
+	private static final int DEFAULT_MAX_CONNECTIONS = 2;
+	private static final int PIPELINE_WINDOW = 32;
+	private static final int ASYNC_WINDOW = 256;
+
+	/**
+	 * Protocol spoken with the agent.
+	 */
+	enum Mode {
+		UNKNOWN, FRAMED, LEGACY
+	}
+
+	private final String host;
+	private final int port;
+	private final int maxIdleConnections;
+	private final BlockingDeque<AgentConnection> idleConnections = new LinkedBlockingDeque<AgentConnection>();
+	private volatile Mode mode = Mode.UNKNOWN;
+	private volatile Set<String> capabilities = Collections.emptySet();
+	private final AgentResponseReader legacyReader = new AgentResponseReader();
+	private AsyncCommandChannel asyncChannel;
+	private final List<String> closedAsyncErrors = new ArrayList<String>();
+	private boolean binaryEnabled = !"false".equals(System.getProperty("aut.agent.binary"));
+
+	/**
+	 * Creates a session using the connection limit of the system property
+	 * <code>aut.agent.connections</code>.
+	 *
+	 * @param host
+	 *            of the agent.
+	 * @param port
+	 *            of the agent.
+	 */
+	public AgentSession(String host, int port) {
+		this(host, port, Integer.getInteger("aut.agent.connections", DEFAULT_MAX_CONNECTIONS));
+	}
+
+	/**
+	 *
+	 * @param host
+	 *            of the agent.
+	 * @param port
+	 *            of the agent.
+	 * @param maxIdleConnections
+	 *            number of connections kept open between two messages.
+	 */
+	public AgentSession(String host, int port, int maxIdleConnections) {
+		this.host = host;
+		this.port = port;
+		this.maxIdleConnections = Math.max(1, maxIdleConnections);
+	}
+
+	/**
+	 * Sends a message to the agent and waits for the reply.
+	 *
+	 * @param message
+	 *            in the format of the agent commands.
+	 * @return the reply of the agent.
+	 * @throws IOException
+	 *             if the agent is not reachable.
+	 */
+	public AgentResponse send(String message) throws IOException {
+		return send(AgentCommand.parse(message), null);
+	}
+
+	/**
+	 * Sends a message to the agent and streams the reply to the sink.
+	 *
+	 * @param message
+	 *            in the format of the agent commands.
+	 * @param sink
+	 *            receiving the complete reply or null.
+	 * @return the reply of the agent.
+	 * @throws IOException
+	 *             if the agent is not reachable.
+	 */
+	public AgentResponse send(String message, OutputStream sink) throws IOException {
+		return send(AgentCommand.parse(message), sink);
+	}
+
+	/**
+	 * Sends a command to the agent and streams the reply to the sink.
+	 *
+	 * @param command
+	 *            the command with its arguments.
+	 * @param sink
+	 *            receiving the complete reply or null to log only the part
+	 *            exceeding the head kept in the response.
+	 * @return the reply of the agent.
+	 * @throws IOException
+	 *             if the agent is not reachable.
+	 */
+	public AgentResponse send(AgentCommand command, OutputStream sink) throws IOException {
+		if (mode == Mode.LEGACY) {
+			return sendWithNewSocket(command, sink);
+		}
+		long start = System.nanoTime();
+		AgentConnection connection = idleConnections.pollFirst();
+		boolean pooled = connection != null;
+		if (!pooled) {
+			connection = openFramedConnection();
+			if (connection == null) {
+				return sendWithNewSocket(command, sink);
+			}
+		}
+		long connected = System.nanoTime();
+		try {
+			AgentResponse reply = connection.exchange(command, sink);
+			reply.setTimings(connected - start, reply.getWriteNanos(), reply.getReadNanos());
+			release(connection);
+			return reply;
+		} catch (IOException e) {
+			connection.close();
+			if (!pooled || !mayResend(connection.getProgress(), command)) {
+				throw e;
+			}
+			// the pooled connection is stale, e.g. after a restart of the AUT.
+			LOGGER.debug("Pooled agent connection lost, reconnecting.", e);
+			closeIdleConnections();
+			return send(command, sink);
+		}
+	}
+
+	/**
+	 *
+	 * @param commands
+	 *            sent to the agent.
+	 * @return true if none of the commands has side effects.
+	 */
+	private boolean areQueries(List<AgentCommand> commands) {
+		for (AgentCommand command : commands) {
+			if (!command.isQuery()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Decides whether a command may be sent again after its connection
+	 * failed. A command written completely may have been executed by the
+	 * agent, so only queries are sent again, and only if no reply was read.
+	 *
+	 * @param progress
+	 *            of the failed exchange.
+	 * @param command
+	 *            the command.
+	 * @return true if sending the command again has no side effect.
+	 */
+	private boolean mayResend(AgentConnection.Progress progress, AgentCommand command) {
+		if (progress == AgentConnection.Progress.NOT_WRITTEN) {
+			return true;
+		}
+		return progress == AgentConnection.Progress.WRITTEN && command.isQuery();
+	}
+
+	/**
+	 * Sends the messages pipelined on one connection. Up to
+	 * <code>PIPELINE_WINDOW</code> queries are written ahead of the replies; a
+	 * command with side effects is written only after the replies to all
+	 * earlier messages were read. So no action is executed after the first
+	 * reply reporting an error, only queries written ahead of it, whose
+	 * replies are dropped.
+	 *
+	 * @param messages
+	 *            in the format of the agent commands.
+	 * @return the replies in the order of the messages, ending with the first
+	 *         error.
+	 * @throws IOException
+	 *             if the agent is not reachable.
+	 */
+	public List<AgentResponse> sendBatch(List<String> messages) throws IOException {
+		List<AgentCommand> commands = new ArrayList<AgentCommand>(messages.size());
+		for (String message : messages) {
+			commands.add(AgentCommand.parse(message));
+		}
+		return sendAll(commands);
+	}
+
+	/**
+	 * Sends the commands pipelined on one connection like
+	 * {@link #sendBatch(List)}.
+	 *
+	 * @param messages
+	 *            the commands with their arguments.
+	 * @return the replies in the order of the commands, ending with the first
+	 *         error.
+	 * @throws IOException
+	 *             if the agent is not reachable.
+	 */
+	public List<AgentResponse> sendAll(List<AgentCommand> messages) throws IOException {
+		List<AgentResponse> replies = new ArrayList<AgentResponse>(messages.size());
+		if (mode == Mode.LEGACY) {
+			for (AgentCommand message : messages) {
+				AgentResponse reply = sendWithNewSocket(message, null);
+				replies.add(reply);
+				if (reply.isError()) {
+					break;
+				}
+			}
+			return replies;
+		}
+		AgentConnection connection = idleConnections.pollFirst();
+		boolean pooled = connection != null;
+		if (!pooled) {
+			connection = openFramedConnection();
+			if (connection == null) {
+				return sendAll(messages);
+			}
+		}
+		int written = 0;
+		int flushed = 0;
+		int read = 0;
+		boolean failed = false;
+		try {
+			while (read < written || !failed && written < messages.size()) {
+				while (!failed && written < messages.size() && written - read < PIPELINE_WINDOW
+						&& (read == written || messages.get(written).isQuery())) {
+					connection.writeFrame(messages.get(written++));
+				}
+				connection.flush();
+				flushed = written;
+				AgentResponse reply = connection.readFrame(null);
+				read++;
+				if (!failed) {
+					replies.add(reply);
+					failed = reply.isError();
+				}
+			}
+			release(connection);
+			return replies;
+		} catch (IOException e) {
+			connection.close();
+			if (!pooled || read > 0 || !areQueries(messages.subList(0, flushed))) {
+				throw e;
+			}
+			LOGGER.debug("Pooled agent connection lost, reconnecting.", e);
+			closeIdleConnections();
+			return sendAll(messages);
+		}
+	}
+
+	/**
+	 * Sends a message on the connection for asynchronous commands without
+	 * waiting for the reply. Failures are collected by
+	 * {@link #awaitAsync()}.
+	 *
+	 * @param command
+	 *            the command with its arguments.
+	 * @return false if the agent doesn't support frames and the command was
+	 *         not sent.
+	 * @throws IOException
+	 *             if the agent is not reachable.
+	 */
+	public synchronized boolean sendAsync(AgentCommand command) throws IOException {
+		if (asyncChannel == null) {
+			if (mode == Mode.LEGACY) {
+				return false;
+			}
+			AgentConnection connection = openFramedConnection();
+			if (connection == null) {
+				return false;
+			}
+			asyncChannel = new AsyncCommandChannel(connection, ASYNC_WINDOW);
+		}
+		asyncChannel.submit(command);
+		return true;
+	}
+
+	/**
+	 * Waits until the agent has replied to all messages sent with
+	 * {@link #sendAsync(AgentCommand)}.
+	 *
+	 * @return the failures of the asynchronous messages since the last call,
+	 *         including those of a connection closed by {@link #close()}.
+	 */
+	public synchronized List<String> awaitAsync() {
+		List<String> errors = new ArrayList<String>(closedAsyncErrors);
+		closedAsyncErrors.clear();
+		if (asyncChannel == null) {
+			return errors;
+		}
+		errors.addAll(asyncChannel.drain());
+		if (asyncChannel.isBroken()) {
+			asyncChannel.close();
+			asyncChannel = null;
+		}
+		return errors;
+	}
+
+	/**
+	 * Allows or forbids the binary format for connections opened from now on.
+	 * By default it is used with agents announcing it, unless the system
+	 * property <code>aut.agent.binary</code> is false.
+	 *
+	 * @param enabled
+	 *            false to keep the text format.
+	 */
+	void setBinaryEnabled(boolean enabled) {
+		binaryEnabled = enabled;
+	}
+
+	/**
+	 *
+	 * @return the protocol detected for the agent.
+	 */
+	Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 *
+	 * @param capability
+	 *            name of an optional agent feature.
+	 * @return true if the agent announced the capability in the framed
+	 *         handshake. The handshake is made if no connection was opened
+	 *         yet.
+	 */
+	public boolean supports(String capability) {
+		if (mode == Mode.UNKNOWN) {
+			try {
+				AgentConnection connection = openFramedConnection();
+				if (connection != null) {
+					release(connection);
+				}
+			} catch (IOException e) {
+				LOGGER.debug("Agent not reachable for the handshake.", e);
+			}
+		}
+		return capabilities.contains(capability);
+	}
+
+	/**
+	 * Closes all open connections and forgets the detected protocol. Used when
+	 * the AUT is (re)started, as the new agent may be a different one.
+	 */
+	public void reset() {
+		close();
+		mode = Mode.UNKNOWN;
+		capabilities = Collections.emptySet();
+	}
+
+	/**
+	 * Closes all idle connections and the connection for asynchronous
+	 * commands. The failures of asynchronous commands not yet collected, and
+	 * the commands whose reply is lost with the connection, are kept for the
+	 * next {@link #awaitAsync()}.
+	 */
+	public void close() {
+		synchronized (this) {
+			if (asyncChannel != null) {
+				asyncChannel.close();
+				closedAsyncErrors.addAll(asyncChannel.drain());
+				asyncChannel = null;
+			}
+		}
+		closeIdleConnections();
+	}
+
+	/**
+	 * Closes the idle connections, which may be stale like the one that just
+	 * failed. The detected protocol, the capabilities and the connection for
+	 * asynchronous commands are kept.
+	 */
+	private void closeIdleConnections() {
+		AgentConnection connection;
+		while ((connection = idleConnections.pollFirst()) != null) {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Puts the connection back into the pool or closes it if the pool is full.
+	 *
+	 * @param connection
+	 *            with no pending reply.
+	 */
+	private void release(AgentConnection connection) {
+		if (idleConnections.size() >= maxIdleConnections || !idleConnections.offerFirst(connection)) {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Opens a connection and negotiates the framed protocol.
+	 *
+	 * @return the new connection or null, if the agent doesn't support frames.
+	 * @throws IOException
+	 *             if the agent is not reachable.
+	 */
+	private AgentConnection openFramedConnection() throws IOException {
+		AgentConnection connection = new AgentConnection(new Socket(host, port));
+		String ack;
+		try {
+			ack = connection.handshake(FRAMED_HANDSHAKE);
+		} catch (IOException e) {
+			connection.close();
+			throw e;
+		}
+		if (ack == null || !ack.startsWith(FRAMED_ACK)) {
+			LOGGER.info("Agent doesn't support framed messages, using one connection per message.");
+			connection.close();
+			mode = Mode.LEGACY;
+			return null;
+		}
+		if (mode != Mode.FRAMED) {
+			Set<String> announced = new HashSet<String>();
+			String[] parts = ack.split(CAPABILITY_DELIMITER);
+			for (int i = 1; i < parts.length; i++) {
+				announced.add(parts[i]);
+			}
+			capabilities = Collections.unmodifiableSet(announced);
+			mode = Mode.FRAMED;
+			LOGGER.info("Using framed messages with agent capabilities " + announced);
+		}
+		if (binaryEnabled && capabilities.contains(BinaryAgentCodec.CAPABILITY)) {
+			connection.setCodec(BinaryAgentCodec.INSTANCE);
+		}
+		return connection;
+	}
+
+	/**
+	 * Sends the message on a new socket and reads the reply until the agent
+	 * closes the connection.
+	 *
+	 * @param command
+	 *            to be send in the text format.
+	 * @param sink
+	 *            receiving the reply or null.
+	 * @return the reply of the agent.
+	 * @throws IOException
+	 *             if the agent is not reachable.
+	 */
+	private AgentResponse sendWithNewSocket(AgentCommand command, OutputStream sink) throws IOException {
+		long start = System.nanoTime();
+		Socket client = new Socket(host, port);
+		try {
+			long connected = System.nanoTime();
+			PrintStream os = new PrintStream(client.getOutputStream(), false, CHARSET_UTF_8);
+			os.println(command);
+			os.flush();
+			long written = System.nanoTime();
+			AgentResponse reply;
+			synchronized (legacyReader) {
+				reply = legacyReader.read(client.getInputStream(), -1, sink);
+			}
+			reply.setTimings(connected - start, written - connected, System.nanoTime() - written);
+			return reply;
+		} finally {
+			client.close();
+		}
+	}
+
+}
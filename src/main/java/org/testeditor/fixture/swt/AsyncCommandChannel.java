@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Persistent connection for commands whose reply is not awaited. Messages are
+ * written as frames without waiting; a reader thread takes the replies in
+ * the order of the messages and keeps every reply other than <code>true</code>
+ * as a failure until they are collected with {@link #drain()}. At most <code>window</code> replies are outstanding,
+ * so a slow agent slows down the sender instead of filling the socket
+ * buffers.
+ */
+class AsyncCommandChannel {
+
+	private static final Logger LOGGER = Logger.getLogger(AsyncCommandChannel.class);
+
+	private final AgentConnection connection;
+	private final int window;
+	private final Deque<AgentCommand> pending = new ArrayDeque<AgentCommand>();
+	private final List<String> errors = new ArrayList<String>();
+	private IOException failure;
+	private boolean closed;
+
+	/**
+	 * Starts reading the replies of the connection.
+	 *
+	 * @param connection
+	 *            framed connection used only by this channel.
+	 * @param window
+	 *            maximum number of outstanding replies.
+	 */
+	AsyncCommandChannel(AgentConnection connection, int window) {
+		this.connection = connection;
+		this.window = Math.max(1, window);
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				readReplies();
+			}
+		}, "agent-async-replies");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	/**
+	 * Writes the message and returns without waiting for the reply.
+	 *
+	 * @param message
+	 *            the command with its arguments.
+	 * @throws IOException
+	 *             if the connection is lost.
+	 */
+	void submit(AgentCommand message) throws IOException {
+		synchronized (this) {
+			while (failure == null && pending.size() >= window) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted waiting for the agent.", e);
+				}
+			}
+			if (failure != null) {
+				throw failure;
+			}
+			pending.addLast(message);
+		}
+		try {
+			connection.writeFrame(message);
+			connection.flush();
+		} catch (IOException e) {
+			fail(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Waits for the replies of all submitted messages.
+	 *
+	 * @return the failures reported since the last call, empty if all
+	 *         messages succeeded. Messages whose reply was lost with the
+	 *         connection are reported as failures.
+	 */
+	synchronized List<String> drain() {
+		while (failure == null && !pending.isEmpty()) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		List<String> result = new ArrayList<String>(errors);
+		errors.clear();
+		if (failure != null) {
+			for (AgentCommand message : pending) {
+				result.add("Message: " + message + " has no reply: " + failure.getMessage());
+			}
+			pending.clear();
+		}
+		return result;
+	}
+
+	/**
+	 *
+	 * @return true if the connection is lost and no more messages are taken.
+	 */
+	synchronized boolean isBroken() {
+		return failure != null;
+	}
+
+	/**
+	 * Closes the connection. Outstanding replies are dropped.
+	 */
+	void close() {
+		synchronized (this) {
+			closed = true;
+		}
+		connection.close();
+	}
+
+	/**
+	 * Reads the replies until the connection is closed.
+	 */
+	private void readReplies() {
+		try {
+			while (true) {
+				AgentResponse reply = connection.readFrame(null);
+				synchronized (this) {
+					AgentCommand message = pending.pollFirst();
+					if (!reply.isTrue()) {
+						errors.add("Message: " + message + " fails with: " + reply);
+					}
+					notifyAll();
+				}
+			}
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * Marks the connection as lost and wakes up the waiting sender.
+	 *
+	 * @param e
+	 *            cause of the loss.
+	 */
+	private synchronized void fail(IOException e) {
+		if (failure == null) {
+			if (!closed) {
+				LOGGER.error("Connection for asynchronous commands lost.", e);
+			}
+			failure = e;
+		}
+		notifyAll();
+	}
+
+}
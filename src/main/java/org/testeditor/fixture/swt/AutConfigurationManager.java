@@ -0,0 +1,284 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Manages the OSGi configuration directory passed with
+ * <code>-configuration</code> to one AUT. The config.ini of the AUT extended by
+ * the SWTBot agent bundle is generated once per content hash and only written
+ * if the directory doesn't contain it already.
+ * <p>
+ * By default each manager uses its own temporary directory and the AUT has to
+ * be started with <code>-clean</code>. With
+ * <code>aut.osgi.cache.keep=true</code> the directory is shared by all
+ * launches of the same AUT build and kept, so the OSGi bundle cache stays warm.
+ * A file lock keeps two running AUTs out of the same directory.
+ */
+public class AutConfigurationManager {
+
+	private static final Logger LOGGER = Logger.getLogger(AutConfigurationManager.class);
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final String CONFIG_INI = "config.ini";
+	private static final String HASH_FILE = "config.ini.sha1";
+	private static final String LOCK_FILE = ".testeditor.lock";
+	private static final Map<String, byte[]> GENERATED_CONFIGS = new ConcurrentHashMap<String, byte[]>();
+
+	private final boolean keepOsgiCache;
+	private final File warmCacheRoot;
+	private File configurationDir;
+	private boolean cleanRequired = true;
+	private RandomAccessFile lockFile;
+	private FileLock lock;
+
+	/**
+	 * Creates a manager using the system property
+	 * <code>aut.osgi.cache.keep</code>.
+	 */
+	public AutConfigurationManager() {
+		this(Boolean.getBoolean("aut.osgi.cache.keep"), new File(System.getProperty("java.io.tmpdir"),
+				"testeditor-aut-configuration"));
+	}
+
+	/**
+	 *
+	 * @param keepOsgiCache
+	 *            true to reuse the directory of the same AUT build.
+	 * @param warmCacheRoot
+	 *            parent of the reused directories.
+	 */
+	public AutConfigurationManager(boolean keepOsgiCache, File warmCacheRoot) {
+		this.keepOsgiCache = keepOsgiCache;
+		this.warmCacheRoot = warmCacheRoot;
+	}
+
+	/**
+	 * Provides the configuration directory with a config.ini referencing the
+	 * agent bundle.
+	 *
+	 * @param configIni
+	 *            the original config.ini of the AUT.
+	 * @param agentBundlePath
+	 *            path to the SWTBot agent bundle.
+	 * @return the configuration directory.
+	 * @throws IOException
+	 *             on reading or writing the configuration.
+	 */
+	public synchronized File prepare(File configIni, String agentBundlePath) throws IOException {
+		byte[] source = Files.readAllBytes(configIni.toPath());
+		String hash = hash(source, agentBundlePath, buildStamp(configIni, agentBundlePath));
+		byte[] generated = GENERATED_CONFIGS.get(hash);
+		if (generated == null) {
+			generated = generate(source, agentBundlePath);
+			GENERATED_CONFIGS.put(hash, generated);
+		}
+		if (keepOsgiCache) {
+			acquireWarmDirectory(hash);
+		} else if (configurationDir == null || !configurationDir.exists()) {
+			configurationDir = Files.createTempDirectory("aut-configuration").toFile();
+		}
+		File hashFile = new File(configurationDir, HASH_FILE);
+		File targetIni = new File(configurationDir, CONFIG_INI);
+		boolean upToDate = targetIni.exists() && hashFile.exists()
+				&& hash.equals(new String(Files.readAllBytes(hashFile.toPath()), UTF_8));
+		if (!upToDate) {
+			Files.write(targetIni.toPath(), generated);
+			Files.write(hashFile.toPath(), hash.getBytes(UTF_8));
+			LOGGER.info("New config.ini: " + targetIni);
+		}
+		cleanRequired = !keepOsgiCache || !upToDate;
+		return configurationDir;
+	}
+
+	/**
+	 *
+	 * @return true if the AUT has to be started with <code>-clean</code>.
+	 */
+	public synchronized boolean isCleanRequired() {
+		return cleanRequired;
+	}
+
+	/**
+	 *
+	 * @return the current configuration directory or null.
+	 */
+	public synchronized File getConfigurationDir() {
+		return configurationDir;
+	}
+
+	/**
+	 * Releases the lock of a reused directory after the AUT has terminated.
+	 */
+	public synchronized void release() {
+		if (lock != null) {
+			try {
+				lock.release();
+				lockFile.close();
+			} catch (IOException e) {
+				LOGGER.debug("Error releasing lock of " + configurationDir, e);
+			}
+			lock = null;
+			lockFile = null;
+		}
+	}
+
+	/**
+	 * Releases the directory and deletes it unless the OSGi cache is kept.
+	 */
+	public synchronized void dispose() {
+		release();
+		if (keepOsgiCache || configurationDir == null || !configurationDir.exists()) {
+			return;
+		}
+		try {
+			Files.walkFileTree(configurationDir.toPath(), new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+					Files.delete(file);
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+					Files.delete(dir);
+					return FileVisitResult.CONTINUE;
+				}
+			});
+			LOGGER.info("Cleaning up temporary configuration of the RCP AUT.");
+		} catch (IOException e) {
+			LOGGER.error("Error deleting temporary RCP config.", e);
+		}
+		configurationDir = null;
+	}
+
+	/**
+	 * Locks the first free reused directory of the hash.
+	 *
+	 * @param hash
+	 *            of the configuration.
+	 * @throws IOException
+	 *             on creating the directory.
+	 */
+	private void acquireWarmDirectory(String hash) throws IOException {
+		if (lock != null && configurationDir.getName().startsWith(hash)) {
+			return;
+		}
+		release();
+		for (int slot = 0;; slot++) {
+			File dir = new File(warmCacheRoot, hash + "-" + slot);
+			Files.createDirectories(dir.toPath());
+			RandomAccessFile file = new RandomAccessFile(new File(dir, LOCK_FILE), "rw");
+			FileLock fileLock = null;
+			try {
+				fileLock = file.getChannel().tryLock();
+			} catch (OverlappingFileLockException e) {
+				fileLock = null;
+			}
+			if (fileLock != null) {
+				lockFile = file;
+				lock = fileLock;
+				configurationDir = dir;
+				LOGGER.info("Using OSGi configuration " + dir);
+				return;
+			}
+			file.close();
+		}
+	}
+
+	/**
+	 * Creates the config.ini with the agent bundle added to the bundles.
+	 *
+	 * @param source
+	 *            the original config.ini.
+	 * @param agentBundlePath
+	 *            path to the SWTBot agent bundle.
+	 * @return the content of the new config.ini.
+	 * @throws IOException
+	 *             on parsing the config.ini.
+	 */
+	private byte[] generate(byte[] source, String agentBundlePath) throws IOException {
+		Properties properties = new Properties();
+		properties.load(new ByteArrayInputStream(source));
+		String bundles = properties.getProperty("osgi.bundles");
+		properties.setProperty("osgi.bundles", bundles + ",reference:file:" + agentBundlePath);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		properties.store(out, "Changed for TestEditor run.");
+		return out.toByteArray();
+	}
+
+	/**
+	 * Identifies the build of the AUT and the agent by their modification
+	 * times, so a new installation at the same location gets a fresh cache.
+	 *
+	 * @param configIni
+	 *            the original config.ini of the AUT.
+	 * @param agentBundlePath
+	 *            path to the SWTBot agent bundle.
+	 * @return the stamp.
+	 */
+	private String buildStamp(File configIni, String agentBundlePath) {
+		File appDir = configIni.getAbsoluteFile().getParentFile().getParentFile();
+		long pluginsModified = 0;
+		if (appDir != null) {
+			pluginsModified = new File(appDir, "plugins").lastModified();
+		}
+		return pluginsModified + ":" + new File(agentBundlePath).lastModified();
+	}
+
+	/**
+	 *
+	 * @param source
+	 *            the original config.ini.
+	 * @param agentBundlePath
+	 *            path to the SWTBot agent bundle.
+	 * @param stamp
+	 *            of the build.
+	 * @return hex SHA-1 of all parameters.
+	 */
+	private String hash(byte[] source, String agentBundlePath, String stamp) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			digest.update(source);
+			digest.update(("\n" + agentBundlePath + "\n" + stamp).getBytes(UTF_8));
+			StringBuilder hex = new StringBuilder();
+			for (byte b : digest.digest()) {
+				hex.append(String.format("%02x", b & 0xff));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform has SHA-1
+			return Integer.toHexString(Arrays.hashCode(source)) + Integer.toHexString(agentBundlePath.hashCode());
+		}
+	}
+
+}
@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Captures the output of an AUT process. The stream is read by a task of a
+ * shared pool and split into lines, which are kept in a ring buffer of the
+ * last lines. The lines are logged in batches by a shared logging thread, so
+ * a slow appender never blocks the reader and the AUT writing its output.
+ * If the logging falls behind by more than the capacity of the buffer, the
+ * oldest pending lines are dropped from the log and only counted.
+ */
+public class AutOutputCapture {
+
+	private static final Logger LOGGER = Logger.getLogger(AutOutputCapture.class);
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final int DEFAULT_CAPACITY = 1000;
+	private static final long LOG_INTERVAL_MILLIS = 200;
+	private static final int READ_BUFFER_SIZE = 8192;
+
+	private static final ExecutorService READERS = Executors.newCachedThreadPool(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "aut-output-reader");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private static final ScheduledExecutorService LOG_WRITER = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "aut-output-logger");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	private final String[] lines;
+	private final AutReadinessWatcher watcher;
+	private long written;
+	private long logged;
+	private volatile boolean finished;
+	private ScheduledFuture<?> logTask;
+
+	/**
+	 * Creates a capture keeping the number of lines of the system property
+	 * <code>aut.output.lines</code>, default 1000.
+	 *
+	 * @param watcher
+	 *            inspecting the output for the ready marker or null.
+	 */
+	public AutOutputCapture(AutReadinessWatcher watcher) {
+		this(watcher, Integer.getInteger("aut.output.lines", DEFAULT_CAPACITY));
+	}
+
+	/**
+	 *
+	 * @param watcher
+	 *            inspecting the output for the ready marker or null.
+	 * @param capacity
+	 *            number of lines kept.
+	 */
+	public AutOutputCapture(AutReadinessWatcher watcher, int capacity) {
+		this.watcher = watcher;
+		this.lines = new String[Math.max(1, capacity)];
+	}
+
+	/**
+	 * Starts reading the stream until its end.
+	 *
+	 * @param inputStream
+	 *            output of the AUT.
+	 */
+	public void start(final InputStream inputStream) {
+		synchronized (this) {
+			logTask = LOG_WRITER.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					logPendingLines();
+				}
+			}, LOG_INTERVAL_MILLIS, LOG_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+		}
+		READERS.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					read(new InputStreamReader(inputStream, UTF_8));
+				} catch (IOException e) {
+					LOGGER.debug("Error reading remote Process Stream", e);
+				} finally {
+					finish();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Reads the output and splits it into lines.
+	 *
+	 * @param reader
+	 *            of the output.
+	 * @throws IOException
+	 *             on reading.
+	 */
+	void read(Reader reader) throws IOException {
+		char[] cbuf = new char[READ_BUFFER_SIZE];
+		StringBuilder line = new StringBuilder();
+		int len;
+		while ((len = reader.read(cbuf)) > 0) {
+			if (watcher != null) {
+				watcher.onOutput(CharBuffer.wrap(cbuf, 0, len));
+			}
+			for (int i = 0; i < len; i++) {
+				char c = cbuf[i];
+				if (c == '\n') {
+					add(line.toString());
+					line.setLength(0);
+				} else if (c != '\r') {
+					line.append(c);
+				}
+			}
+		}
+		if (line.length() > 0) {
+			add(line.toString());
+		}
+	}
+
+	/**
+	 * Puts a line into the ring buffer.
+	 *
+	 * @param line
+	 *            of the output.
+	 */
+	private synchronized void add(String line) {
+		lines[(int) (written % lines.length)] = line;
+		written++;
+	}
+
+	/**
+	 * Logs the remaining lines and stops the logging of this capture.
+	 */
+	private void finish() {
+		finished = true;
+		synchronized (this) {
+			if (logTask != null) {
+				logTask.cancel(false);
+			}
+		}
+		LOG_WRITER.execute(new Runnable() {
+			@Override
+			public void run() {
+				logPendingLines();
+			}
+		});
+	}
+
+	/**
+	 * Logs the lines written since the last call as one log event.
+	 */
+	void logPendingLines() {
+		List<String> pending;
+		long dropped;
+		synchronized (this) {
+			long first = Math.max(logged, written - lines.length);
+			dropped = first - logged;
+			pending = new ArrayList<String>((int) (written - first));
+			for (long i = first; i < written; i++) {
+				pending.add(lines[(int) (i % lines.length)]);
+			}
+			logged = written;
+		}
+		if (dropped > 0) {
+			LOGGER.warn(dropped + " lines of the AUT output not logged.");
+		}
+		if (!pending.isEmpty()) {
+			StringBuilder sb = new StringBuilder();
+			for (String line : pending) {
+				sb.append(line).append('\n');
+			}
+			sb.setLength(sb.length() - 1);
+			LOGGER.info(sb);
+		}
+	}
+
+	/**
+	 *
+	 * @param count
+	 *            maximal number of lines.
+	 * @return the last lines of the output, oldest first.
+	 */
+	public synchronized List<String> getLastLines(int count) {
+		long first = Math.max(0, written - Math.min(count, lines.length));
+		List<String> result = new ArrayList<String>((int) (written - first));
+		for (long i = first; i < written; i++) {
+			result.add(lines[(int) (i % lines.length)]);
+		}
+		return result;
+	}
+
+	/**
+	 *
+	 * @return true if the end of the output was reached.
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+
+}
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Waits for the SWTBot agent of a launched AUT to become ready. The agent is
+ * probed with an exponential backoff starting at one millisecond and capped at
+ * {@link #MAX_PROBE_INTERVAL} milliseconds. A line of the AUT output containing
+ * the ready marker triggers an immediate probe.
+ */
+public class AutReadinessWatcher {
+
+	/** Upper bound of the time between two probes in milliseconds. */
+	public static final long MAX_PROBE_INTERVAL = 8;
+
+	private static final Logger LOGGER = Logger.getLogger(AutReadinessWatcher.class);
+
+	/**
+	 * Check of the agent state.
+	 */
+	public interface Probe {
+
+		/**
+		 *
+		 * @return true if the agent accepts commands.
+		 */
+		boolean isReady();
+	}
+
+	private final String readyMarker;
+	private boolean signalled;
+
+	/**
+	 *
+	 * @param readyMarker
+	 *            text in the output of the AUT announcing the agent or null.
+	 */
+	public AutReadinessWatcher(String readyMarker) {
+		this.readyMarker = readyMarker;
+	}
+
+	/**
+	 * Inspects output of the AUT for the ready marker.
+	 *
+	 * @param output
+	 *            a part of the output of the AUT.
+	 */
+	public void onOutput(CharSequence output) {
+		if (readyMarker != null && output.toString().contains(readyMarker)) {
+			signal();
+		}
+	}
+
+	/**
+	 * Wakes up the waiting thread to probe the agent immediately.
+	 */
+	public synchronized void signal() {
+		signalled = true;
+		notifyAll();
+	}
+
+	/**
+	 * Probes the agent until it is ready, the process has terminated or the
+	 * timeout is reached.
+	 *
+	 * @param process
+	 *            of the AUT or null.
+	 * @param timeoutMillis
+	 *            maximum time to wait.
+	 * @param probe
+	 *            checking the agent.
+	 * @return true if the agent is ready, false on timeout or if the process
+	 *         has terminated.
+	 * @throws InterruptedException
+	 *             while waiting.
+	 */
+	public boolean awaitReady(Process process, long timeoutMillis, Probe probe) throws InterruptedException {
+		long start = System.nanoTime();
+		long deadline = start + timeoutMillis * 1000000L;
+		long interval = 1;
+		while (true) {
+			if (probe.isReady()) {
+				LOGGER.info("AUT ready after " + (System.nanoTime() - start) / 1000000L + " ms.");
+				return true;
+			}
+			if (process != null && !process.isAlive()) {
+				LOGGER.error("AUT terminated with exit code " + process.exitValue() + " while waiting for launch.");
+				return false;
+			}
+			long remainingNanos = deadline - System.nanoTime();
+			if (remainingNanos <= 0) {
+				return false;
+			}
+			long remaining = (remainingNanos + 999999L) / 1000000L;
+			synchronized (this) {
+				if (!signalled) {
+					wait(Math.min(interval, remaining));
+				}
+				signalled = false;
+			}
+			interval = Math.min(interval * 2, MAX_PROBE_INTERVAL);
+		}
+	}
+
+}
@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps launched AUTs on standby, so a test can take a ready AUT instead of
+ * launching one. Each standby gets a workspace of its own from a fixed set of
+ * workspace slots. When an AUT is taken, a replacement is launched in the
+ * background; the slot of a taken AUT is free again when its user releases
+ * it after the AUT has terminated. Launches run one after another, so the
+ * standbys don't compete with each other for the machine.
+ *
+ * @param <T>
+ *            type of a launched AUT.
+ */
+public class AutStandbyPool<T> {
+
+	/**
+	 * Launches and stops the AUTs of the pool.
+	 *
+	 * @param <T>
+	 *            type of a launched AUT.
+	 */
+	public interface Launcher<T> {
+
+		/**
+		 *
+		 * @param workspace
+		 *            workspace of the AUT.
+		 * @return the AUT, ready for commands.
+		 * @throws Exception
+		 *             if the AUT can't be launched.
+		 */
+		T launch(String workspace) throws Exception;
+
+		/**
+		 *
+		 * @param instance
+		 *            a launched AUT.
+		 * @return true if the AUT is still running.
+		 */
+		boolean isAlive(T instance);
+
+		/**
+		 * Stops an AUT which is not used anymore.
+		 *
+		 * @param instance
+		 *            a launched AUT.
+		 */
+		void stop(T instance);
+	}
+
+	/**
+	 * A standby AUT and its workspace slot.
+	 */
+	private final class Standby {
+		private final T instance;
+		private final String workspace;
+
+		/**
+		 *
+		 * @param instance
+		 *            the AUT.
+		 * @param workspace
+		 *            its workspace.
+		 */
+		private Standby(T instance, String workspace) {
+			this.instance = instance;
+			this.workspace = workspace;
+		}
+	}
+
+	private static final Logger LOGGER = Logger.getLogger(AutStandbyPool.class);
+	private static final int MAX_FAILED_LAUNCHES = 3;
+	private static final long SHUTDOWN_TIMEOUT_MILLIS = 60000;
+
+	private final int size;
+	private final Launcher<T> launcher;
+	private final BlockingQueue<Standby> ready = new LinkedBlockingQueue<Standby>();
+	private final BlockingQueue<String> freeWorkspaces = new LinkedBlockingQueue<String>();
+	private final ExecutorService launches = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "aut-standby-launcher");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	private int launching;
+	private int failedLaunches;
+	private boolean shutdown;
+
+	/**
+	 *
+	 * @param size
+	 *            number of AUTs kept on standby.
+	 * @param workspaces
+	 *            workspace slots, at least one more than the size so a taken
+	 *            AUT can run beside the standbys.
+	 * @param launcher
+	 *            launching the AUTs.
+	 */
+	public AutStandbyPool(int size, List<String> workspaces, Launcher<T> launcher) {
+		this.size = size;
+		this.launcher = launcher;
+		freeWorkspaces.addAll(workspaces);
+	}
+
+	/**
+	 * Takes a ready AUT and launches a replacement.
+	 *
+	 * @return a running AUT or null, if no AUT is ready.
+	 */
+	public T take() {
+		try {
+			Standby standby;
+			while ((standby = ready.poll()) != null) {
+				if (launcher.isAlive(standby.instance)) {
+					LOGGER.info("Using standby AUT in " + standby.workspace);
+					return standby.instance;
+				}
+				LOGGER.warn("Standby AUT in " + standby.workspace + " terminated.");
+				launcher.stop(standby.instance);
+				release(standby.workspace);
+			}
+			return null;
+		} finally {
+			fill();
+		}
+	}
+
+	/**
+	 * Returns the workspace of a taken AUT to the pool after the AUT has
+	 * terminated.
+	 *
+	 * @param workspace
+	 *            of the AUT.
+	 */
+	public void release(String workspace) {
+		freeWorkspaces.add(workspace);
+		fill();
+	}
+
+	/**
+	 * Launches AUTs until the pool is full or no workspace is free.
+	 */
+	public synchronized void fill() {
+		while (!shutdown && failedLaunches < MAX_FAILED_LAUNCHES && ready.size() + launching < size) {
+			final String workspace = freeWorkspaces.poll();
+			if (workspace == null) {
+				return;
+			}
+			launching++;
+			launches.execute(new Runnable() {
+				@Override
+				public void run() {
+					launchStandby(workspace);
+				}
+			});
+		}
+	}
+
+	/**
+	 *
+	 * @return number of AUTs ready to be taken.
+	 */
+	public int getReadyCount() {
+		return ready.size();
+	}
+
+	/**
+	 * Stops all standbys and launches no more AUTs. A launch in progress is
+	 * awaited, so its AUT is stopped before this method returns.
+	 */
+	public void shutdown() {
+		synchronized (this) {
+			shutdown = true;
+		}
+		launches.shutdown();
+		try {
+			if (!launches.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+				LOGGER.warn("Launch of a standby AUT still running on shutdown.");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		List<Standby> standbys = new ArrayList<Standby>();
+		ready.drainTo(standbys);
+		for (Standby standby : standbys) {
+			launcher.stop(standby.instance);
+		}
+	}
+
+	/**
+	 * Launches an AUT into the pool.
+	 *
+	 * @param workspace
+	 *            of the AUT.
+	 */
+	private void launchStandby(String workspace) {
+		synchronized (this) {
+			if (shutdown) {
+				launching--;
+				freeWorkspaces.add(workspace);
+				return;
+			}
+		}
+		T instance = null;
+		try {
+			LOGGER.info("Launching standby AUT in " + workspace);
+			instance = launcher.launch(workspace);
+		} catch (Exception e) {
+			LOGGER.error("Launch of standby AUT in " + workspace + " failed.", e);
+		}
+		boolean stop;
+		synchronized (this) {
+			launching--;
+			if (instance == null) {
+				failedLaunches++;
+			} else {
+				failedLaunches = 0;
+			}
+			stop = shutdown;
+			if (instance != null && !stop) {
+				ready.add(new Standby(instance, workspace));
+			}
+		}
+		if (instance == null) {
+			freeWorkspaces.add(workspace);
+		} else if (stop) {
+			launcher.stop(instance);
+		}
+	}
+
+}
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Length-prefixed binary format of version 1 for agents announcing the
+ * capability <code>binary1</code>. Every string is transmitted with its byte
+ * length, so arguments need no escaping and the reply is read with exactly
+ * one bulk read of known length. All integers are big endian.
+ *
+ * <pre>
+ * request: 0xB1 | int32 body length | uint16 command length | command
+ *          | uint16 argument count | (int32 argument length | argument)*
+ * reply:   0xB1 | status byte (0 ok, 1 error) | int64 agent time in
+ *          microseconds or -1 | int32 payload length | payload
+ * </pre>
+ *
+ * The first byte differs from the digits of the text format, so an agent can
+ * accept both formats on the same connection.
+ */
+class BinaryAgentCodec implements AgentCodec {
+
+	/** Capability announced by agents accepting this format. */
+	static final String CAPABILITY = "binary1";
+
+	/** First byte of every frame, carrying the version of the format. */
+	static final int MAGIC = 0xB1;
+
+	/** Status of a successful command. */
+	static final int STATUS_OK = 0;
+
+	/** Status of a failed command. */
+	static final int STATUS_ERROR = 1;
+
+	/** The codec; it has no state. */
+	static final BinaryAgentCodec INSTANCE = new BinaryAgentCodec();
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final int MAX_ARGUMENTS = 0xFFFF;
+
+	@Override
+	public void writeRequest(OutputStream out, AgentCommand command) throws IOException {
+		List<String> arguments = command.getArguments();
+		if (arguments.size() > MAX_ARGUMENTS) {
+			throw new IOException("Too many arguments for the agent: " + arguments.size());
+		}
+		byte[] name = command.getName().getBytes(UTF_8);
+		if (name.length > 0xFFFF) {
+			throw new IOException("Command name too long for the agent.");
+		}
+		byte[][] values = new byte[arguments.size()][];
+		long bodyLength = 2 + name.length + 2;
+		for (int i = 0; i < values.length; i++) {
+			values[i] = arguments.get(i).getBytes(UTF_8);
+			bodyLength += 4 + values[i].length;
+		}
+		if (bodyLength > Integer.MAX_VALUE) {
+			throw new IOException("Command too long for the agent.");
+		}
+		out.write(MAGIC);
+		writeInt(out, (int) bodyLength);
+		writeShort(out, name.length);
+		out.write(name);
+		writeShort(out, values.length);
+		for (byte[] value : values) {
+			writeInt(out, value.length);
+			out.write(value);
+		}
+	}
+
+	@Override
+	public AgentResponse readReply(InputStream in, AgentResponseReader reader, OutputStream sink) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		int magic = data.readUnsignedByte();
+		if (magic != MAGIC) {
+			throw new IOException("Invalid binary frame from agent: " + Integer.toHexString(magic));
+		}
+		int status = data.readUnsignedByte();
+		if (status != STATUS_OK && status != STATUS_ERROR) {
+			throw new IOException("Invalid status from agent: " + status);
+		}
+		long micros = data.readLong();
+		int length = data.readInt();
+		if (length < 0) {
+			throw new IOException("Invalid payload length from agent: " + length);
+		}
+		AgentResponse reply = reader.read(in, length, sink, status == STATUS_ERROR);
+		if (micros >= 0) {
+			reply.setAgentNanos(micros * 1000L);
+		}
+		return reply;
+	}
+
+	/**
+	 *
+	 * @param out
+	 *            the stream.
+	 * @param value
+	 *            written as two bytes, big endian.
+	 * @throws IOException
+	 *             on socket errors.
+	 */
+	private static void writeShort(OutputStream out, int value) throws IOException {
+		out.write(value >>> 8 & 0xFF);
+		out.write(value & 0xFF);
+	}
+
+	/**
+	 *
+	 * @param out
+	 *            the stream.
+	 * @param value
+	 *            written as four bytes, big endian.
+	 * @throws IOException
+	 *             on socket errors.
+	 */
+	private static void writeInt(OutputStream out, int value) throws IOException {
+		out.write(value >>> 24 & 0xFF);
+		out.write(value >>> 16 & 0xFF);
+		out.write(value >>> 8 & 0xFF);
+		out.write(value & 0xFF);
+	}
+
+}
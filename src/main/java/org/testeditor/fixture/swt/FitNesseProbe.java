@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.log4j.Logger;
+
+/**
+ * Checks whether a FitNesse server serves a project. All probes share one
+ * HTTP client with a pool of keep-alive connections and connect and read
+ * timeouts. The search result is scanned while it is read; reading stops at
+ * the link to the project page.
+ */
+public class FitNesseProbe {
+
+	private static final Logger LOGGER = Logger.getLogger(FitNesseProbe.class);
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+	private static final int READ_TIMEOUT_MILLIS = 10000;
+	private static final int MAX_CONNECTIONS = 4;
+	private static final long MIN_RETRY_INTERVAL = 50;
+	private static final long MAX_RETRY_INTERVAL = 1000;
+	private static final int READ_BUFFER_SIZE = 4096;
+	private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+	private final DefaultHttpClient httpClient;
+
+	/**
+	 * Creates a probe with its own connection pool.
+	 */
+	public FitNesseProbe() {
+		ThreadSafeClientConnManager connectionManager = new ThreadSafeClientConnManager();
+		connectionManager.setMaxTotal(MAX_CONNECTIONS);
+		connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS);
+		httpClient = new DefaultHttpClient(connectionManager);
+		HttpParams params = httpClient.getParams();
+		HttpConnectionParams.setConnectionTimeout(params, CONNECT_TIMEOUT_MILLIS);
+		HttpConnectionParams.setSoTimeout(params, READ_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * Searches the FitNesse server for the main page of the project.
+	 *
+	 * @param baseUrl
+	 *            of the FitNesse server ending with a slash.
+	 * @param projectName
+	 *            the name of the project.
+	 * @return true if the search result links the main page of the project.
+	 * @throws IOException
+	 *             if the server is not reachable.
+	 */
+	public boolean isProjectServed(String baseUrl, String projectName) throws IOException {
+		HttpGet httpGet = new HttpGet(baseUrl + projectName + "?search&searchString=" + projectName
+				+ "&searchType=title");
+		httpGet.setHeader("Content-Type", "application/json");
+		byte[] searchString = ("<a href=\"" + projectName + "\">" + projectName + "</a>").getBytes(UTF_8);
+		HttpResponse httpResponse = httpClient.execute(httpGet);
+		HttpEntity entity = httpResponse.getEntity();
+		if (entity == null) {
+			return false;
+		}
+		InputStream in = entity.getContent();
+		try {
+			if (httpResponse.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+				LOGGER.trace("FitNesse answers " + httpResponse.getStatusLine());
+				drain(httpGet, in);
+				return false;
+			}
+			boolean found = find(in, searchString);
+			drain(httpGet, in);
+			return found;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Probes the FitNesse server until it serves the project or the timeout
+	 * elapses. The interval between two probes grows from 50 ms to 1 s.
+	 *
+	 * @param baseUrl
+	 *            of the FitNesse server ending with a slash.
+	 * @param projectName
+	 *            the name of the project.
+	 * @param timeoutMillis
+	 *            maximum time to wait.
+	 * @return true if the server serves the project.
+	 * @throws InterruptedException
+	 *             while waiting.
+	 */
+	public boolean awaitProjectServed(String baseUrl, String projectName, long timeoutMillis)
+			throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		long interval = MIN_RETRY_INTERVAL;
+		while (true) {
+			try {
+				if (isProjectServed(baseUrl, projectName)) {
+					return true;
+				}
+			} catch (IOException e) {
+				LOGGER.debug("FitNesse not reachable: " + e.getMessage());
+			}
+			long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if (remaining <= 0) {
+				return false;
+			}
+			Thread.sleep(Math.min(interval, remaining));
+			interval = Math.min(interval * 2, MAX_RETRY_INTERVAL);
+		}
+	}
+
+	/**
+	 * Closes the pooled connections.
+	 */
+	public void shutdown() {
+		httpClient.getConnectionManager().shutdown();
+	}
+
+	/**
+	 * Reads the stream until the bytes are found.
+	 *
+	 * @param in
+	 *            to search.
+	 * @param pattern
+	 *            bytes to find.
+	 * @return true if the pattern was found.
+	 * @throws IOException
+	 *             on reading.
+	 */
+	static boolean find(InputStream in, byte[] pattern) throws IOException {
+		int[] failure = new int[pattern.length];
+		int k = 0;
+		for (int i = 1; i < pattern.length; i++) {
+			while (k > 0 && pattern[i] != pattern[k]) {
+				k = failure[k - 1];
+			}
+			if (pattern[i] == pattern[k]) {
+				k++;
+			}
+			failure[i] = k;
+		}
+		byte[] buffer = new byte[READ_BUFFER_SIZE];
+		int matched = 0;
+		int len;
+		while ((len = in.read(buffer)) != -1) {
+			for (int i = 0; i < len; i++) {
+				while (matched > 0 && buffer[i] != pattern[matched]) {
+					matched = failure[matched - 1];
+				}
+				if (buffer[i] == pattern[matched]) {
+					matched++;
+				}
+				if (matched == pattern.length) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Reads a short rest of the response, so the connection can be reused.
+	 * Longer responses are aborted.
+	 *
+	 * @param request
+	 *            the request.
+	 * @param in
+	 *            the rest of the response.
+	 * @throws IOException
+	 *             on reading.
+	 */
+	private void drain(HttpGet request, InputStream in) throws IOException {
+		byte[] buffer = new byte[READ_BUFFER_SIZE];
+		int drained = 0;
+		int len;
+		while ((len = in.read(buffer)) != -1) {
+			drained += len;
+			if (drained > MAX_DRAIN_BYTES) {
+				request.abort();
+				return;
+			}
+		}
+	}
+
+}
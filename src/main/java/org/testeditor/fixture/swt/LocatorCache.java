@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+import org.testeditor.fixture.core.elementlist.ElementListService;
+import org.testeditor.fixture.core.exceptions.ElementKeyNotFoundException;
+
+/**
+ * Resolves element keys to locators of the SWTBot agent. Found and missing
+ * keys are remembered, so the {@link ElementListService} is asked only once
+ * per key. Literal locators like <code>ID::name</code> are used without a
+ * lookup.
+ */
+public class LocatorCache {
+
+	private static final Logger LOGGER = Logger.getLogger(LocatorCache.class);
+	private static final String[] LITERAL_PREFIXES = { "ID::", "TEXT::", "REGEX::" };
+
+	private final ElementListService elementListService;
+	private final Map<String, Entry> locators = new ConcurrentHashMap<String, Entry>();
+
+	/**
+	 * Result of the lookup of one key.
+	 */
+	private static final class Entry {
+
+		private static final Entry MISSING = new Entry(null);
+
+		private final String locator;
+
+		/**
+		 *
+		 * @param locator
+		 *            the value to the key, null if the key is missing.
+		 */
+		private Entry(String locator) {
+			this.locator = locator;
+		}
+	}
+
+	/**
+	 *
+	 * @param elementListService
+	 *            the element list or null if there is none.
+	 */
+	public LocatorCache(ElementListService elementListService) {
+		this.elementListService = elementListService;
+	}
+
+	/**
+	 *
+	 * @param elementKey
+	 *            the key for the element-list or a literal locator.
+	 * @return the value to the key in the element-list, if found, else the key.
+	 */
+	public String getLocator(String elementKey) {
+		if (elementKey == null || elementListService == null || isLiteral(elementKey)) {
+			return elementKey;
+		}
+		Entry entry = locators.get(elementKey);
+		if (entry == null) {
+			entry = lookUp(elementKey);
+			locators.put(elementKey, entry);
+		}
+		if (entry == Entry.MISSING) {
+			return elementKey;
+		}
+		return entry.locator;
+	}
+
+	/**
+	 *
+	 * @param elementKey
+	 *            the key.
+	 * @return true if the key is a locator of the agent itself.
+	 */
+	public static boolean isLiteral(String elementKey) {
+		for (String prefix : LITERAL_PREFIXES) {
+			if (elementKey.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 *
+	 * @param elementKey
+	 *            the key for the element-list
+	 * @return the value to the key or {@link Entry#MISSING}.
+	 */
+	private Entry lookUp(String elementKey) {
+		try {
+			String locator = elementListService.getValue(elementKey);
+			if (locator == null) {
+				LOGGER.info("The specified Key for the Gui-Element \"" + elementKey + "\" has no value!");
+				return Entry.MISSING;
+			}
+			return new Entry(locator);
+		} catch (ElementKeyNotFoundException e) {
+			LOGGER.info("The specified Key for the Gui-Element \"" + elementKey + "\" could not be found!");
+			LOGGER.debug("Key lookup failed.", e);
+			return Entry.MISSING;
+		}
+	}
+
+}
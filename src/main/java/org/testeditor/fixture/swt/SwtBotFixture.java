@@ -16,54 +16,53 @@ import java.io.File;
 import java.io.FileFilter;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.ConnectException;
+import java.net.ServerSocket;
 import java.net.Socket;
-import java.net.URI;
-import java.net.URISyntaxException;
 import java.net.UnknownHostException;
-import java.nio.charset.Charset;
-import java.nio.file.DirectoryStream;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
-import java.nio.file.FileVisitResult;
-import java.nio.file.FileVisitor;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.StandardCopyOption;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Matcher;
 
-import org.apache.http.HttpResponse;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.BasicResponseHandler;
-import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import org.testeditor.fixture.core.elementlist.ElementListService;
-import org.testeditor.fixture.core.exceptions.ElementKeyNotFoundException;
 import org.testeditor.fixture.core.exceptions.StopTestException;
 import org.testeditor.fixture.core.interaction.Fixture;
 import org.testeditor.fixture.core.interaction.StoppableFixture;
+import org.testeditor.util.CommandTimer;
+import org.testeditor.util.CommandTimer.Phase;
+import org.testeditor.util.LatencyHistogram;
+import org.testeditor.util.LogOutputStream;
 import org.testeditor.util.PerformanceLogHandler;
 
-import com.jamonapi.Monitor;
-import com.jamonapi.MonitorFactory;
-
 /**
  * Fixture for communication via socket with swtbot agent.
  * 
@@ -72,17 +71,85 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	private static final Logger LOGGER = Logger.getLogger(SwtBotFixture.class);
 	private static final int AGENT_PORT = 9090;
 	private static final String AGENT_HOST = "localhost";
-	private static final String COMMAND_DELIMITER = ";";
 	// Agent commands
 	private static final String STOP_APPLICATION = "stop";
 	private static final String CHARSET_UTF_8 = "UTF-8";
+	private static final long DEFAULT_LAUNCH_TIMEOUT = 40000;
+	private static final long MIN_POLL_INTERVAL = 10;
+	private static final long MAX_POLL_INTERVAL = 100;
+	private static final String UI_IDLE_COMMAND = "waitUntilUiIdle";
+	private static final int FAILURE_OUTPUT_LINES = 50;
+	private static final WorkspaceTemplate DEMO_WORKSPACE = new WorkspaceTemplate("/DemoWebTests.zip");
+	private static final WorkspaceFileCache WORKSPACE_FILES = new WorkspaceFileCache();
+	private static final FitNesseProbe FITNESSE_PROBE = new FitNesseProbe();
+	private static final long DEFAULT_STOP_TIMEOUT = 10000;
+	private static final long DEFAULT_RESOURCE_TIMEOUT = 300000;
+	private static final long DESTROY_TIMEOUT = 5000;
+	private static final int STANDBY_COUNT = Integer.getInteger("aut.standby.count", 0);
+	private static final Map<String, AutStandbyPool<SwtBotFixture>> STANDBY_POOLS =
+			new HashMap<String, AutStandbyPool<SwtBotFixture>>();
+	private static final Set<String> ASYNC_COMMANDS = new HashSet<String>(Arrays.asList("expandTreeItems",
+			"selectTableAtIndex", "clickContextMenu", "setTextById", "clickMenuByName", "clickMenuById", "clickButton",
+			"clickCheckBox", "clickButtonByRegEx", "pressShortcutWithModificationKeyOfStyledText",
+			"pressShortcutOfStyledText", "pressGlobalShortcut", "selectLineInText",
+			"setCursorInTextWithContentsAtPosition", "selectComboBoxWithId", "clickToolbarButtonWithId",
+			"clickToolbarButtonWithTooltip", "closeTabItemWithName", "selectElementInAtuocompleteWidget"));
+	private static final Set<String> BATCH_WAITS = new HashSet<String>(Arrays.asList(WaitCondition.WAIT_COMMAND,
+			UI_IDLE_COMMAND));
+	private static final Set<String> AUT_RESOURCES_IN_USE = new HashSet<String>();
+	private static final Map<String, Future<Integer>> PENDING_STOPS = new HashMap<String, Future<Integer>>();
+	private static final int MAX_LAUNCH_ATTEMPTS = 3;
+	private static final Set<AutConfigurationManager> CONFIG_CLEANUPS = new HashSet<AutConfigurationManager>();
+	private static final ExecutorService STOP_EXECUTOR = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 1,
+			TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					// not a daemon, the JVM waits for a stopping AUT
+					return new Thread(runnable, "aut-stop");
+				}
+			});
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread("aut-shutdown") {
+			@Override
+			public void run() {
+				shutdownAuts();
+			}
+		});
+	}
+
+	private final WorkspaceFileOperations fileOperations = new WorkspaceFileOperations();
 
-	private ElementListService elementListService;
+	private LocatorCache locatorCache = new LocatorCache(null);
 	private Process process;
-	private static boolean runningApp = false;
+	private boolean runningApp = false;
+	private List<String> usedAutResources = Collections.emptyList();
 	private String testName;
-	private Monitor javaMon;
-	private List<String> launchApplicationCommandList;
+	private String launchedApplicationPath;
+	private final CommandTimer commandTimer = new CommandTimer();
+	private long invokeStart;
+	private int agentPort = resolveAgentPort(System.getProperty("aut.agent.port"));
+	private boolean autoAgentPort = isAutoPort(System.getProperty("aut.agent.port"));
+	private AgentSession agentSession = new AgentSession(AGENT_HOST, agentPort);
+	private String instanceWorkspacePath;
+	private AutConfigurationManager configurationManager = new AutConfigurationManager();
+	private File autConfigIni;
+	private String agentBundlePath;
+	private List<AgentCommand> batchMessages;
+	private boolean sentBatchTrue = true;
+	private long launchTimeout = Long.getLong("aut.launch.timeout", DEFAULT_LAUNCH_TIMEOUT);
+	private AutReadinessWatcher readinessWatcher;
+	private AutOutputCapture outputCapture;
+	private long stopTimeout = Long.getLong("aut.stop.timeout", DEFAULT_STOP_TIMEOUT);
+	private long resourceTimeout = Long.getLong("aut.resource.timeout", DEFAULT_RESOURCE_TIMEOUT);
+	private volatile Future<Integer> pendingStop;
+	private boolean standby;
+	private AutStandbyPool<SwtBotFixture> standbyPool;
+	private String standbyWorkspace;
+	private String standbyLease;
+	private boolean adaptiveWaits = Boolean.getBoolean("aut.wait.adaptive");
+	private boolean asyncActions = Boolean.getBoolean("aut.async.actions");
+	private long savedWaitMillis;
 
 	/**
 	 * Creates the element list instance representing the GUI-Map for widget
@@ -98,91 +165,226 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 *            Wiki Sites of the recent project are
 	 */
 	public void setElementlist(String elementList) {
-		this.elementListService = ElementListService.instanceFor(elementList);
+		this.locatorCache = new LocatorCache(ElementListService.instanceFor(elementList));
 	}
 
 	/**
-	 * Stops running AUT.
+	 * Stops running AUT and waits until it is terminated.
 	 * 
 	 */
 	public void stopApplication() {
+		Future<Integer> stop = stopApplicationAsync();
+		try {
+			stop.get();
+		} catch (InterruptedException e) {
+			LOGGER.error("stopApplication ", e);
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			LOGGER.error("stopApplication ", e.getCause());
+		}
+	}
+
+	/**
+	 * Asks the running AUT to stop and returns without waiting for the
+	 * termination. The process gets the time of the system property
+	 * <code>aut.stop.timeout</code> in milliseconds, default 10 seconds, to
+	 * terminate. Then it is destroyed and, if it still runs, killed. The next
+	 * launch of this fixture or of any fixture with the same agent port or
+	 * workspace prepares the workspace while the AUT shuts down and waits for
+	 * the termination before it starts the new AUT. Without an application of
+	 * its own the fixture sends no stop command, as the agent port may belong
+	 * to the AUT of another fixture, and writes no performance log.
+	 * 
+	 * @return the exit code of the AUT, or -1 if it is unknown.
+	 */
+	public Future<Integer> stopApplicationAsync() {
+		final Process stoppingProcess = process;
+		final AutConfigurationManager manager = configurationManager;
+		final List<String> resources = getAutResources();
+		for (String error : agentSession.awaitAsync()) {
+			LOGGER.error("Asynchronous command before stop " + error);
+		}
+		if (!runningApp && stoppingProcess == null) {
+			LOGGER.info("No AUT of this fixture to stop.");
+			agentSession.reset();
+			markApplicationStopped();
+			FutureTask<Integer> none = new FutureTask<Integer>(new Callable<Integer>() {
+				@Override
+				public Integer call() {
+					return -1;
+				}
+			});
+			none.run();
+			return none;
+		}
+		process = null;
+		boolean stopSent = false;
 		try {
 			Socket client = getSocket();
 			PrintStream os = new PrintStream(client.getOutputStream(), false, CHARSET_UTF_8);
 			os.println(STOP_APPLICATION);
 			client.close();
-			boolean appTerminated = false;
-			while (!appTerminated) {
-				try {
-					process.exitValue();
-					appTerminated = true;
-					LOGGER.info("AUT terminated.");
-				} catch (IllegalThreadStateException e) {
-					LOGGER.info("AUT is shutting down...");
-				}
-				Thread.sleep(100);
-			}
-
-			writePerformanceLog();
-
-			Runtime.getRuntime().addShutdownHook(addConfigCleaner());
+			stopSent = true;
 		} catch (UnknownHostException e) {
 			LOGGER.error("stopApplication UnknownHostException: ", e);
 		} catch (IOException e) {
 			LOGGER.error("stopApplication IOException ", e);
-		} catch (InterruptedException e) {
-			LOGGER.error("stopApplication ", e);
-		} finally {
-			if (process != null) {
-				process.destroy();
+		}
+		agentSession.reset();
+		if (!standby) {
+			writePerformanceLog();
+		}
+		registerConfigCleaner(manager);
+		final boolean graceful = stopSent;
+		FutureTask<Integer> stop = new FutureTask<Integer>(new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				try {
+					return awaitTermination(stoppingProcess, graceful, stopTimeout, DESTROY_TIMEOUT);
+				} finally {
+					manager.release();
+				}
+			}
+		}) {
+			@Override
+			protected void done() {
+				synchronized (PENDING_STOPS) {
+					for (String resource : resources) {
+						if (PENDING_STOPS.get(resource) == this) {
+							PENDING_STOPS.remove(resource);
+						}
+					}
+				}
+			}
+		};
+		pendingStop = stop;
+		synchronized (PENDING_STOPS) {
+			for (String resource : resources) {
+				PENDING_STOPS.put(resource, stop);
 			}
-			markApplicationStopped();
 		}
+		markApplicationStopped();
+		STOP_EXECUTOR.execute(stop);
+		return stop;
 	}
 
 	/**
-	 * cleans the configuration of application_under_test.
+	 * Waits for the termination of the AUT process, escalating from the stop
+	 * command to destroy and to destroy forcibly.
 	 * 
-	 * @return the new thread
+	 * @param autProcess
+	 *            the process or null.
+	 * @param graceful
+	 *            true if the AUT was asked to stop.
+	 * @param stopTimeoutMillis
+	 *            time for the AUT to stop by itself.
+	 * @param destroyTimeoutMillis
+	 *            time for each destroy to take effect.
+	 * @return the exit code of the AUT, or -1 if it is unknown.
+	 * @throws InterruptedException
+	 *             while waiting.
 	 */
-	private Thread addConfigCleaner() {
-		return new Thread() {
-			@Override
-			public void run() {
-				try {
-					FileVisitor<Path> visitor = getDeleteFileVisitor();
-					Path configPath = new File(System.getProperty("java.io.tmpdir") + File.separator + "configuration")
-							.toPath();
-					Files.walkFileTree(configPath, visitor);
-					LOGGER.info("Cleaning up temporary configuration of the RCP AUT.");
-				} catch (IOException e) {
-					LOGGER.error("Error deleting temporary RCP config.", e);
-				}
+	static int awaitTermination(Process autProcess, boolean graceful, long stopTimeoutMillis,
+			long destroyTimeoutMillis) throws InterruptedException {
+		if (autProcess == null) {
+			return -1;
+		}
+		if (graceful && autProcess.waitFor(stopTimeoutMillis, TimeUnit.MILLISECONDS)) {
+			LOGGER.info("AUT terminated.");
+			return autProcess.exitValue();
+		}
+		LOGGER.warn("AUT not terminated, destroying the process.");
+		autProcess.destroy();
+		if (autProcess.waitFor(destroyTimeoutMillis, TimeUnit.MILLISECONDS)) {
+			return autProcess.exitValue();
+		}
+		LOGGER.error("AUT ignores destroy, killing the process.");
+		autProcess.destroyForcibly();
+		if (autProcess.waitFor(destroyTimeoutMillis, TimeUnit.MILLISECONDS)) {
+			return autProcess.exitValue();
+		}
+		LOGGER.error("AUT process could not be killed.");
+		return -1;
+	}
 
+	/**
+	 * 
+	 * @param resources
+	 *            agent port and workspace of the next launch.
+	 * @return the stops of the AUT of this fixture and of the AUTs of other
+	 *         fixtures using one of the resources, which may not be
+	 *         terminated yet.
+	 */
+	private List<Future<Integer>> getPendingStops(List<String> resources) {
+		List<Future<Integer>> stops = new ArrayList<Future<Integer>>();
+		Future<Integer> ownStop = pendingStop;
+		if (ownStop != null) {
+			stops.add(ownStop);
+		}
+		synchronized (PENDING_STOPS) {
+			for (String resource : resources) {
+				Future<Integer> stop = PENDING_STOPS.get(resource);
+				if (stop != null && !stops.contains(stop)) {
+					stops.add(stop);
+				}
 			}
-		};
+		}
+		return stops;
 	}
 
 	/**
+	 * Waits until the AUTs stopped by {@link #stopApplicationAsync()} are
+	 * terminated.
 	 * 
-	 * @return utility FileVisitor class for recursive directory delete
-	 *         operations.
+	 * @param stops
+	 *            the pending stops.
+	 * @throws InterruptedException
+	 *             while waiting.
 	 */
-	private FileVisitor<Path> getDeleteFileVisitor() {
-		return new SimpleFileVisitor<Path>() {
-			@Override
-			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-				file.toFile().setWritable(true);
-				Files.delete(file);
-				return FileVisitResult.CONTINUE;
+	private void awaitPendingStops(List<Future<Integer>> stops) throws InterruptedException {
+		for (Future<Integer> stop : stops) {
+			try {
+				stop.get();
+			} catch (ExecutionException e) {
+				LOGGER.error("Stopping the previous AUT failed.", e.getCause());
 			}
+		}
+		pendingStop = null;
+	}
 
-			@Override
-			public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
-				Files.delete(dir);
-				return FileVisitResult.CONTINUE;
-			}
-		};
+	/**
+	 * Registers the configuration of the AUT for the cleanup at the end of the
+	 * JVM.
+	 * 
+	 * @param manager
+	 *            the configuration.
+	 */
+	private static void registerConfigCleaner(AutConfigurationManager manager) {
+		synchronized (CONFIG_CLEANUPS) {
+			CONFIG_CLEANUPS.add(manager);
+		}
+	}
+
+	/**
+	 * Stops the standby AUTs and then disposes the configurations of the
+	 * stopped AUTs. Runs as the only shutdown hook of the fixture, so no
+	 * configuration is deleted under a standby AUT still running.
+	 */
+	private static void shutdownAuts() {
+		List<AutStandbyPool<SwtBotFixture>> pools;
+		synchronized (STANDBY_POOLS) {
+			pools = new ArrayList<AutStandbyPool<SwtBotFixture>>(STANDBY_POOLS.values());
+		}
+		for (AutStandbyPool<SwtBotFixture> pool : pools) {
+			pool.shutdown();
+		}
+		List<AutConfigurationManager> configurations;
+		synchronized (CONFIG_CLEANUPS) {
+			configurations = new ArrayList<AutConfigurationManager>(CONFIG_CLEANUPS);
+		}
+		for (AutConfigurationManager configuration : configurations) {
+			configuration.dispose();
+		}
 	}
 
 	/**
@@ -195,7 +397,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return the result of the message.
 	 */
 	public boolean expandTreeItems(String nodeList) {
-		return sendMessage("expandTreeItems" + COMMAND_DELIMITER + nodeList);
+		return sendMessage("expandTreeItems", nodeList);
 	}
 
 	/**
@@ -206,7 +408,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return the result of the message.
 	 */
 	public boolean selectTableAtIndex(String index) {
-		return sendMessage("selectTableAtIndex" + COMMAND_DELIMITER + index);
+		return sendMessage("selectTableAtIndex", index);
 	}
 
 	/**
@@ -217,7 +419,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return the result of the message.
 	 */
 	public boolean clickContextMenu(String menuItemName) {
-		return sendMessage("clickContextMenu" + COMMAND_DELIMITER + getLocator(menuItemName));
+		return sendMessage("clickContextMenu", getLocator(menuItemName));
 	}
 
 	/**
@@ -229,7 +431,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return the result of the message.
 	 */
 	public boolean setTextById(String locator, String inputText) {
-		return sendMessage("setTextById" + COMMAND_DELIMITER + getLocator(locator) + COMMAND_DELIMITER + inputText);
+		return sendMessage("setTextById", getLocator(locator), inputText);
 	}
 
 	/**
@@ -239,7 +441,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return the result of the message.
 	 */
 	public boolean clickMenuByName(String menuName) {
-		return sendMessage("clickMenuByName" + COMMAND_DELIMITER + getLocator(menuName));
+		return sendMessage("clickMenuByName", getLocator(menuName));
 	}
 
 	/**
@@ -250,7 +452,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 */
 	public boolean clickMenuById(String id) {
 		LOGGER.error("clickMenuById: " + getLocator(id));
-		return sendMessage("clickMenuById" + COMMAND_DELIMITER + getLocator(id));
+		return sendMessage("clickMenuById", getLocator(id));
 
 	}
 
@@ -261,7 +463,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return the result of the message.
 	 */
 	public boolean clickButton(String locator) {
-		return sendMessage("clickButton" + COMMAND_DELIMITER + getLocator(locator));
+		return sendMessage("clickButton", getLocator(locator));
 	}
 
 	/**
@@ -274,7 +476,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 		try {
 			LOGGER.info("Start the application again. The last workspace is used.");
 			waitUntilPreviousLaunchIsFinished();
-			createAndLaunchProcess();
+			createAndLaunchProcess(launchedApplicationPath);
 		} catch (Exception e) {
 			LOGGER.error("Error Test execution: ", e);
 			throw new StopTestException(e);
@@ -289,7 +491,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return the result of the message.
 	 */
 	public boolean clickCheckBox(String locator) {
-		return sendMessage("clickCheckBox" + COMMAND_DELIMITER + getLocator(locator));
+		return sendMessage("clickCheckBox", getLocator(locator));
 	}
 
 	/**
@@ -299,7 +501,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return the result of the message.
 	 */
 	public boolean isCheckBoxEnabled(String locator) {
-		return sendMessage("isCheckBoxEnabled" + COMMAND_DELIMITER + getLocator(locator));
+		return sendMessage("isCheckBoxEnabled", getLocator(locator));
 	}
 
 	/**
@@ -309,7 +511,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return the result of the message.
 	 */
 	public boolean isCheckBoxDisabled(String locator) {
-		return !sendMessage("isCheckBoxEnabled" + COMMAND_DELIMITER + getLocator(locator));
+		return !sendMessage("isCheckBoxEnabled", getLocator(locator));
 	}
 
 	/**
@@ -319,7 +521,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return the result of the message.
 	 */
 	public boolean isCheckBoxChecked(String locator) {
-		return sendMessage("isCheckBoxChecked" + COMMAND_DELIMITER + getLocator(locator));
+		return sendMessage("isCheckBoxChecked", getLocator(locator));
 	}
 
 	/**
@@ -329,7 +531,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return the result of the message.
 	 */
 	public boolean isCheckBoxNotChecked(String locator) {
-		return !sendMessage("isCheckBoxChecked" + COMMAND_DELIMITER + getLocator(locator));
+		return !sendMessage("isCheckBoxChecked", getLocator(locator));
 	}
 
 	/**
@@ -339,8 +541,10 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return the result of the message.
 	 */
 	public boolean isButtonEnabled(String locator) {
-		LOGGER.error("isButtonEnabled: " + locator);
-		return sendMessage("isButtonEnabled" + COMMAND_DELIMITER + getLocator(locator));
+		if (LOGGER.isTraceEnabled()) {
+			LOGGER.trace("isButtonEnabled: " + locator);
+		}
+		return sendMessage("isButtonEnabled", getLocator(locator));
 	}
 
 	/**
@@ -370,7 +574,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return the result of the message.
 	 */
 	public boolean countProjectsEquals(String expectedCount) {
-		return sendMessage("countProjectsEquals" + COMMAND_DELIMITER + expectedCount);
+		return sendMessage("countProjectsEquals", expectedCount);
 	}
 
 	/**
@@ -383,7 +587,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return the result of the message.
 	 */
 	public boolean countChildrenEquals(String parentName, String expectedCount) {
-		return sendMessage("countChildrenEquals" + COMMAND_DELIMITER + parentName + COMMAND_DELIMITER + expectedCount);
+		return sendMessage("countChildrenEquals", parentName, expectedCount);
 	}
 
 	/**
@@ -396,8 +600,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return true if the amount of items equals the expectedCount.
 	 */
 	public boolean countItemsEquals(String locator, String expectedCount) {
-		return sendMessage("countItemsEquals" + COMMAND_DELIMITER + getLocator(locator) + COMMAND_DELIMITER
-				+ expectedCount);
+		return sendMessage("countItemsEquals", getLocator(locator), expectedCount);
 	}
 
 	/**
@@ -407,8 +610,10 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return the result of the message.
 	 */
 	public boolean isButtonDisabled(String locator) {
-		LOGGER.error("isButtonDisabled: " + locator);
-		return !sendMessage("isButtonEnabled" + COMMAND_DELIMITER + getLocator(locator));
+		if (LOGGER.isTraceEnabled()) {
+			LOGGER.trace("isButtonDisabled: " + locator);
+		}
+		return !sendMessage("isButtonEnabled", getLocator(locator));
 	}
 
 	/**
@@ -419,8 +624,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 *            number of row.
 	 */
 	public boolean checkRowNumberOfTable(String locator, String expectedRowNumber) {
-		return sendMessage("checkRowNumberOfTable" + COMMAND_DELIMITER + getLocator(locator) + COMMAND_DELIMITER
-				+ expectedRowNumber);
+		return sendMessage("checkRowNumberOfTable", getLocator(locator), expectedRowNumber);
 
 	}
 
@@ -459,8 +663,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return true if all entries in table in given column contains given value
 	 */
 	public boolean checkTableIfInColumnContainsInAllRows(String locator, String column, String value) {
-		return sendMessage("checkTableIfInColumnContainsInAllRows" + COMMAND_DELIMITER + getLocator(locator)
-				+ COMMAND_DELIMITER + column + COMMAND_DELIMITER + value);
+		return sendMessage("checkTableIfInColumnContainsInAllRows", getLocator(locator), column, value);
 	}
 
 	/**
@@ -501,8 +704,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return true if all entries in table in given column contains given value
 	 */
 	public boolean checkTableIfInColumnAndRowContains(String locator, String column, String row, String value) {
-		return sendMessage("checkTableIfInColumnAndRowContains" + COMMAND_DELIMITER + getLocator(locator)
-				+ COMMAND_DELIMITER + column + COMMAND_DELIMITER + row + COMMAND_DELIMITER + value);
+		return sendMessage("checkTableIfInColumnAndRowContains", getLocator(locator), column, row, value);
 	}
 
 	/**
@@ -513,8 +715,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return the result of the message.
 	 */
 	public boolean setPlayBackTime(String milliSeconds) {
-		// TODO return sendMessage("setStyledTextWithId" + COMMAND_DELIMITER +
-		// milliSeconds);
+		// TODO return sendMessage("setStyledTextWithId", milliSeconds);
 		return false;
 	}
 
@@ -526,10 +727,63 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return always true to show inside FitNesse a positive result
 	 */
 	public boolean waitSeconds(String timeToWait) {
+		if (adaptiveWaits) {
+			return waitUntilUiIdle(timeToWait);
+		}
 		waitTime(new Long(timeToWait) * 1000);
 		return true;
 	}
 
+	/**
+	 * Waits until the UI of the AUT is idle, at most for the given period.
+	 * Agents announcing the capability <code>waitUntilUiIdle</code> reply as
+	 * soon as the event queue of the display is empty and no background jobs
+	 * are running. In a batch the wait is queued. For other agents the full
+	 * period is waited like {@link #waitSeconds(String)}, in a batch after
+	 * the commands queued so far are sent. The time saved compared to the
+	 * full period is logged and summed up for the performance log of the
+	 * test.
+	 * <p>
+	 * If the system property <code>aut.wait.adaptive</code> is true,
+	 * {@link #waitSeconds(String)} waits like this method.
+	 * 
+	 * @param timeToWait
+	 *            maximal time to wait in seconds
+	 * @return always true to show inside FitNesse a positive result
+	 */
+	public boolean waitUntilUiIdle(String timeToWait) {
+		long fixedWait = Long.parseLong(timeToWait) * 1000;
+		AgentCommand message = new AgentCommand(UI_IDLE_COMMAND, fixedWait);
+		if (!agentSession.supports(UI_IDLE_COMMAND)) {
+			sendQueuedBatchMessages();
+			waitTime(fixedWait);
+			return true;
+		}
+		if (batchMessages != null) {
+			// the agent waits in the order of the batch, the saving is unknown
+			return sendMessage(message, null);
+		}
+		long start = System.nanoTime();
+		boolean idle = sendMessage(message, null);
+		long saved = Math.max(0, fixedWait - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		savedWaitMillis += saved;
+		if (idle) {
+			LOGGER.info("UI idle, saved " + saved + " ms of " + fixedWait + " ms.");
+		} else {
+			LOGGER.info("UI not idle after " + fixedWait + " ms.");
+		}
+		return true;
+	}
+
+	/**
+	 *
+	 * @return the time saved by {@link #waitUntilUiIdle(String)} in the
+	 *         current test in milliseconds.
+	 */
+	public long getSavedWaitMillis() {
+		return savedWaitMillis;
+	}
+
 	/**
 	 * Waits for the given period.
 	 * 
@@ -552,7 +806,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * 
 	 */
 	public boolean clickButtonByRegEx(String regEx) {
-		return sendMessage("clickButtonByRegEx" + COMMAND_DELIMITER + regEx);
+		return sendMessage("clickButtonByRegEx", regEx);
 	}
 
 	/**
@@ -565,7 +819,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 */
 	public boolean checkTextForAllWidgets(String text) {
 		LOGGER.error("checkTextForAllWidgets: " + text);
-		return sendMessage("checkTextForAllWidgets" + COMMAND_DELIMITER + text);
+		return sendMessage("checkTextForAllWidgets", text);
 	}
 
 	/**
@@ -579,7 +833,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return the result of the message.
 	 */
 	public boolean compareTextById(String locator, String comptext) {
-		return sendMessage("compareTextById" + COMMAND_DELIMITER + getLocator(locator) + COMMAND_DELIMITER + comptext);
+		return sendMessage("compareTextById", getLocator(locator), comptext);
 	}
 
 	/**
@@ -592,7 +846,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return the result of the message.
 	 */
 	public boolean compareLabelById(String locator, String comptext) {
-		return sendMessage("compareLabelById" + COMMAND_DELIMITER + getLocator(locator) + COMMAND_DELIMITER + comptext);
+		return sendMessage("compareLabelById", getLocator(locator), comptext);
 	}
 
 	/**
@@ -606,7 +860,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return the result of the message.
 	 */
 	public boolean compareLabelByIdTextNotInWidget(String locator, String comptext) {
-		return !sendMessage("compareLabelById" + COMMAND_DELIMITER + getLocator(locator) + COMMAND_DELIMITER + comptext);
+		return !sendMessage("compareLabelById", getLocator(locator), comptext);
 	}
 
 	/**
@@ -622,8 +876,8 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return true, after sending the keys
 	 */
 	public boolean pressShortcutWithModificationKeyOfStyledText(String locator, String modificationKeys, String key) {
-		return sendMessage("pressShortcutWithModificationKeyOfStyledText" + COMMAND_DELIMITER + getLocator(locator)
-				+ COMMAND_DELIMITER + getLocator(modificationKeys) + COMMAND_DELIMITER + key);
+		return sendMessage("pressShortcutWithModificationKeyOfStyledText", getLocator(locator),
+				getLocator(modificationKeys), key);
 	}
 
 	/**
@@ -637,10 +891,9 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return true, after sending the key
 	 */
 	public boolean pressShortcutOfStyledText(final String locator, final String key) {
-		LOGGER.error("pressShortcutOfStyledText" + COMMAND_DELIMITER + getLocator(locator) + COMMAND_DELIMITER
-				+ getLocator(key));
-		return sendMessage("pressShortcutOfStyledText" + COMMAND_DELIMITER + getLocator(locator) + COMMAND_DELIMITER
-				+ getLocator(key));
+		AgentCommand command = new AgentCommand("pressShortcutOfStyledText", getLocator(locator), getLocator(key));
+		LOGGER.error(command);
+		return sendMessage(command, null);
 	}
 
 	/**
@@ -654,8 +907,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return true, after sending the keys
 	 */
 	public boolean pressGlobalShortcut(String modificationKeys, String key) {
-		return sendMessage("pressGlobalShortcut" + COMMAND_DELIMITER + getLocator(modificationKeys) + COMMAND_DELIMITER
-				+ key);
+		return sendMessage("pressGlobalShortcut", getLocator(modificationKeys), key);
 	}
 
 	/**
@@ -667,8 +919,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return the result of the message.
 	 */
 	public boolean selectLineInText(String locator, String lineNumber) {
-		return sendMessage("selectLineInText" + COMMAND_DELIMITER + getLocator(locator) + COMMAND_DELIMITER
-				+ lineNumber);
+		return sendMessage("selectLineInText", getLocator(locator), lineNumber);
 	}
 
 	/**
@@ -682,8 +933,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return the result of the message.
 	 */
 	public boolean setCursorInTextWithContentsAtPosition(String locator, String contents, String position) {
-		return sendMessage("setCursorInTextWithContentsAtPosition" + COMMAND_DELIMITER + getLocator(locator)
-				+ COMMAND_DELIMITER + contents + COMMAND_DELIMITER + position);
+		return sendMessage("setCursorInTextWithContentsAtPosition", getLocator(locator), contents, position);
 	}
 
 	/**
@@ -695,8 +945,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return the result of the message.
 	 */
 	public boolean selectComboBoxWithId(String locator, String selectItemAsText) {
-		return sendMessage("selectComboBoxWithId" + COMMAND_DELIMITER + getLocator(locator) + COMMAND_DELIMITER
-				+ selectItemAsText);
+		return sendMessage("selectComboBoxWithId", getLocator(locator), selectItemAsText);
 	}
 
 	/**
@@ -707,7 +956,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return the result of the message.
 	 */
 	public boolean clickToolbarButtonWithId(String locator) {
-		return sendMessage("clickToolbarButtonWithId" + COMMAND_DELIMITER + getLocator(locator));
+		return sendMessage("clickToolbarButtonWithId", getLocator(locator));
 	}
 
 	/**
@@ -719,7 +968,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return the result of the message.
 	 */
 	public boolean clickToolbarButtonWithTooltip(String locator) {
-		return sendMessage("clickToolbarButtonWithTooltip" + COMMAND_DELIMITER + getLocator(locator));
+		return sendMessage("clickToolbarButtonWithTooltip", getLocator(locator));
 	}
 
 	/**
@@ -730,7 +979,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return the result of the message.
 	 */
 	public boolean closeTabItemWithName(String name) {
-		return sendMessage("closeTabItemWithName" + COMMAND_DELIMITER + getLocator(name));
+		return sendMessage("closeTabItemWithName", getLocator(name));
 	}
 
 	/**
@@ -739,7 +988,12 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return the result of the message.
 	 */
 	public boolean analyzeWidgets() {
-		return sendMessage("analyzeWidgets");
+		LogOutputStream widgets = new LogOutputStream(LOGGER, Level.INFO);
+		try {
+			return sendMessage(new AgentCommand("analyzeWidgets"), widgets);
+		} finally {
+			widgets.close();
+		}
 	}
 
 	/**
@@ -753,7 +1007,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 		if (LOGGER.isTraceEnabled()) {
 			LOGGER.trace("textIsVisible: " + text);
 		}
-		return sendMessage("textIsVisible" + COMMAND_DELIMITER + text);
+		return sendMessage("textIsVisible", text);
 	}
 
 	/**
@@ -764,7 +1018,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return true, if the text is invisible, else false
 	 */
 	public boolean textIsInVisible(String text) {
-		return !sendMessage("textIsVisible" + COMMAND_DELIMITER + text);
+		return !sendMessage("textIsVisible", text);
 	}
 
 	/**
@@ -779,8 +1033,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 */
 	public boolean compareTextInStyledById(String id, String compText) {
 		LOGGER.info("compareTextInStyledById " + id + " " + compText);
-		return sendMessage("compareTextInStyledById" + COMMAND_DELIMITER + getLocator(id) + COMMAND_DELIMITER
-				+ compText);
+		return sendMessage("compareTextInStyledById", getLocator(id), compText);
 	}
 
 	/**
@@ -795,8 +1048,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 */
 	public boolean compareTextNotInStyledById(String id, String compText) {
 		LOGGER.info("compareTextInStyledById " + id + " " + compText);
-		return !sendMessage("compareTextInStyledById" + COMMAND_DELIMITER + getLocator(id) + COMMAND_DELIMITER
-				+ compText);
+		return !sendMessage("compareTextInStyledById", getLocator(id), compText);
 	}
 
 	/**
@@ -809,51 +1061,205 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return true, if the text is found, else false
 	 */
 	public boolean checkTextNotExistInWidgets(String locator, String text) {
-		return !sendMessage("checkTextExistInWidgets" + COMMAND_DELIMITER + getLocator(locator) + COMMAND_DELIMITER
-				+ text);
+		return !sendMessage("checkTextExistInWidgets", getLocator(locator), text);
 	}
 
 	/**
-	 * @param message
-	 *            the message as a string, that should send.
-	 * @return the result of the call
-	 * @throws UnknownHostException
-	 * @throws IOException
+	 * Starts the asynchronous mode. In this mode actions like clicks, text
+	 * input or tree expansions are sent without waiting for the reply and
+	 * return true. The replies are read in the background; a failed action is
+	 * raised by the next check, wait or query command or by
+	 * {@link #tearDown()}. The mode is on from the start if the system
+	 * property <code>aut.async.actions</code> is true. Agents without framed
+	 * messages get all commands synchronously.
+	 *
+	 * @return always true to show inside FitNesse a positive result
 	 */
-	private boolean sendMessage(String message) {
+	public boolean startAsyncActions() {
+		asyncActions = true;
+		return true;
+	}
 
-		StringBuilder result = new StringBuilder();
+	/**
+	 * Ends the asynchronous mode after all actions are confirmed by the
+	 * agent.
+	 *
+	 * @return always true to show inside FitNesse a positive result
+	 */
+	public boolean stopAsyncActions() {
+		asyncActions = false;
+		raiseAsyncErrors();
+		return true;
+	}
 
-		try {
-			Socket client = getSocket();
+	/**
+	 * Waits for the replies of the actions sent asynchronously and raises the
+	 * failures of these actions.
+	 */
+	private void raiseAsyncErrors() {
+		List<String> errors = agentSession.awaitAsync();
+		if (errors.isEmpty()) {
+			return;
+		}
+		for (String error : errors) {
+			LOGGER.error("Fails asynchronous: " + error);
+		}
+		logLastAutOutput("Asynchronous message " + errors.get(0));
+		throw new RuntimeException(errors.size() + " asynchronous message(s) failed, first: " + errors.get(0));
+	}
 
-			PrintStream os = new PrintStream(client.getOutputStream(), false, CHARSET_UTF_8);
-			os.println(message);
-			LOGGER.info("Send message to AUT:" + message);
-			os.flush();
-			BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), CHARSET_UTF_8));
+	/**
+	 * Starts a batch. Until {@link #executeBatch()} is called the actions of
+	 * the fixture are queued instead of sent and return true. Checks are
+	 * rejected in a batch, as their result is not known before the batch is
+	 * executed.
+	 *
+	 * @return always true to show inside FitNesse a positive result
+	 */
+	public boolean startBatch() {
+		batchMessages = new ArrayList<AgentCommand>();
+		sentBatchTrue = true;
+		return true;
+	}
 
-			int c;
-			while ((c = in.read()) != -1) {
-				result.append((char) c);
+	/**
+	 * Sends the commands queued since {@link #startBatch()} in one pipelined
+	 * write and ends the batch.
+	 *
+	 * @return true if all commands of the batch returned true.
+	 */
+	public boolean executeBatch() {
+		List<AgentCommand> messages = batchMessages;
+		List<AgentResponse> results = flushBatch();
+		boolean sentTrue = sentBatchTrue;
+		sentBatchTrue = true;
+		if (messages == null) {
+			return sentTrue;
+		}
+		boolean allTrue = sentTrue && results.size() == messages.size();
+		for (int i = 0; i < results.size(); i++) {
+			AgentResponse result = results.get(i);
+			if (result.isError()) {
+				throw new RuntimeException("Message: " + messages.get(i) + " fails with: " + result);
 			}
-			String myMessage = result.toString();
-			if (myMessage.indexOf("ERROR ") > -1) {
-				LOGGER.error("Fails: " + myMessage);
-				throw new RuntimeException("Message: " + message + " fails with: " + myMessage);
+			allTrue &= result.isTrue();
+		}
+		return allTrue;
+	}
+
+	/**
+	 * Sends the commands queued so far before a wait the agent can't execute
+	 * in the batch, so the wait follows them. The batch stays open for the
+	 * commands after the wait.
+	 */
+	private void sendQueuedBatchMessages() {
+		if (batchMessages == null || batchMessages.isEmpty()) {
+			return;
+		}
+		boolean sentTrue = executeBatch();
+		batchMessages = new ArrayList<AgentCommand>();
+		sentBatchTrue = sentTrue;
+	}
+
+	/**
+	 * Sends the commands queued since {@link #startBatch()} in one pipelined
+	 * write and ends the batch.
+	 *
+	 * @return the outcome of each command in the order of the batch. The list
+	 *         ends with the first outcome reporting an error.
+	 */
+	public List<AgentResponse> flushBatch() {
+		List<AgentCommand> messages = batchMessages;
+		batchMessages = null;
+		if (messages == null || messages.isEmpty()) {
+			return new ArrayList<AgentResponse>();
+		}
+		raiseAsyncErrors();
+		try {
+			LOGGER.info("Send batch of " + messages.size() + " messages to AUT.");
+			List<AgentResponse> results = agentSession.sendAll(messages);
+			if (!results.isEmpty() && results.get(results.size() - 1).isError()) {
+				LOGGER.error("Batch fails at message " + results.size() + ": " + results.get(results.size() - 1));
 			}
+			return results;
+		} catch (IOException e) {
+			LOGGER.error("Send Batch IOException ", e);
+			return new ArrayList<AgentResponse>();
+		}
+	}
 
-			client.close();
+	/**
+	 * @param command
+	 *            name of the agent command.
+	 * @param arguments
+	 *            of the command. The codec of the connection takes care of
+	 *            delimiters within the arguments.
+	 * @return the result of the call
+	 */
+	private boolean sendMessage(String command, Object... arguments) {
+		return sendMessage(new AgentCommand(command, arguments), null);
+	}
+
+	/**
+	 * @param message
+	 *            the command with its arguments.
+	 * @param sink
+	 *            receiving the complete reply or null.
+	 * @return the result of the call
+	 */
+	private boolean sendMessage(AgentCommand message, OutputStream sink) {
+
+		if (batchMessages != null) {
+			if (message.isQuery() && !BATCH_WAITS.contains(message.getName())) {
+				throw new RuntimeException("Check " + message.getName()
+						+ " can't be evaluated in a batch, execute the batch first.");
+			}
+			batchMessages.add(message);
+			return true;
+		}
+
+		AgentResponse result = new AgentResponse("");
+
+		try {
+			if (asyncActions && sink == null && ASYNC_COMMANDS.contains(message.getName())
+					&& agentSession.sendAsync(message)) {
+				LOGGER.info("Send asynchronous message to AUT:" + message);
+				return true;
+			}
+			raiseAsyncErrors();
+			LOGGER.info("Send message to AUT:" + message);
+			result = agentSession.send(message, sink);
+			addPhases(result);
+			if (result.isError()) {
+				LOGGER.error("Fails: " + result);
+				logLastAutOutput("Message " + message + " fails");
+				throw new RuntimeException("Message: " + message + " fails with: " + result);
+			}
 
 		} catch (UnknownHostException e) {
 			LOGGER.error("SendMessage Host not Found", e);
 		} catch (IOException e) {
 			LOGGER.error("Send Message IOException ", e);
 		}
-		if (result.toString().startsWith("true")) {
-			return true;
+		return result.isTrue();
+	}
+
+	/**
+	 * Adds the transport phases of a message to the running command.
+	 * 
+	 * @param result
+	 *            reply of the agent.
+	 */
+	private void addPhases(AgentResponse result) {
+		commandTimer.addPhase(Phase.CONNECT, result.getConnectNanos());
+		commandTimer.addPhase(Phase.WRITE, result.getWriteNanos());
+		long read = result.getReadNanos();
+		if (result.getAgentNanos() >= 0) {
+			long agent = Math.min(result.getAgentNanos(), read);
+			commandTimer.addPhase(Phase.AGENT, agent);
+			read -= agent;
 		}
-		return false;
+		commandTimer.addPhase(Phase.READ, read);
 	}
 
 	/**
@@ -869,31 +1275,40 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return true if a FitNesse-server is for this project.
 	 */
 	public boolean isFitNesseProjectServerRunning(String port, String projectName) {
-
-		HttpGet httpGet = new HttpGet(getFitnesseUrl(port) + projectName + "?search&searchString=" + projectName
-				+ "&searchType=title");
-		httpGet.setHeader("Content-Type", "application/json");
-
-		String strOfWikiPages;
-
 		try {
-			DefaultHttpClient defaultHttpClient = new DefaultHttpClient();
-
-			HttpResponse httpResponse = defaultHttpClient.execute(httpGet);
-			strOfWikiPages = (new BasicResponseHandler()).handleResponse(httpResponse);
-			String searchString = "<a href=\"" + projectName + "\">" + projectName + "</a>";
-			if (strOfWikiPages.contains(searchString)) {
+			if (FITNESSE_PROBE.isProjectServed(getFitnesseUrl(port), projectName)) {
 				LOGGER.trace("Server is running");
 				return true;
 			}
 		} catch (Exception e) {
-
 			LOGGER.error("No FitNesse found in: " + getFitnesseUrl(port) + projectName + "\n" + e.getMessage());
-			return false;
 		}
 		return false;
 	}
 
+	/**
+	 * Waits until the FitNesse-server for the project is running. The server
+	 * is probed with a growing interval of at most one second.
+	 * 
+	 * @param port
+	 *            of the fitNesseServer
+	 * @param projectName
+	 *            the name of the project.
+	 * @param timeOut
+	 *            to wait for the server in seconds.
+	 * @return true if a FitNesse-server is running for this project.
+	 * @throws InterruptedException
+	 *             while waiting.
+	 */
+	public boolean waitUntilFitNesseProjectServerIsRunning(String port, String projectName, int timeOut)
+			throws InterruptedException {
+		if (FITNESSE_PROBE.awaitProjectServed(getFitnesseUrl(port), projectName, timeOut * 1000L)) {
+			return true;
+		}
+		LOGGER.error("No FitNesse found in: " + getFitnesseUrl(port) + projectName + " after " + timeOut + " s");
+		return false;
+	}
+
 	/**
 	 * Looks up the TestProjectConfiguration to build the Fitnesse URL.
 	 * 
@@ -907,6 +1322,95 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 		return sb.toString();
 	}
 
+	/**
+	 * Takes a launched AUT from the standby pool of the application. The pool
+	 * keeps the number of AUTs of the system property
+	 * <code>aut.standby.count</code> launched, each in a workspace of its own
+	 * next to the workspace of this fixture. Until the tear down or the next
+	 * start of this fixture {@link #getWorkspacePath()} returns the workspace
+	 * of the taken AUT.
+	 * 
+	 * @param applicationPath
+	 *            to the executable
+	 * @return true if a standby AUT was taken, false if none is ready.
+	 * @throws Exception
+	 *             on waiting for the previous AUT.
+	 */
+	private boolean startStandby(String applicationPath) throws Exception {
+		AutStandbyPool<SwtBotFixture> pool = getStandbyPool(applicationPath, getWorkspacePath());
+		waitUntilPreviousLaunchIsFinished();
+		awaitPendingStops(getPendingStops(getAutResources()));
+		SwtBotFixture ready = pool.take();
+		if (ready == null) {
+			LOGGER.info("No standby AUT ready, launching one.");
+			return false;
+		}
+		agentSession.close();
+		process = ready.process;
+		agentPort = ready.agentPort;
+		agentSession = ready.agentSession;
+		configurationManager = ready.configurationManager;
+		autConfigIni = ready.autConfigIni;
+		agentBundlePath = ready.agentBundlePath;
+		launchedApplicationPath = ready.launchedApplicationPath;
+		readinessWatcher = ready.readinessWatcher;
+		outputCapture = ready.outputCapture;
+		standbyPool = pool;
+		standbyWorkspace = ready.getConfiguredWorkspacePath();
+		standbyLease = standbyWorkspace;
+		markApplicationStarted();
+		sendMessage("setTestName", testName);
+		return true;
+	}
+
+	/**
+	 * 
+	 * @param applicationPath
+	 *            to the executable
+	 * @param workspacePath
+	 *            base of the workspaces of the standby AUTs.
+	 * @return the standby pool of the application, created on first use.
+	 */
+	private AutStandbyPool<SwtBotFixture> getStandbyPool(final String applicationPath, String workspacePath) {
+		String key = applicationPath + File.pathSeparator + workspacePath;
+		synchronized (STANDBY_POOLS) {
+			AutStandbyPool<SwtBotFixture> pool = STANDBY_POOLS.get(key);
+			if (pool == null) {
+				List<String> workspaces = new ArrayList<String>();
+				// one workspace more for the AUT in use
+				for (int i = 0; i <= STANDBY_COUNT; i++) {
+					workspaces.add(workspacePath + "_standby" + i);
+				}
+				final long standbyLaunchTimeout = launchTimeout;
+				pool = new AutStandbyPool<SwtBotFixture>(STANDBY_COUNT, workspaces,
+						new AutStandbyPool.Launcher<SwtBotFixture>() {
+							@Override
+							public SwtBotFixture launch(String workspace) throws Exception {
+								SwtBotFixture fixture = new SwtBotFixture();
+								fixture.standby = true;
+								fixture.launchTimeout = standbyLaunchTimeout;
+								fixture.setWorkspacePath(workspace);
+								fixture.setAgentPort("auto");
+								fixture.startApplication(applicationPath);
+								return fixture;
+							}
+
+							@Override
+							public boolean isAlive(SwtBotFixture instance) {
+								return instance.process != null && instance.process.isAlive();
+							}
+
+							@Override
+							public void stop(SwtBotFixture instance) {
+								instance.stopApplication();
+							}
+						});
+				STANDBY_POOLS.put(key, pool);
+			}
+			return pool;
+		}
+	}
+
 	/**
 	 * Starts the AUT, an Eclipse e4 RCP executable. The Config is read and
 	 * extended with the SWTBot Agent of the TestEditor. This one launches the
@@ -919,12 +1423,29 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 */
 	public void startApplication(String applicationPath) throws Exception {
 		try {
-			if (System.getProperty("aut.workspace.path") == null) {
+			if (standbyWorkspace != null) {
+				// the standby AUT of the previous test is stopped first
+				waitUntilPreviousLaunchIsFinished();
+				releaseStandbyWorkspace();
+			}
+			if (getConfiguredWorkspacePath() == null) {
 				LOGGER.error("Workspace path <aut.workspace.path> for the aut is not set.");
 			}
-			waitUntilPreviousLaunchIsFinished();
-			runningApp = true;
+			if (!standby && STANDBY_COUNT > 0 && startStandby(applicationPath)) {
+				return;
+			}
+			waitAndMarkApplicationStarted();
+			List<Future<Integer>> stops = getPendingStops(usedAutResources);
+			boolean stopPending = false;
+			for (Future<Integer> stop : stops) {
+				stopPending |= !stop.isDone();
+			}
 			prepareAUTWorkspace();
+			awaitPendingStops(stops);
+			if (stopPending) {
+				// the previous AUT may have changed the workspace on shutdown
+				prepareAUTWorkspace();
+			}
 			if (!new File(applicationPath).exists()) {
 				LOGGER.info("AUT not found at: " + applicationPath);
 				throw new StopTestException("Executable of the AUT not found.");
@@ -935,33 +1456,9 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 
 			String swtBotAgnetBundlePath = System.getProperty("SWT_BOT_AGENT_BUNDLE_PATH");
 
-			String autConfiguration = createAUTConfiguration(applicationPath, swtBotAgnetBundlePath);
-			launchApplicationCommandList = new ArrayList<String>();
-
-			// if the AUT is a MAC OS X binary
-			if (applicationPath.endsWith(".app")) {
-				launchApplicationCommandList.add("open");
-				launchApplicationCommandList.add(applicationPath);
-				launchApplicationCommandList.add("--args");
-			}
-			// for all other binaries (Linux, Windows)
-			else {
-				launchApplicationCommandList.add(applicationPath);
-			}
-
-			launchApplicationCommandList.add("-clean");
-			launchApplicationCommandList.add("-application");
-			launchApplicationCommandList.add("org.testeditor.agent.swtbot.TestEditorSWTBotAgent");
-			launchApplicationCommandList.add("-aut");
-			launchApplicationCommandList.add("org.eclipse.e4.ui.workbench.swt.E4Application");
-			launchApplicationCommandList.add("-data");
-			launchApplicationCommandList.add(getWorkspacePath());
-
-			launchApplicationCommandList.add("-nl");
-			launchApplicationCommandList.add("de_de");
-			launchApplicationCommandList.add("-configuration");
-			launchApplicationCommandList.add(autConfiguration);
-			createAndLaunchProcess();
+			resolveAUTConfiguration(applicationPath, swtBotAgnetBundlePath);
+			launchedApplicationPath = applicationPath;
+			createAndLaunchProcess(applicationPath);
 		} catch (Exception exp) {
 			LOGGER.error("Error Test execution: ", exp);
 			throw new StopTestException(exp);
@@ -971,51 +1468,116 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	/**
 	 * Creates and launches the Process for the AUT.
 	 * 
+	 * @param applicationPath
+	 *            to the executable
 	 * @throws Exception
 	 *             on problems to create the AUT process.
 	 */
-	private void createAndLaunchProcess() throws Exception {
-		LOGGER.trace("Start List: " + Arrays.toString(launchApplicationCommandList.toArray()));
-		ProcessBuilder builder = new ProcessBuilder(launchApplicationCommandList);
-		builder.redirectErrorStream(true);
-		LOGGER.info("Start SWT-app-under-test");
-		process = builder.start();
-		createAndRunLoggerOnStream(process.getInputStream(), false);
-		createAndRunLoggerOnStream(process.getErrorStream(), true);
-		LOGGER.info("Output from SWT-app-under-test");
-		boolean launched = false;
-		int timeOut = 0;
-		while (!launched) {
-			try {
-				Thread.sleep(200);
-				LOGGER.info("waiting for launch");
-				launched = isLaunched();
-				timeOut++;
-				if (timeOut > 200) {
-					stopApplication();
-					throw new StopTestException("Time out launching AUT.");
-				}
-			} catch (InterruptedException e) {
-				LOGGER.error("startApplication InterruptedException: ", e);
+	private void createAndLaunchProcess(String applicationPath) throws Exception {
+		int attempt = 1;
+		while (!launchProcess(applicationPath)) {
+			boolean portTaken = autoAgentPort && attempt < MAX_LAUNCH_ATTEMPTS && isAgentBindFailed();
+			stopApplication();
+			if (!portTaken) {
+				throw new StopTestException("Time out launching AUT.");
 			}
+			// the free port was taken by another process before the agent bound it
+			LOGGER.warn("Agent port " + agentPort + " is in use, launching the AUT on another port.");
+			setAgentPort("auto");
+			markApplicationStarted();
+			attempt++;
 		}
 		LOGGER.info("SWT-app-under-test is ready for test");
-		sendMessage("setTestName" + COMMAND_DELIMITER + testName);
-		try {
-			Thread.sleep(500);
-		} catch (InterruptedException e) {
-			LOGGER.error("startApplication InterruptedException: ", e);
+		if (!standby) {
+			sendMessage("setTestName", testName);
 		}
 	}
 
 	/**
-	 * Waits until a previous launch is terminated.
-	 * 
-	 * @throws InterruptedException
-	 *             while waiting.
+	 * Starts the AUT process and waits until its agent accepts commands.
 	 * 
+	 * @param applicationPath
+	 *            to the executable
+	 * @return true if the AUT is ready, false on timeout or if the process
+	 *         terminated.
+	 * @throws Exception
+	 *             on problems to create the AUT process.
 	 */
-	protected void waitUntilPreviousLaunchIsFinished() throws InterruptedException {
+	private boolean launchProcess(String applicationPath) throws Exception {
+		List<String> launchArguments = createLaunchArguments(applicationPath, getWorkspacePath());
+		LOGGER.trace("Start List: " + Arrays.toString(launchArguments.toArray()));
+		ProcessBuilder builder = new ProcessBuilder(launchArguments);
+		builder.redirectErrorStream(true);
+		agentSession.reset();
+		readinessWatcher = new AutReadinessWatcher(System.getProperty("aut.ready.marker"));
+		LOGGER.info("Start SWT-app-under-test");
+		process = builder.start();
+		startOutputCapture();
+		LOGGER.info("Output from SWT-app-under-test");
+		return waitForLaunch();
+	}
+
+	/**
+	 * 
+	 * @return true if the output of the AUT reports that the agent could not
+	 *         bind its port.
+	 */
+	private boolean isAgentBindFailed() {
+		for (String line : getLastAutOutputLines(FAILURE_OUTPUT_LINES)) {
+			if (line.contains("BindException") || line.contains("Address already in use")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Waits until the agent of the launched process accepts commands.
+	 *
+	 * @return true if the AUT is ready, false on timeout or if the process
+	 *         terminated.
+	 * @throws InterruptedException
+	 *             while waiting.
+	 */
+	private boolean waitForLaunch() throws InterruptedException {
+		LOGGER.info("waiting for launch");
+		return readinessWatcher.awaitReady(process, launchTimeout, new AutReadinessWatcher.Probe() {
+			@Override
+			public boolean isReady() {
+				return isLaunched();
+			}
+		});
+	}
+
+	/**
+	 * Sets the maximum time to wait for the launch of the AUT. The default is
+	 * taken from the system property <code>aut.launch.timeout</code> in
+	 * milliseconds or is 40 seconds.
+	 *
+	 * @param seconds
+	 *            time to wait for the launch in seconds.
+	 * @return always true to show inside FitNesse a positive result
+	 */
+	public boolean setLaunchTimeout(String seconds) {
+		launchTimeout = Long.parseLong(seconds) * 1000;
+		return true;
+	}
+
+	/**
+	 * Waits until a previous launch is terminated. An application of this
+	 * fixture still running after 10 seconds is stopped. An application of
+	 * another fixture with the same agent port or workspace is never stopped:
+	 * the launch waits for it up to the time of the system property
+	 * <code>aut.resource.timeout</code> in milliseconds, default 5 minutes.
+	 * 
+	 * @throws InterruptedException
+	 *             while waiting.
+	 * @throws StopTestException
+	 *             if another fixture still uses the agent port or the
+	 *             workspace after the timeout.
+	 * 
+	 */
+	protected void waitUntilPreviousLaunchIsFinished() throws InterruptedException {
 		LOGGER.info("Already a process running? " + runningApp);
 		int count = 0;
 		while (runningApp) {
@@ -1025,31 +1587,152 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 				LOGGER.error(">>>>>>> Old process blocks AUT start for 10 seconds. Giving up for test: " + testName
 						+ ".");
 				try {
-					List<String> allLines = Files.readAllLines(new File(new File(getWorkspacePath(), ".metadata"),
-							".log").toPath(), Charset.forName("UTF-8"));
-					LOGGER.error("AUT .log content:");
-					for (String string : allLines) {
-						LOGGER.error(string);
-					}
-				} catch (Exception e) {
-					LOGGER.error("Error reading .log of AUT.", e);
+					logLastAutOutput("Old process of test " + testName + " still running");
 				} finally {
 					stopApplication();
 				}
+				count = 0;
+			}
+		}
+		awaitAutResourcesOfOtherFixtures();
+	}
+
+	/**
+	 * Waits until no other fixture uses the agent port or the workspace of
+	 * this fixture. A pending stop of such a fixture is awaited.
+	 * 
+	 * @throws InterruptedException
+	 *             while waiting.
+	 * @throws StopTestException
+	 *             if the resources are still used after the timeout.
+	 */
+	private void awaitAutResourcesOfOtherFixtures() throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(resourceTimeout);
+		while (!isAutResourcesFree()) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				LOGGER.error("Agent port or workspace of test " + testName + " used by another AUT for "
+						+ resourceTimeout + " ms.");
+				throw new StopTestException("Agent port or workspace used by another AUT.");
+			}
+			List<Future<Integer>> stops = new ArrayList<Future<Integer>>();
+			for (Future<Integer> stop : getPendingStops(getAutResources())) {
+				if (!stop.isDone()) {
+					stops.add(stop);
+				}
+			}
+			if (stops.isEmpty()) {
+				Thread.sleep(Math.min(MAX_POLL_INTERVAL, TimeUnit.NANOSECONDS.toMillis(remaining) + 1));
+				continue;
+			}
+			for (Future<Integer> stop : stops) {
+				try {
+					stop.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+				} catch (ExecutionException e) {
+					LOGGER.error("Stopping the previous AUT failed.", e.getCause());
+				} catch (TimeoutException e) {
+					LOGGER.error("AUT of another fixture not terminated for test " + testName + ".");
+					throw new StopTestException("AUT of another fixture not terminated.", e);
+				}
 			}
 		}
 	}
 
 	/**
-	 * Marks application as stopped.
+	 * Waits until a previous launch is terminated and marks the application
+	 * as started in one step, so no other fixture takes the agent port or the
+	 * workspace in between.
+	 * 
+	 * @throws InterruptedException
+	 *             while waiting.
+	 */
+	private void waitAndMarkApplicationStarted() throws InterruptedException {
+		while (true) {
+			waitUntilPreviousLaunchIsFinished();
+			synchronized (AUT_RESOURCES_IN_USE) {
+				if (isAutResourcesFree()) {
+					markApplicationStarted();
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Marks application as started. Further launches of this fixture and of
+	 * all fixtures with the same agent port or workspace wait until the
+	 * application is stopped.
+	 */
+	protected void markApplicationStarted() {
+		synchronized (AUT_RESOURCES_IN_USE) {
+			runningApp = true;
+			usedAutResources = getAutResources();
+			AUT_RESOURCES_IN_USE.addAll(usedAutResources);
+		}
+	}
+
+	/**
+	 * Marks application as stopped. The agent port and the workspace of this
+	 * fixture are free for other fixtures again.
 	 * 
 	 * @return true.
 	 */
 	public boolean markApplicationStopped() {
-		runningApp = false;
+		synchronized (AUT_RESOURCES_IN_USE) {
+			runningApp = false;
+			AUT_RESOURCES_IN_USE.removeAll(usedAutResources);
+			usedAutResources = Collections.emptyList();
+		}
 		return true;
 	}
 
+	/**
+	 * 
+	 * @return true if neither this fixture nor another fixture with the same
+	 *         agent port or workspace runs an application.
+	 */
+	private boolean isAutResourcesFree() {
+		synchronized (AUT_RESOURCES_IN_USE) {
+			return !runningApp && Collections.disjoint(AUT_RESOURCES_IN_USE, getAutResources());
+		}
+	}
+
+	/**
+	 * 
+	 * @return the agent port and the workspace an application of this fixture
+	 *         occupies.
+	 */
+	private List<String> getAutResources() {
+		List<String> resources = new ArrayList<String>();
+		resources.add(portResource(agentPort));
+		try {
+			resources.add(workspaceResource(getWorkspacePath()));
+		} catch (IOException e) {
+			LOGGER.warn("Workspace of the AUT can't be resolved.", e);
+		}
+		return resources;
+	}
+
+	/**
+	 * 
+	 * @param port
+	 *            an agent port.
+	 * @return the key of the port in the resources in use.
+	 */
+	private static String portResource(int port) {
+		return "port " + port;
+	}
+
+	/**
+	 * 
+	 * @param workspacePath
+	 *            canonical path of a workspace.
+	 * @return the key of the workspace in the resources in use.
+	 */
+	private static String workspaceResource(String workspacePath) {
+		return "workspace " + workspacePath;
+	}
+
 	/**
 	 * Executes the AUT for local Debugging outsite the TE Context as an JUnit
 	 * Test.
@@ -1067,43 +1750,21 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	protected void startJUnitApplication(String applicationPath, String workspace, String bundleDir) throws Exception {
 
 		try {
-			String autConfiguration = createAUTConfiguration(applicationPath, bundleDir);
-			ArrayList<String> list = new ArrayList<String>();
-			list.add(applicationPath);
-			list.add("-clean");
-			list.add("-application");
-			list.add("org.testeditor.agent.swtbot.TestEditorSWTBotAgent");
-			list.add("-aut");
-			list.add("org.eclipse.e4.ui.workbench.swt.E4Application");
-			list.add("-data");
-			list.add(workspace);
-			list.add("-nl");
-			list.add("de_de");
-			list.add("-configuration");
-			list.add(autConfiguration);
-			ProcessBuilder builder = new ProcessBuilder(list);
+			awaitPendingStops(getPendingStops(Arrays.asList(portResource(agentPort),
+					workspaceResource(new File(workspace).getCanonicalPath()))));
+			resolveAUTConfiguration(applicationPath, bundleDir);
+			ProcessBuilder builder = new ProcessBuilder(createLaunchArguments(applicationPath, workspace));
 			builder.redirectErrorStream(true);
+			agentSession.reset();
+			readinessWatcher = new AutReadinessWatcher(System.getProperty("aut.ready.marker"));
 			LOGGER.info("Start SWT-app-under-test");
 			process = builder.start();
-			createAndRunLoggerOnStream(process.getInputStream(), false);
-			createAndRunLoggerOnStream(process.getErrorStream(), true);
+			startOutputCapture();
 			LOGGER.info("Output from SWT-app-under-test");
-			boolean launched = false;
-			while (!launched) {
-				try {
-					Thread.sleep(100);
-					LOGGER.info("waiting for launch");
-					launched = isLaunched();
-				} catch (InterruptedException e) {
-					LOGGER.error("startApplication InterruptedException: ", e);
-				}
+			if (!waitForLaunch()) {
+				throw new StopTestException("Time out launching AUT.");
 			}
 			LOGGER.info("SWT-app-under-test is ready for test");
-			try {
-				Thread.sleep(500);
-			} catch (InterruptedException e) {
-				LOGGER.error("startApplication InterruptedException: ", e);
-			}
 		} catch (Exception exp) {
 			LOGGER.error("Error Test execution: ", exp);
 			throw exp;
@@ -1111,126 +1772,72 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	}
 
 	/**
-	 * Cleans the Workspace of the AUT and creates a demo Project.
+	 * Cleans the Workspace of the AUT and creates a demo Project. Only files
+	 * changed since the last reset are restored from the template. Package
+	 * visible for the benchmarks.
 	 * 
 	 * @throws IOException
 	 *             on reset the workspace.
-	 * @throws URISyntaxException
-	 *             on reset the workspace.
 	 */
-	private void prepareAUTWorkspace() throws IOException, URISyntaxException {
-
-		File wsPathFile = new File(getWorkspacePath());
-		Path wsPath = wsPathFile.toPath();
-		if (wsPathFile.exists()) {
-			Files.walkFileTree(wsPath, getDeleteFileVisitor());
-			LOGGER.info("Removed AUT_WS: " + getWorkspacePath());
-		}
-		Files.createDirectory(wsPath);
-		Map<String, String> env = new HashMap<String, String>();
-		env.put("create", "true");
-		FileSystem fs = FileSystems.newFileSystem(getClass().getResource("/DemoWebTests.zip").toURI(), env);
-		Iterable<Path> rootDirectories = fs.getRootDirectories();
-		for (Path root : rootDirectories) {
-			DirectoryStream<Path> directoryStream = Files.newDirectoryStream(root);
-			for (Path path : directoryStream) {
-				if (path.getFileName().startsWith("DemoWebTests.zip")) {
-					LOGGER.info("Found DemoWebTest.");
-					Files.copy(path, Paths.get(wsPath.toString(), "DemoWebTests.zip"));
-					URI uriDemoZip = new URI("jar:" + Paths.get(wsPath.toString(), "/DemoWebTests.zip").toUri());
-					LOGGER.info(uriDemoZip);
-					FileSystem zipFs = FileSystems.newFileSystem(uriDemoZip, env);
-					copyFolder(zipFs.getPath("/"), Paths.get(getWorkspacePath()));
-					zipFs.close();
-				}
-			}
-		}
-		fs.close();
+	void prepareAUTWorkspace() throws IOException {
+		WORKSPACE_FILES.invalidate(Paths.get(getWorkspacePath()));
+		DEMO_WORKSPACE.restore(Paths.get(getWorkspacePath()));
 		LOGGER.info("Created Demoproject in: " + getWorkspacePath());
 	}
 
 	/**
-	 * copies the directories.
+	 * Starts capturing the output of the AUT process. Standard error is
+	 * redirected into standard output by the process builder.
+	 */
+	private void startOutputCapture() {
+		outputCapture = new AutOutputCapture(readinessWatcher);
+		outputCapture.start(process.getInputStream());
+	}
+
+	/**
 	 * 
-	 * @param src
-	 *            source-directory
-	 * @param dest
-	 *            destination-directory
-	 * @throws IOException
-	 *             IOException
+	 * @param count
+	 *            maximal number of lines.
+	 * @return the last lines of the output of the AUT, oldest first.
 	 */
-	private void copyFolder(Path src, Path dest) throws IOException {
-		if (Files.isDirectory(src)) {
-			// if directory not exists, create it
-			if (!Files.exists(dest)) {
-				Files.createDirectory(dest);
-			}
-			DirectoryStream<Path> directoryStream = Files.newDirectoryStream(src);
-			for (Path path : directoryStream) {
-				Path srcFile = path;
-				Path destFile = Paths.get(dest.toString() + "/" + path.getFileName());
-				copyFolder(srcFile, destFile);
-			}
-		} else {
-			Files.copy(src, dest, StandardCopyOption.REPLACE_EXISTING);
+	public List<String> getLastAutOutputLines(int count) {
+		if (outputCapture == null) {
+			return new ArrayList<String>();
 		}
+		return outputCapture.getLastLines(count);
 	}
 
 	/**
-	 * Creates a thread to log the content of the input stream. This thread is
-	 * started after creation.
+	 * Logs the last lines of the output of the AUT as error.
 	 * 
-	 * @param inputStream
-	 *            to piped to the logger.
-	 * @param errorStream
-	 *            if true the logger uses the error level in other cases info.
+	 * @param reason
+	 *            of the logging.
 	 */
-	private void createAndRunLoggerOnStream(final InputStream inputStream, final boolean errorStream) {
-		new Thread(new Runnable() {
-			@Override
-			public void run() {
-				char[] cbuf = new char[8192];
-				int len = -1;
-				try {
-					InputStreamReader reader = new InputStreamReader(inputStream, CHARSET_UTF_8);
-					while ((len = reader.read(cbuf)) > 0) {
-						if (errorStream) {
-							LOGGER.error(new String(cbuf, 0, len));
-						} else {
-							LOGGER.info(new String(cbuf, 0, len));
-						}
-					}
-				} catch (IOException e) {
-					LOGGER.debug("Error reading remote Process Stream", e);
-				}
-			}
-		}).start();
+	private void logLastAutOutput(String reason) {
+		List<String> lastLines = getLastAutOutputLines(FAILURE_OUTPUT_LINES);
+		if (lastLines.isEmpty()) {
+			return;
+		}
+		StringBuilder sb = new StringBuilder(reason).append(", last output of the AUT:");
+		for (String line : lastLines) {
+			sb.append('\n').append(line);
+		}
+		LOGGER.error(sb);
 	}
 
 	/**
-	 * copies the original config.ini of the SWT-app-under-test in the
-	 * temporary-directory of the os and adds a reference to the SWTBotAgent.
-	 * This is necessary to start the application with the SWTBotAgent.
+	 * Looks up the original config.ini of the SWT-app-under-test and the
+	 * SWTBotAgent bundle. Both are used for the configuration of every launch,
+	 * which is necessary to start the application with the SWTBotAgent.
 	 * 
 	 * 
 	 * @param applicationPath
 	 *            the path of the application.
 	 * @param swtBotAgentBundlePath
 	 *            Directory to the TestEditor bundle directory.
-	 * @return the absolutPath to the directory of the config.ini of the
-	 *         application.
-	 * @throws IOException
-	 *             on creating the property file.
 	 */
-	private String createAUTConfiguration(String applicationPath, String swtBotAgentBundlePath) throws IOException {
-		FileInputStream fileInputStreamConfig = null;
-		FileOutputStream fileOutputStream = null;
-		Properties properties = new Properties();
-		String result = null;
-		fileInputStreamConfig = new FileInputStream(lookUpConfigIni(applicationPath));
-		properties.load(fileInputStreamConfig);
-		fileInputStreamConfig.close();
-		String bundles = properties.getProperty("osgi.bundles");
+	private void resolveAUTConfiguration(String applicationPath, String swtBotAgentBundlePath) {
+		autConfigIni = lookUpConfigIni(applicationPath);
 		LOGGER.info("Bundle: " + swtBotAgentBundlePath);
 		// begin; This part is just for considering the testing of an swt
 		// application with the test-editor started from IDE
@@ -1243,19 +1850,51 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 		}
 		// end;
 		LOGGER.info("Found Path to Agent Bundle: " + swtBotAgentBundlePath);
-		properties.setProperty("osgi.bundles", bundles + ",reference:file:" + swtBotAgentBundlePath);
-		File file = new File(System.getProperty("java.io.tmpdir") + File.separator + "configuration");
-		if (!file.exists()) {
-			if (!file.mkdir()) {
-				return "";
-			}
+		agentBundlePath = swtBotAgentBundlePath;
+	}
+
+	/**
+	 * Provides the configuration directory for the next launch and creates
+	 * the launch arguments of the AUT with it. The argument <code>-clean</code>
+	 * is only added if the OSGi cache of the directory is not reusable.
+	 * 
+	 * @param applicationPath
+	 *            to the executable
+	 * @param workspace
+	 *            the workspace of the AUT.
+	 * @return the command line launching the AUT.
+	 * @throws IOException
+	 *             on creating the configuration.
+	 */
+	private List<String> createLaunchArguments(String applicationPath, String workspace) throws IOException {
+		File configurationDir = configurationManager.prepare(autConfigIni, agentBundlePath);
+		List<String> arguments = new ArrayList<String>();
+		// if the AUT is a MAC OS X binary
+		if (applicationPath.endsWith(".app")) {
+			arguments.add("open");
+			arguments.add(applicationPath);
+			arguments.add("--args");
+		}
+		// for all other binaries (Linux, Windows)
+		else {
+			arguments.add(applicationPath);
+		}
+		if (configurationManager.isCleanRequired()) {
+			arguments.add("-clean");
 		}
-		result = file.getAbsolutePath() + File.separator + "config.ini";
-		fileOutputStream = new FileOutputStream(result);
-		properties.store(fileOutputStream, "Changed for TestEditor run.");
-		fileOutputStream.close();
-		LOGGER.info("New congfig.ini: " + result);
-		return new File(result).getParentFile().getAbsolutePath();
+		arguments.add("-application");
+		arguments.add("org.testeditor.agent.swtbot.TestEditorSWTBotAgent");
+		arguments.add("-aut");
+		arguments.add("org.eclipse.e4.ui.workbench.swt.E4Application");
+		arguments.add("-data");
+		arguments.add(workspace);
+		arguments.add("-nl");
+		arguments.add("de_de");
+		arguments.add("-configuration");
+		arguments.add(configurationDir.getAbsolutePath());
+		arguments.add("-agentport");
+		arguments.add(Integer.toString(agentPort));
+		return arguments;
 	}
 
 	/**
@@ -1305,13 +1944,13 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	private boolean isLaunched() {
 		try {
 			Socket client = getSocket();
-			LOGGER.info("Is server ready for " + testName + "?");
+			LOGGER.trace("Is server ready for " + testName + "?");
 			PrintStream os = new PrintStream(client.getOutputStream(), false, CHARSET_UTF_8);
 			os.println("isLaunched");
 			os.flush();
 			BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), CHARSET_UTF_8));
 			String s = in.readLine();
-			LOGGER.info(s);
+			LOGGER.trace(s);
 			client.close();
 			return Boolean.valueOf(s);
 		} catch (UnknownHostException e) {
@@ -1333,49 +1972,132 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 *             by socket
 	 */
 	private Socket getSocket() throws UnknownHostException, IOException {
-		return new Socket(AGENT_HOST, AGENT_PORT);
+		return new Socket(AGENT_HOST, agentPort);
 	}
 
 	/**
-	 * 
-	 * @param elementKey
-	 *            the key for the element-list
-	 * 
-	 * @return the value to the key in the element-list, if found, else the key.
+	 * Takes over an AUT process launched outside of this fixture, so it is
+	 * stopped with the AUT of this fixture.
+	 *
+	 * @param autProcess
+	 *            the process of the AUT.
 	 */
-	private String getLocator(String elementKey) {
-		String locator = getLocatorWrapped(elementKey);
-		if (locator == null) {
-			return elementKey;
+	void setProcess(Process autProcess) {
+		process = autProcess;
+	}
+
+	/**
+	 * Sets the port of the SWTBot agent of the AUT launched by this fixture.
+	 * The port is passed to the agent with the launch argument
+	 * <code>-agentport</code>. The default is taken from the system property
+	 * <code>aut.agent.port</code> or is 9090.
+	 *
+	 * @param port
+	 *            the port number or <code>auto</code> for a free port.
+	 * @return always true to show inside FitNesse a positive result
+	 */
+	public boolean setAgentPort(String port) {
+		agentPort = resolveAgentPort(port);
+		autoAgentPort = isAutoPort(port);
+		agentSession.close();
+		agentSession = new AgentSession(AGENT_HOST, agentPort);
+		return true;
+	}
+
+	/**
+	 *
+	 * @return the port of the SWTBot agent of this fixture.
+	 */
+	public int getAgentPort() {
+		return agentPort;
+	}
+
+	/**
+	 *
+	 * @param port
+	 *            the port number, <code>auto</code> for a free port or null
+	 *            for the default port.
+	 * @return the port to be used for the agent.
+	 */
+	private static int resolveAgentPort(String port) {
+		if (port == null || port.trim().isEmpty()) {
+			return AGENT_PORT;
+		}
+		if (!isAutoPort(port)) {
+			return Integer.parseInt(port.trim());
+		}
+		try {
+			while (true) {
+				int freePort;
+				ServerSocket serverSocket = new ServerSocket(0);
+				try {
+					freePort = serverSocket.getLocalPort();
+				} finally {
+					serverSocket.close();
+				}
+				synchronized (AUT_RESOURCES_IN_USE) {
+					// the port may have been handed out to an AUT still starting
+					if (!AUT_RESOURCES_IN_USE.contains(portResource(freePort))) {
+						return freePort;
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new StopTestException("No free port for the SWTBot agent.", e);
 		}
-		return locator;
+	}
+
+	/**
+	 * 
+	 * @param port
+	 *            the configured port.
+	 * @return true if a free port is to be chosen.
+	 */
+	private static boolean isAutoPort(String port) {
+		return port != null && "auto".equalsIgnoreCase(port.trim());
 	}
 
 	/**
 	 * 
 	 * @param elementKey
 	 *            the key for the element-list
-	 * @return the value to the key, if found.
+	 * 
+	 * @return the value to the key in the element-list, if found, else the key.
 	 */
-	private String getLocatorWrapped(String elementKey) {
-		String locator = null;
-		try {
-			locator = elementListService.getValue(elementKey);
-			return locator;
-		} catch (ElementKeyNotFoundException e) {
-			String message = "The specified Key for the Gui-Element \"" + elementKey + "\" could not be found!";
-			LOGGER.info(message, e);
-			return null;
-		}
+	private String getLocator(String elementKey) {
+		long start = System.nanoTime();
+		String locator = locatorCache.getLocator(elementKey);
+		commandTimer.addPhase(Phase.RESOLVE, System.nanoTime() - start);
+		return locator;
 	}
 
 	@Override
 	public boolean tearDown() {
 		LOGGER.info("TearDown to cleanup the AUT.");
-		stopApplication();
+		try {
+			raiseAsyncErrors();
+		} finally {
+			stopApplicationAsync();
+			releaseStandbyWorkspace();
+		}
 		return true;
 	}
 
+	/**
+	 * Returns the workspace of the standby AUT taken by this fixture to the
+	 * pool. The pool restores the workspace for the next standby AUT once the
+	 * taken AUT has terminated, so it is no longer the workspace of this
+	 * fixture.
+	 */
+	private void releaseStandbyWorkspace() {
+		String lease = standbyLease;
+		standbyWorkspace = null;
+		standbyLease = null;
+		if (lease != null) {
+			standbyPool.release(lease);
+		}
+	}
+
 	@Override
 	public String getTestName() {
 		return testName;
@@ -1396,9 +2118,11 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	public void preInvoke(Method method, Object instance, Object... convertedArgs) throws InvocationTargetException,
 			IllegalAccessException {
 
-		String label = PerformanceLogHandler.getLabel(method, convertedArgs);
-
-		javaMon = MonitorFactory.start(label);
+		if (LOGGER.isTraceEnabled()) {
+			LOGGER.trace("Invoke " + PerformanceLogHandler.getLabel(method, convertedArgs));
+		}
+		commandTimer.begin();
+		invokeStart = System.nanoTime();
 	}
 
 	/*
@@ -1412,7 +2136,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	public void postInvoke(Method method, Object instance, Object... convertedArgs) throws InvocationTargetException,
 			IllegalAccessException {
 
-		javaMon.stop();
+		commandTimer.record(method, System.nanoTime() - invokeStart);
 
 	}
 
@@ -1423,14 +2147,21 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 
 		try {
 
+			// takes and resets the latencies of the last called Test
+			Map<String, LatencyHistogram> commands = commandTimer.drain();
+			Map<String, Map<String, LatencyHistogram>> phases = commandTimer.drainPhases();
+
 			if (LOGGER.isInfoEnabled()) {
-				LOGGER.info("TOTAL_TIME_FOR_INDIVIDUAL_TEST:" + MonitorFactory.getRootMonitor().getTotal());
+				long total = 0;
+				for (LatencyHistogram histogram : commands.values()) {
+					total += histogram.getTotal();
+				}
+				LOGGER.info("TOTAL_TIME_FOR_INDIVIDUAL_TEST:" + total / 1000000.0);
+				LOGGER.info("TIME_SAVED_BY_IDLE_WAITS:" + savedWaitMillis);
 			}
+			savedWaitMillis = 0;
 
-			new PerformanceLogHandler().logPerformanceData(getTestName());
-
-			// resetting logdata for the last called Test
-			javaMon.reset();
+			new PerformanceLogHandler().logPerformanceData(getTestName(), commands, phases);
 
 		} catch (Exception e) {
 			LOGGER.error(e.getMessage());
@@ -1446,7 +2177,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 *             on looking up the real path.
 	 */
 	public String getWorkspacePath() throws IOException {
-		String workspacePath = System.getProperty("aut.workspace.path");
+		String workspacePath = getConfiguredWorkspacePath();
 
 		if (workspacePath == null) {
 			workspacePath = "@user.home/.testeditor_aut";
@@ -1455,6 +2186,36 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 		return new File(workspacePath).getCanonicalPath();
 	}
 
+	/**
+	 * Sets the workspace of the AUT launched by this fixture. Without a
+	 * workspace set the system property <code>aut.workspace.path</code> is
+	 * used.
+	 *
+	 * @param workspacePath
+	 *            path to the workspace of the AUT.
+	 * @return always true to show inside FitNesse a positive result
+	 */
+	public boolean setWorkspacePath(String workspacePath) {
+		instanceWorkspacePath = workspacePath;
+		return true;
+	}
+
+	/**
+	 *
+	 * @return the workspace of a standby AUT taken by this fixture, the
+	 *         workspace set for this fixture or the system property
+	 *         <code>aut.workspace.path</code>.
+	 */
+	private String getConfiguredWorkspacePath() {
+		if (standbyWorkspace != null) {
+			return standbyWorkspace;
+		}
+		if (instanceWorkspacePath != null) {
+			return instanceWorkspacePath;
+		}
+		return System.getProperty("aut.workspace.path");
+	}
+
 	/**
 	 * 
 	 * @param proprtyFileName
@@ -1503,6 +2264,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 			LOGGER.trace("Created: " + tsDir.toAbsolutePath());
 			String xml = "<?xml version=\"1.0\"?><properties><Edit>true</Edit><Files>true</Files><Properties>true</Properties><RecentChanges>true</RecentChanges><Refactor>true</Refactor><Search>true</Search><Test/><Versions>true</Versions><WhereUsed>true</WhereUsed></properties>";
 			Files.write(Paths.get(destPath, "properties.xml"), xml.getBytes());
+			WORKSPACE_FILES.invalidate(tsDir);
 			return new File(tsDir.toFile(), "content.txt").createNewFile();
 		} catch (Exception e) {
 			LOGGER.error("Error creating testobject from " + destinationTestStructure, e);
@@ -1520,16 +2282,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return true if it was possible to click on the button.
 	 */
 	public boolean waitForButtonAndClick(String locator, int timeOut) {
-		int timeOutMax = timeOut * 1000;
-		int timeOutCounter = 0;
-		while (!isButtonEnabled(locator) & timeOutMax > timeOutCounter) {
-			try {
-				Thread.sleep(100);
-			} catch (InterruptedException e) {
-				LOGGER.error("Interruption by waiting for ui elment,", e);
-			}
-			timeOutCounter = timeOutCounter + 100;
-		}
+		waitUntil(WaitCondition.BUTTON_ENABLED, timeOut, getLocator(locator));
 		return clickButton(locator);
 	}
 
@@ -1544,6 +2297,129 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 		return waitForButtonAndClick(locator, 30);
 	}
 
+	/**
+	 * Waits until a button is enabled.
+	 * 
+	 * @param locator
+	 *            of the button.
+	 * @param timeOut
+	 *            in seconds.
+	 * @return true if the button got enabled within the timeout.
+	 */
+	public boolean waitUntilButtonEnabled(String locator, int timeOut) {
+		return waitUntil(WaitCondition.BUTTON_ENABLED, timeOut, getLocator(locator));
+	}
+
+	/**
+	 * Waits until a check box is checked.
+	 * 
+	 * @param locator
+	 *            of the check box.
+	 * @param timeOut
+	 *            in seconds.
+	 * @return true if the check box got checked within the timeout.
+	 */
+	public boolean waitUntilCheckBoxChecked(String locator, int timeOut) {
+		return waitUntil(WaitCondition.CHECKBOX_CHECKED, timeOut, getLocator(locator));
+	}
+
+	/**
+	 * Waits until a text is visible.
+	 * 
+	 * @param text
+	 *            the text to wait for.
+	 * @param timeOut
+	 *            in seconds.
+	 * @return true if the text got visible within the timeout.
+	 */
+	public boolean waitUntilTextIsVisible(String text, int timeOut) {
+		return waitUntil(WaitCondition.TEXT_VISIBLE, timeOut, text);
+	}
+
+	/**
+	 * Waits until a text field contains the text.
+	 * 
+	 * @param locator
+	 *            of the text field.
+	 * @param comptext
+	 *            the expected content.
+	 * @param timeOut
+	 *            in seconds.
+	 * @return true if the text field contained the text within the timeout.
+	 */
+	public boolean waitUntilTextEquals(String locator, String comptext, int timeOut) {
+		return waitUntil(WaitCondition.TEXT_EQUALS, timeOut, getLocator(locator), comptext);
+	}
+
+	/**
+	 * Waits until a widget has the expected number of items.
+	 * 
+	 * @param locator
+	 *            of the widget with items.
+	 * @param expectedCount
+	 *            count of items in the widget.
+	 * @param timeOut
+	 *            in seconds.
+	 * @return true if the widget had the count within the timeout.
+	 */
+	public boolean waitUntilItemCountEquals(String locator, String expectedCount, int timeOut) {
+		return waitUntil(WaitCondition.ITEM_COUNT_EQUALS, timeOut, getLocator(locator), expectedCount);
+	}
+
+	/**
+	 * Waits until the condition is met. Agents supporting server side waits
+	 * evaluate the condition on the UI thread and reply once, so the wait
+	 * ends as soon as the condition is met. Other agents are polled. In a
+	 * batch the wait is queued if the agent supports it, otherwise the
+	 * commands queued so far are sent before the agent is polled.
+	 * 
+	 * @param condition
+	 *            to wait for.
+	 * @param timeOut
+	 *            in seconds.
+	 * @param arguments
+	 *            of the condition with resolved locators.
+	 * @return true if the condition was met within the timeout.
+	 */
+	private boolean waitUntil(WaitCondition condition, int timeOut, String... arguments) {
+		long timeoutMillis = timeOut * 1000L;
+		if (agentSession.supports(WaitCondition.WAIT_COMMAND)) {
+			return sendMessage(condition.toWaitCommand(timeoutMillis, arguments), null);
+		}
+		sendQueuedBatchMessages();
+		raiseAsyncErrors();
+		AgentCommand message = condition.toCheckCommand(arguments);
+		LOGGER.info("Poll AUT until:" + message);
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		long interval = MIN_POLL_INTERVAL;
+		while (true) {
+			try {
+				AgentResponse result = agentSession.send(message, null);
+				addPhases(result);
+				if (result.isTrue()) {
+					return true;
+				}
+				if (result.isError()) {
+					LOGGER.error("Fails: " + result);
+					logLastAutOutput("Message " + message + " fails");
+					throw new RuntimeException("Message: " + message + " fails with: " + result);
+				}
+				if (LOGGER.isTraceEnabled()) {
+					LOGGER.trace("Condition not met: " + result);
+				}
+			} catch (IOException e) {
+				LOGGER.debug("Poll of the AUT fails", e);
+			}
+			long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if (remaining <= 0) {
+				LOGGER.info("Timeout after " + timeoutMillis + " ms waiting for:" + message);
+				return false;
+			}
+			waitTime(Math.min(interval, remaining));
+			interval = Math.min(interval * 2, MAX_POLL_INTERVAL);
+		}
+	}
+
 	/**
 	 * Selects an entry in the active auto complete field.
 	 * 
@@ -1552,7 +2428,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 * @return the result of the message.
 	 */
 	public boolean selectElementInAtuocompleteWidget(String item) {
-		return sendMessage("selectElementInAtuocompleteWidget" + COMMAND_DELIMITER + item);
+		return sendMessage("selectElementInAtuocompleteWidget", item);
 	}
 
 	/**
@@ -1575,7 +2451,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 */
 	public boolean checkTextInCodeLine(String testFilePath, String text, int line) throws StopTestException,
 			IOException {
-		String workspacePath = System.getProperty("aut.workspace.path");
+		String workspacePath = getConfiguredWorkspacePath();
 		if (workspacePath == null || workspacePath.equals("")) {
 			LOGGER.error("aut.workspace.path not set");
 			throw new StopTestException("aut.workspace.path not set");
@@ -1584,7 +2460,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 			throw new StopTestException("line 0 not exist");
 		}
 
-		return sourceList(workspacePath, testFilePath).get(line - 1).contains(text);
+		return sourceLine(workspacePath, testFilePath, line).contains(text);
 	}
 
 	/**
@@ -1607,7 +2483,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	 */
 	public boolean checkNotTextInCodeLine(String testFilePath, String text, int line) throws StopTestException,
 			IOException {
-		String workspacePath = System.getProperty("aut.workspace.path");
+		String workspacePath = getConfiguredWorkspacePath();
 		if (workspacePath == null || workspacePath.equals("")) {
 			LOGGER.error("aut.workspace.path not set");
 			throw new StopTestException("aut.workspace.path not set");
@@ -1616,35 +2492,33 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 			throw new StopTestException("line 0 not exist");
 		}
 
-		return !sourceList(workspacePath, testFilePath).get(line - 1).contains(text);
+		return !sourceLine(workspacePath, testFilePath, line).contains(text);
 	}
 
 	/**
-	 * Opens a file in the workspace and returns the source as a List.
+	 * Looks up a line of a file in the workspace. The file is read only if it
+	 * changed since the last lookup.
 	 * 
 	 * @param directory
 	 *            start path parameter
 	 * @param testFilePath
 	 *            comma separated path to file path
-	 * @return a list of all source lines
+	 * @param line
+	 *            line number starting at 1
+	 * @return the source line
 	 * @throws IOException
 	 *             if file not exist
 	 */
-	private List<String> sourceList(String directory, String testFilePath) throws IOException {
+	private String sourceLine(String directory, String testFilePath, int line) throws IOException {
 		String[] folder = testFilePath.split(",");
-		directory += File.separator + folder[0] + File.separator + "FitNesseRoot"; // Project
-																					// name
-																					// and
-																					// FitNsesseRoot
+		// Project name and FitNesseRoot
+		StringBuilder path = new StringBuilder(directory).append(File.separator).append(folder[0])
+				.append(File.separator).append("FitNesseRoot");
 		for (String string : folder) {
-			directory += File.separator + string;
+			path.append(File.separator).append(string);
 		}
-		directory += File.separator + "content.txt";
-		File dirFile = new File(directory);
-		Path path = dirFile.toPath();
-		LOGGER.warn("PATH " + path.toString() + "  " + path.toFile().exists() + "---" + Charset.defaultCharset());
-		List<String> lines = Files.readAllLines(path, Charset.defaultCharset());
-		return lines;
+		path.append(File.separator).append("content.txt");
+		return WORKSPACE_FILES.get(Paths.get(path.toString())).getLine(line - 1);
 	}
 
 	/**
@@ -1685,22 +2559,13 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 			throw new StopTestException(msg);
 		}
 
-		if (source.isDirectory()) {
-			try {
-				copyFolder(sourcePath, targetPath);
-			} catch (IOException e) {
-				String msg = "cannot copy directory '" + source + "' to '" + target + "'";
-				LOGGER.error(msg, e);
-				throw new StopTestException(msg, e);
-			}
-		} else {
-			try {
-				Files.copy(sourcePath, targetPath, StandardCopyOption.REPLACE_EXISTING);
-			} catch (IOException e) {
-				String msg = "cannot copy directory '" + source + "' to '" + target + "'";
-				LOGGER.error(msg, e);
-				throw new StopTestException(msg, e);
-			}
+		try {
+			WORKSPACE_FILES.invalidate(targetPath);
+			fileOperations.copy(sourcePath, targetPath);
+		} catch (IOException e) {
+			String msg = "cannot copy directory '" + source + "' to '" + target + "'";
+			LOGGER.error(msg, e);
+			throw new StopTestException(msg, e);
 		}
 
 	}
@@ -1724,51 +2589,18 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 		File target = new File(workspaceDir, relTargetPath);
 
 		if (target.exists()) {
-			if (target.isDirectory()) {
-				deleteFolder(target);
-			} else {
-				try {
-					Files.delete(target.toPath());
-				} catch (IOException e) {
-					String msg = "cannot delete file '" + target + "'";
-					LOGGER.error(msg, e);
-					throw new StopTestException(msg, e);
-				}
+			try {
+				WORKSPACE_FILES.invalidate(target.toPath());
+				fileOperations.delete(target.toPath());
+			} catch (IOException e) {
+				String msg = "cannot delete file '" + target + "'";
+				LOGGER.error(msg, e);
+				throw new StopTestException(msg, e);
 			}
 		}
 
 	}
 
-	/**
-	 * Deletes folder recursively.
-	 * 
-	 * @param target
-	 *            to be deleted.
-	 */
-	private void deleteFolder(File target) {
-		List<File> files = Arrays.asList(target.listFiles());
-		for (File file : files) {
-			if (file.isFile()) {
-				try {
-					Files.delete(file.toPath());
-				} catch (IOException e) {
-					String msg = "cannot delete file '" + target + "'";
-					LOGGER.error(msg, e);
-					throw new StopTestException(msg, e);
-				}
-			} else {
-				deleteFolder(file);
-			}
-		}
-		try {
-			Files.delete(target.toPath());
-		} catch (IOException e) {
-			String msg = "cannot delete file '" + target + "'";
-			LOGGER.error(msg, e);
-			throw new StopTestException(msg, e);
-		}
-	}
-
 	/**
 	 * create or overwrite a file in the workspace and fill it with the given
 	 * content.
@@ -1805,6 +2637,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 			PrintWriter pw = new PrintWriter(target);
 			pw.print(content);
 			pw.close();
+			WORKSPACE_FILES.invalidate(target.toPath());
 		} catch (FileNotFoundException e) {
 			String msg = "cannot create file '" + target + "'";
 			LOGGER.error(msg, e);
@@ -1814,8 +2647,7 @@ public class SwtBotFixture implements StoppableFixture, Fixture {
 	}
 
 	public boolean checkValueInDropDownBox(String dropDownBoxID, String value) {
-		return sendMessage("checkDropDownContains" + COMMAND_DELIMITER + getLocator(dropDownBoxID) + COMMAND_DELIMITER
-				+ value);
+		return sendMessage("checkDropDownContains", getLocator(dropDownBoxID), value);
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * The framed text format understood by all agents supporting frames. The
+ * payload is the command joined with its arguments by
+ * {@link AgentCommand#DELIMITER}, so arguments must not contain the
+ * delimiter.
+ *
+ * <pre>
+ * request: &lt;byte length&gt;\n&lt;UTF-8 command;arguments&gt;
+ * reply:   &lt;byte length&gt;[;&lt;agent time in microseconds&gt;]\n&lt;UTF-8 payload&gt;
+ * </pre>
+ */
+class TextAgentCodec implements AgentCodec {
+
+	/** The codec; it has no state. */
+	static final TextAgentCodec INSTANCE = new TextAgentCodec();
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final int MAX_LENGTH_DIGITS = 18;
+	private static final char TIMING_DELIMITER = ';';
+
+	@Override
+	public void writeRequest(OutputStream out, AgentCommand command) throws IOException {
+		byte[] payload = command.toString().getBytes(UTF_8);
+		out.write(Integer.toString(payload.length).getBytes(UTF_8));
+		out.write('\n');
+		out.write(payload);
+	}
+
+	/**
+	 * Reads the header of a frame up to the line break and the payload. The
+	 * header is the decimal length of the payload, optionally followed by
+	 * <code>;</code> and the execution time of the command in the agent in
+	 * microseconds.
+	 */
+	@Override
+	public AgentResponse readReply(InputStream in, AgentResponseReader reader, OutputStream sink) throws IOException {
+		long length = 0;
+		int digits = 0;
+		long micros = -1;
+		int c;
+		while ((c = in.read()) != '\n') {
+			if (c == -1) {
+				throw new EOFException("Agent closed the connection.");
+			}
+			if (c >= '0' && c <= '9' && micros >= 0) {
+				micros = Math.min(micros * 10 + c - '0', Long.MAX_VALUE / 10000);
+			} else if (c >= '0' && c <= '9' && digits < MAX_LENGTH_DIGITS) {
+				length = length * 10 + c - '0';
+				digits++;
+			} else if (c == TIMING_DELIMITER && digits > 0 && micros < 0) {
+				micros = 0;
+			} else if (c != '\r' && c != ' ') {
+				throw new IOException("Invalid frame header from agent at: " + (char) c);
+			}
+		}
+		if (digits == 0) {
+			throw new IOException("Empty frame header from agent.");
+		}
+		AgentResponse reply = reader.read(in, length, sink);
+		if (micros >= 0) {
+			reply.setAgentNanos(micros * 1000L);
+		}
+		return reply;
+	}
+
+}
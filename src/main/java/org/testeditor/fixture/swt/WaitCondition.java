@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+/**
+ * Conditions the fixture can wait for. Agents announcing the capability
+ * <code>waitUntil</code> evaluate the condition on the UI thread until it is
+ * met or the timeout elapses and send a single reply:
+ *
+ * <pre>
+ * waitUntil;&lt;condition&gt;;&lt;timeout in milliseconds&gt;;&lt;arguments&gt;  -&gt;  true | false
+ * </pre>
+ *
+ * For other agents the fixture polls the check command of the condition.
+ */
+enum WaitCondition {
+
+	/** The button is enabled. Arguments: locator. */
+	BUTTON_ENABLED("buttonEnabled", "isButtonEnabled"),
+
+	/** The check box is checked. Arguments: locator. */
+	CHECKBOX_CHECKED("checkBoxChecked", "isCheckBoxChecked"),
+
+	/** A widget shows the text. Arguments: text. */
+	TEXT_VISIBLE("textVisible", "textIsVisible"),
+
+	/** The text field contains the text. Arguments: locator, text. */
+	TEXT_EQUALS("textEquals", "compareTextById"),
+
+	/** The widget has the number of items. Arguments: locator, count. */
+	ITEM_COUNT_EQUALS("itemCountEquals", "countItemsEquals");
+
+	/** Command of the agent evaluating a condition until a deadline. */
+	static final String WAIT_COMMAND = "waitUntil";
+
+	private final String agentName;
+	private final String checkCommand;
+
+	/**
+	 *
+	 * @param agentName
+	 *            name of the condition in the wait command.
+	 * @param checkCommand
+	 *            agent command evaluating the condition once.
+	 */
+	private WaitCondition(String agentName, String checkCommand) {
+		this.agentName = agentName;
+		this.checkCommand = checkCommand;
+	}
+
+	/**
+	 *
+	 * @param timeoutMillis
+	 *            time the agent waits for the condition.
+	 * @param arguments
+	 *            of the condition.
+	 * @return the command waiting in the agent.
+	 */
+	AgentCommand toWaitCommand(long timeoutMillis, String... arguments) {
+		Object[] values = new Object[arguments.length + 2];
+		values[0] = agentName;
+		values[1] = timeoutMillis;
+		System.arraycopy(arguments, 0, values, 2, arguments.length);
+		return new AgentCommand(WAIT_COMMAND, values);
+	}
+
+	/**
+	 *
+	 * @param arguments
+	 *            of the condition.
+	 * @return the command checking the condition once.
+	 */
+	AgentCommand toCheckCommand(String... arguments) {
+		return new AgentCommand(checkCommand, (Object[]) arguments);
+	}
+
+}
@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Lines of workspace files read by the checks of the fixture. A file is read
+ * once into a byte array with an index of the line starts; a line is decoded
+ * on its first access. Before each access the size and modification time of
+ * the file are compared with the cached copy, so changes made by the AUT are
+ * seen. A file modified within the timestamp granularity of the file system
+ * before it was read is read again on the next access, as a later change of
+ * the same size could not be told apart. Writes of the fixture itself
+ * invalidate the cache explicitly.
+ */
+public class WorkspaceFileCache {
+
+	private static final Logger LOGGER = Logger.getLogger(WorkspaceFileCache.class);
+	private static final long TIMESTAMP_GRANULARITY_MILLIS = 2000;
+	private static final int MAX_FILES = 64;
+
+	private final ConcurrentMap<Path, IndexedFile> files = new ConcurrentHashMap<Path, IndexedFile>();
+	private final Charset charset;
+
+	/**
+	 * Creates a cache decoding the files with the platform charset.
+	 */
+	public WorkspaceFileCache() {
+		this(Charset.defaultCharset());
+	}
+
+	/**
+	 *
+	 * @param charset
+	 *            of the files.
+	 */
+	public WorkspaceFileCache(Charset charset) {
+		this.charset = charset;
+	}
+
+	/**
+	 * Lines of a file, split like {@link Files#readAllLines(Path, Charset)}.
+	 */
+	public final class IndexedFile {
+
+		private final long size;
+		private final long modified;
+		private final boolean racy;
+		private final byte[] content;
+		private final int[] lineStarts;
+		private final int[] lineEnds;
+		private final String[] lines;
+
+		/**
+		 *
+		 * @param attributes
+		 *            of the file before reading.
+		 * @param content
+		 *            of the file.
+		 * @param readAt
+		 *            time of reading in milliseconds.
+		 */
+		private IndexedFile(BasicFileAttributes attributes, byte[] content, long readAt) {
+			this.size = attributes.size();
+			this.modified = attributes.lastModifiedTime().toMillis();
+			this.racy = readAt - modified < TIMESTAMP_GRANULARITY_MILLIS || content.length != size;
+			this.content = content;
+			int[] starts = new int[16];
+			int[] ends = new int[16];
+			int count = 0;
+			int start = 0;
+			int i = 0;
+			while (i < content.length) {
+				byte b = content[i];
+				if (b == '\n' || b == '\r') {
+					if (count == starts.length) {
+						starts = Arrays.copyOf(starts, count * 2);
+						ends = Arrays.copyOf(ends, count * 2);
+					}
+					starts[count] = start;
+					ends[count] = i;
+					count++;
+					if (b == '\r' && i + 1 < content.length && content[i + 1] == '\n') {
+						i++;
+					}
+					start = i + 1;
+				}
+				i++;
+			}
+			if (start < content.length) {
+				if (count == starts.length) {
+					starts = Arrays.copyOf(starts, count + 1);
+					ends = Arrays.copyOf(ends, count + 1);
+				}
+				starts[count] = start;
+				ends[count] = content.length;
+				count++;
+			}
+			this.lineStarts = Arrays.copyOf(starts, count);
+			this.lineEnds = Arrays.copyOf(ends, count);
+			this.lines = new String[count];
+		}
+
+		/**
+		 *
+		 * @return number of lines.
+		 */
+		public int getLineCount() {
+			return lines.length;
+		}
+
+		/**
+		 *
+		 * @param index
+		 *            of the line starting at 0.
+		 * @return the line without terminator.
+		 */
+		public String getLine(int index) {
+			String line = lines[index];
+			if (line == null) {
+				line = new String(content, lineStarts[index], lineEnds[index] - lineStarts[index], charset);
+				lines[index] = line;
+			}
+			return line;
+		}
+
+		/**
+		 *
+		 * @param attributes
+		 *            current attributes of the file.
+		 * @return true if the file is unchanged since it was read.
+		 */
+		private boolean matches(BasicFileAttributes attributes) {
+			return !racy && size == attributes.size() && modified == attributes.lastModifiedTime().toMillis();
+		}
+	}
+
+	/**
+	 *
+	 * @param path
+	 *            of the file.
+	 * @return the lines of the current content of the file.
+	 * @throws IOException
+	 *             if the file doesn't exist or can't be read.
+	 */
+	public IndexedFile get(Path path) throws IOException {
+		Path key = path.toAbsolutePath().normalize();
+		BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+		IndexedFile file = files.get(key);
+		if (file != null && file.matches(attributes)) {
+			return file;
+		}
+		if (LOGGER.isTraceEnabled()) {
+			LOGGER.trace("Reading " + key);
+		}
+		long readAt = System.currentTimeMillis();
+		file = new IndexedFile(attributes, Files.readAllBytes(key), readAt);
+		if (files.size() >= MAX_FILES) {
+			files.clear();
+		}
+		files.put(key, file);
+		return file;
+	}
+
+	/**
+	 * Forgets the file or all files below the directory.
+	 *
+	 * @param path
+	 *            of a file or directory.
+	 */
+	public void invalidate(Path path) {
+		Path prefix = path.toAbsolutePath().normalize();
+		Iterator<Path> keys = files.keySet().iterator();
+		while (keys.hasNext()) {
+			if (keys.next().startsWith(prefix)) {
+				keys.remove();
+			}
+		}
+	}
+
+}
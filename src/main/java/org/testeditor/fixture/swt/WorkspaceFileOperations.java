@@ -0,0 +1,340 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Copies and deletes directory trees of the AUT workspace in parallel. Every
+ * directory is handled by a fork-join task; the attributes of an entry are
+ * read once while listing its directory, and files are copied with
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.
+ * <p>
+ * A copy merges into an existing target: missing directories are created,
+ * existing files are overwritten and other files of the target are kept.
+ */
+public class WorkspaceFileOperations {
+
+	private static final Logger LOGGER = Logger.getLogger(WorkspaceFileOperations.class);
+	private static final ForkJoinPool POOL = new ForkJoinPool(Math.max(2, Runtime.getRuntime()
+			.availableProcessors()));
+
+	/**
+	 * Metrics of one operation. The counters are updated while the operation
+	 * runs.
+	 */
+	public static class Progress {
+
+		private final AtomicLong files = new AtomicLong();
+		private final AtomicLong directories = new AtomicLong();
+		private final AtomicLong bytes = new AtomicLong();
+		private final long start = System.nanoTime();
+		private volatile long end;
+
+		/**
+		 *
+		 * @return number of files processed.
+		 */
+		public long getFiles() {
+			return files.get();
+		}
+
+		/**
+		 *
+		 * @return number of directories processed.
+		 */
+		public long getDirectories() {
+			return directories.get();
+		}
+
+		/**
+		 *
+		 * @return number of bytes copied.
+		 */
+		public long getBytes() {
+			return bytes.get();
+		}
+
+		/**
+		 *
+		 * @return duration of the operation in milliseconds, up to now if it
+		 *         is still running.
+		 */
+		public long getMillis() {
+			long until = end;
+			if (until == 0) {
+				until = System.nanoTime();
+			}
+			return (until - start) / 1000000L;
+		}
+
+		@Override
+		public String toString() {
+			return files + " files, " + directories + " directories, " + bytes + " bytes in " + getMillis() + " ms";
+		}
+	}
+
+	/**
+	 * Copies a file or a directory tree.
+	 *
+	 * @param source
+	 *            file or directory to copy.
+	 * @param target
+	 *            path of the copy.
+	 * @return the metrics of the copy.
+	 * @throws IOException
+	 *             on the first failed copy.
+	 */
+	public Progress copy(Path source, Path target) throws IOException {
+		Progress progress = new Progress();
+		BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+		if (attributes.isDirectory()) {
+			invoke(new CopyTask(source, target, progress));
+		} else {
+			copyFile(source, target, attributes.size(), progress);
+		}
+		progress.end = System.nanoTime();
+		LOGGER.info("Copied " + source + " to " + target + ": " + progress);
+		return progress;
+	}
+
+	/**
+	 * Deletes a file or a directory tree.
+	 *
+	 * @param target
+	 *            file or directory to delete.
+	 * @return the metrics of the delete.
+	 * @throws IOException
+	 *             on the first failed delete.
+	 */
+	public Progress delete(Path target) throws IOException {
+		Progress progress = new Progress();
+		BasicFileAttributes attributes = Files.readAttributes(target, BasicFileAttributes.class,
+				LinkOption.NOFOLLOW_LINKS);
+		if (attributes.isDirectory()) {
+			invoke(new DeleteTask(target, progress));
+		} else {
+			Files.delete(target);
+			progress.files.incrementAndGet();
+		}
+		progress.end = System.nanoTime();
+		LOGGER.info("Deleted " + target + ": " + progress);
+		return progress;
+	}
+
+	/**
+	 * Runs the task in the pool and unwraps its IOException.
+	 *
+	 * @param task
+	 *            to run.
+	 * @throws IOException
+	 *             of the task.
+	 */
+	private void invoke(RecursiveAction task) throws IOException {
+		try {
+			POOL.invoke(task);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Copies the content of a file, overwriting an existing target.
+	 *
+	 * @param source
+	 *            file to copy.
+	 * @param target
+	 *            path of the copy.
+	 * @param size
+	 *            of the source.
+	 * @param progress
+	 *            to update.
+	 * @throws IOException
+	 *             on copying.
+	 */
+	private static void copyFile(Path source, Path target, long size, Progress progress) throws IOException {
+		FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+		try {
+			FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+			try {
+				long position = 0;
+				while (position < size) {
+					long count = in.transferTo(position, size - position, out);
+					if (count <= 0) {
+						break;
+					}
+					position += count;
+				}
+				progress.bytes.addAndGet(position);
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+		progress.files.incrementAndGet();
+	}
+
+	/**
+	 * Lists a directory with the attributes of its entries.
+	 *
+	 * @param dir
+	 *            to list.
+	 * @param files
+	 *            receiving the files.
+	 * @param fileAttributes
+	 *            receiving the attributes of the files.
+	 * @param directories
+	 *            receiving the sub directories.
+	 * @param options
+	 *            how symbolic links are handled.
+	 * @throws IOException
+	 *             on listing.
+	 */
+	private static void list(Path dir, List<Path> files, List<BasicFileAttributes> fileAttributes,
+			List<Path> directories, LinkOption... options) throws IOException {
+		DirectoryStream<Path> stream = Files.newDirectoryStream(dir);
+		try {
+			for (Path path : stream) {
+				BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class, options);
+				if (attributes.isDirectory()) {
+					directories.add(path);
+				} else {
+					files.add(path);
+					fileAttributes.add(attributes);
+				}
+			}
+		} finally {
+			stream.close();
+		}
+	}
+
+	/**
+	 * Copies one directory and forks a task for each sub directory.
+	 */
+	private static class CopyTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Path source;
+		private final Path target;
+		private final transient Progress progress;
+
+		/**
+		 *
+		 * @param source
+		 *            directory.
+		 * @param target
+		 *            directory.
+		 * @param progress
+		 *            to update.
+		 */
+		CopyTask(Path source, Path target, Progress progress) {
+			this.source = source;
+			this.target = target;
+			this.progress = progress;
+		}
+
+		@Override
+		protected void compute() {
+			List<Path> files = new ArrayList<Path>();
+			List<BasicFileAttributes> attributes = new ArrayList<BasicFileAttributes>();
+			List<Path> directories = new ArrayList<Path>();
+			List<CopyTask> subTasks = new ArrayList<CopyTask>();
+			try {
+				Files.createDirectories(target);
+				progress.directories.incrementAndGet();
+				list(source, files, attributes, directories);
+				for (Path directory : directories) {
+					subTasks.add(new CopyTask(directory, target.resolve(directory.getFileName().toString()),
+							progress));
+				}
+				for (CopyTask subTask : subTasks) {
+					subTask.fork();
+				}
+				for (int i = 0; i < files.size(); i++) {
+					Path file = files.get(i);
+					copyFile(file, target.resolve(file.getFileName().toString()), attributes.get(i).size(),
+							progress);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			} finally {
+				for (CopyTask subTask : subTasks) {
+					subTask.join();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Deletes one directory after the tasks forked for its sub directories.
+	 */
+	private static class DeleteTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Path dir;
+		private final transient Progress progress;
+
+		/**
+		 *
+		 * @param dir
+		 *            to delete.
+		 * @param progress
+		 *            to update.
+		 */
+		DeleteTask(Path dir, Progress progress) {
+			this.dir = dir;
+			this.progress = progress;
+		}
+
+		@Override
+		protected void compute() {
+			List<Path> files = new ArrayList<Path>();
+			List<Path> directories = new ArrayList<Path>();
+			try {
+				list(dir, files, new ArrayList<BasicFileAttributes>(), directories, LinkOption.NOFOLLOW_LINKS);
+				List<DeleteTask> subTasks = new ArrayList<DeleteTask>();
+				for (Path directory : directories) {
+					subTasks.add(new DeleteTask(directory, progress));
+				}
+				invokeAll(subTasks);
+				for (Path file : files) {
+					Files.delete(file);
+					progress.files.incrementAndGet();
+				}
+				Files.delete(dir);
+				progress.directories.incrementAndGet();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+}
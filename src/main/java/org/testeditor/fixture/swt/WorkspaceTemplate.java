@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Pristine copy of a workspace packed as zip on the classpath. The zip is
+ * extracted once into a template directory; a workspace is reset by restoring
+ * only the files whose size or modification time differ from the template and
+ * by deleting files the template doesn't contain. Files are copied, not linked,
+ * because the AUT changes workspace files in place.
+ */
+public class WorkspaceTemplate {
+
+	private static final Logger LOGGER = Logger.getLogger(WorkspaceTemplate.class);
+	private static final WorkspaceFileOperations FILE_OPERATIONS = new WorkspaceFileOperations();
+
+	private final String resource;
+	private Path templateDir;
+	private Map<Path, BasicFileAttributes> manifest;
+
+	/**
+	 *
+	 * @param resource
+	 *            classpath name of the zip with the workspace content.
+	 */
+	public WorkspaceTemplate(String resource) {
+		this.resource = resource;
+	}
+
+	/**
+	 * Resets the workspace to the content of the template.
+	 *
+	 * @param workspace
+	 *            directory of the workspace, created if it doesn't exist.
+	 * @return number of files and directories copied or deleted.
+	 * @throws IOException
+	 *             on extracting the template or restoring the workspace.
+	 */
+	public synchronized int restore(Path workspace) throws IOException {
+		long start = System.nanoTime();
+		if (manifest == null) {
+			extract();
+		}
+		Files.createDirectories(workspace);
+		int changes = removeModified(workspace);
+		for (Map.Entry<Path, BasicFileAttributes> entry : manifest.entrySet()) {
+			Path target = workspace.resolve(entry.getKey());
+			if (Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+				continue;
+			}
+			if (entry.getValue().isDirectory()) {
+				Files.createDirectories(target);
+			} else {
+				Files.createDirectories(target.getParent());
+				Files.copy(templateDir.resolve(entry.getKey()), target, StandardCopyOption.COPY_ATTRIBUTES);
+			}
+			changes++;
+		}
+		LOGGER.info("Restored " + changes + " entries of " + workspace + " in " + (System.nanoTime() - start)
+				/ 1000000L + " ms.");
+		return changes;
+	}
+
+	/**
+	 * Deletes all entries of the workspace which are unknown to the template
+	 * or differ in type, size or modification time.
+	 *
+	 * @param workspace
+	 *            directory of the workspace.
+	 * @return number of deleted entries.
+	 * @throws IOException
+	 *             on deleting.
+	 */
+	private int removeModified(final Path workspace) throws IOException {
+		final int[] deleted = new int[1];
+		Files.walkFileTree(workspace, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				if (dir.equals(workspace)) {
+					return FileVisitResult.CONTINUE;
+				}
+				BasicFileAttributes expected = manifest.get(workspace.relativize(dir));
+				if (expected != null && expected.isDirectory()) {
+					return FileVisitResult.CONTINUE;
+				}
+				FILE_OPERATIONS.delete(dir);
+				deleted[0]++;
+				return FileVisitResult.SKIP_SUBTREE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				BasicFileAttributes expected = manifest.get(workspace.relativize(file));
+				if (expected == null || !expected.isRegularFile() || expected.size() != attrs.size()
+						|| expected.lastModifiedTime().toMillis() != attrs.lastModifiedTime().toMillis()) {
+					FILE_OPERATIONS.delete(file);
+					deleted[0]++;
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return deleted[0];
+	}
+
+	/**
+	 * Extracts the zip into a new template directory and records the
+	 * attributes of its entries.
+	 *
+	 * @throws IOException
+	 *             on extracting.
+	 */
+	private void extract() throws IOException {
+		InputStream in = getClass().getResourceAsStream(resource);
+		if (in == null) {
+			throw new IOException("Workspace template " + resource + " not found on the classpath.");
+		}
+		templateDir = Files.createTempDirectory("aut-workspace-template");
+		Path zip = templateDir.resolve(resource.substring(resource.lastIndexOf('/') + 1));
+		try {
+			Files.copy(in, zip);
+		} finally {
+			in.close();
+		}
+		FileSystem zipFs = FileSystems.newFileSystem(zip, (ClassLoader) null);
+		try {
+			FILE_OPERATIONS.copy(zipFs.getPath("/"), templateDir);
+		} finally {
+			zipFs.close();
+		}
+		final Map<Path, BasicFileAttributes> entries = new HashMap<Path, BasicFileAttributes>();
+		Files.walkFileTree(templateDir, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+				if (!dir.equals(templateDir)) {
+					entries.put(templateDir.relativize(dir), attrs);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				entries.put(templateDir.relativize(file), attrs);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		manifest = entries;
+		final Path dir = templateDir;
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				try {
+					FILE_OPERATIONS.delete(dir);
+				} catch (IOException e) {
+					LOGGER.error("Error deleting workspace template " + dir, e);
+				}
+			}
+		});
+		LOGGER.info("Extracted workspace template " + resource + " with " + entries.size() + " entries to " + dir);
+	}
+
+}
@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.util;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * Latencies of the fixture commands of one test, one {@link LatencyHistogram}
+ * per called fixture method. The histograms of a method are created on its
+ * first call, so fixtures which are never used don't hold any; after that,
+ * recording a call is a lock-free map lookup by method identity and a few
+ * atomic increments.
+ * <p>
+ * The time of a command can be split into {@link Phase phases}. Phases are
+ * added while the command runs and recorded together with the command, so
+ * phases of one command must be added by the thread invoking it.
+ */
+public class CommandTimer {
+
+	/**
+	 * Parts of the time of a fixture command.
+	 */
+	public enum Phase {
+		/** Lookup of element keys in the element list. */
+		RESOLVE,
+		/** Opening a connection to the agent. */
+		CONNECT,
+		/** Writing the message to the agent. */
+		WRITE,
+		/** Execution of the command in the agent, as reported by the agent. */
+		AGENT,
+		/** Waiting for and reading the reply, without the agent time if known. */
+		READ;
+
+		/**
+		 *
+		 * @return the name used in the performance log.
+		 */
+		public String getLabel() {
+			return name().toLowerCase();
+		}
+	}
+
+	private static final Phase[] PHASES = Phase.values();
+	private static final Function<Method, Entry> NEW_ENTRY = new Function<Method, Entry>() {
+		@Override
+		public Entry apply(Method method) {
+			return new Entry();
+		}
+	};
+
+	/**
+	 * Histograms of one fixture method.
+	 */
+	private static final class Entry {
+		private final LatencyHistogram total = new LatencyHistogram();
+		private final AtomicReferenceArray<LatencyHistogram> phases = new AtomicReferenceArray<LatencyHistogram>(
+				PHASES.length);
+
+		/**
+		 *
+		 * @param phase
+		 *            the phase.
+		 * @return the histogram of the phase, created on first use.
+		 */
+		private LatencyHistogram phase(Phase phase) {
+			LatencyHistogram histogram = phases.get(phase.ordinal());
+			if (histogram == null) {
+				phases.compareAndSet(phase.ordinal(), null, new LatencyHistogram());
+				histogram = phases.get(phase.ordinal());
+			}
+			return histogram;
+		}
+	}
+
+	private final ConcurrentMap<Method, Entry> entries = new ConcurrentHashMap<Method, Entry>();
+	private final ThreadLocal<long[]> currentPhases = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[PHASES.length];
+		}
+	};
+
+	/**
+	 * Starts a command on the current thread and discards phases added
+	 * outside of a command.
+	 */
+	public void begin() {
+		long[] phases = currentPhases.get();
+		for (int i = 0; i < phases.length; i++) {
+			phases[i] = 0;
+		}
+	}
+
+	/**
+	 * Adds time to a phase of the command running on the current thread.
+	 *
+	 * @param phase
+	 *            the phase.
+	 * @param nanos
+	 *            duration.
+	 */
+	public void addPhase(Phase phase, long nanos) {
+		currentPhases.get()[phase.ordinal()] += nanos;
+	}
+
+	/**
+	 * Records one call with the phases added since {@link #begin()}.
+	 *
+	 * @param method
+	 *            the called fixture method.
+	 * @param nanos
+	 *            duration of the call.
+	 */
+	public void record(Method method, long nanos) {
+		Entry entry = entries.get(method);
+		if (entry == null) {
+			// computeIfAbsent locks the bin even for present keys, so only on the first call
+			entry = entries.computeIfAbsent(method, NEW_ENTRY);
+		}
+		entry.total.record(nanos);
+		long[] phases = currentPhases.get();
+		for (int i = 0; i < phases.length; i++) {
+			if (phases[i] > 0) {
+				entry.phase(PHASES[i]).record(phases[i]);
+				phases[i] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Takes the latencies recorded since the last drain and resets the
+	 * histograms. Overloaded methods are merged under their name.
+	 *
+	 * @return the histograms of all called methods by method name.
+	 */
+	public Map<String, LatencyHistogram> drain() {
+		Map<String, LatencyHistogram> result = new TreeMap<String, LatencyHistogram>();
+		for (Map.Entry<Method, Entry> entry : entries.entrySet()) {
+			if (entry.getValue().total.getCount() > 0) {
+				merge(result, entry.getKey().getName(), entry.getValue().total.drain());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Takes the phase latencies recorded since the last drain and resets the
+	 * histograms.
+	 *
+	 * @return the histograms by method name and phase label.
+	 */
+	public Map<String, Map<String, LatencyHistogram>> drainPhases() {
+		Map<String, Map<String, LatencyHistogram>> result = new TreeMap<String, Map<String, LatencyHistogram>>();
+		for (Map.Entry<Method, Entry> entry : entries.entrySet()) {
+			for (Phase phase : PHASES) {
+				LatencyHistogram histogram = entry.getValue().phases.get(phase.ordinal());
+				if (histogram == null || histogram.getCount() == 0) {
+					continue;
+				}
+				String name = entry.getKey().getName();
+				Map<String, LatencyHistogram> phases = result.get(name);
+				if (phases == null) {
+					phases = new TreeMap<String, LatencyHistogram>();
+					result.put(name, phases);
+				}
+				merge(phases, phase.getLabel(), histogram.drain());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 *
+	 * @param target
+	 *            map of histograms.
+	 * @param key
+	 *            of the histogram.
+	 * @param histogram
+	 *            to put into the map or to merge with the existing one.
+	 */
+	private static void merge(Map<String, LatencyHistogram> target, String key, LatencyHistogram histogram) {
+		LatencyHistogram existing = target.get(key);
+		if (existing == null) {
+			target.put(key, histogram);
+		} else {
+			existing.add(histogram);
+		}
+	}
+
+}
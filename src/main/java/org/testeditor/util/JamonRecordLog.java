@@ -0,0 +1,482 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.jamonapi.Monitor;
+import com.jamonapi.MonitorComposite;
+
+/**
+ * Log of the JAMon monitors of each test. Every test is written as one line
+ * through a writer kept open for the whole suite. The fields of a line are
+ * separated by tabs: the name of the test, the number of monitors and the
+ * 11 values of each monitor in the order label, units,
+ * hits, avg, total, min, max, stdDev, p50, p95 and p99. Tabs, line breaks
+ * and backslashes in names are escaped with a backslash. The HTML report is
+ * rendered on request or at JVM shutdown by reading the file line by line, so
+ * only one test is held in memory and the report covers every test in the
+ * file, including those appended by earlier runs.
+ */
+public final class JamonRecordLog {
+
+	private static final Logger LOGGER = Logger.getLogger(JamonRecordLog.class);
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final double NANOS_PER_MILLI = 1000000.0;
+	private static final int MONITOR_FIELDS = 11;
+	private static final Map<File, JamonRecordLog> LOGS = new HashMap<File, JamonRecordLog>();
+
+	private final File file;
+	private File htmlReport;
+	private Writer writer;
+
+	/**
+	 * Values of one monitor in one test.
+	 */
+	private static final class Row {
+		private final String test;
+		private final String label;
+		private final String units;
+		private final double hits;
+		private final double avg;
+		private final double total;
+		private final double min;
+		private final double max;
+		private final double stdDev;
+		private final double p50;
+		private final double p95;
+		private final double p99;
+
+		/**
+		 *
+		 * @param test
+		 *            name of the test.
+		 * @param monitor
+		 *            the monitor.
+		 */
+		private Row(String test, Monitor monitor) {
+			this.test = test;
+			label = monitor.getLabel();
+			units = monitor.getUnits();
+			hits = monitor.getHits();
+			avg = monitor.getAvg();
+			total = monitor.getTotal();
+			min = monitor.getMin();
+			max = monitor.getMax();
+			stdDev = monitor.getStdDev();
+			p50 = Double.NaN;
+			p95 = Double.NaN;
+			p99 = Double.NaN;
+		}
+
+		/**
+		 *
+		 * @param test
+		 *            name of the test.
+		 * @param command
+		 *            name of the fixture command.
+		 * @param histogram
+		 *            latencies of the command.
+		 */
+		private Row(String test, String command, LatencyHistogram histogram) {
+			this.test = test;
+			label = command;
+			units = "ms.";
+			hits = histogram.getCount();
+			avg = histogram.getMean() / NANOS_PER_MILLI;
+			total = histogram.getTotal() / NANOS_PER_MILLI;
+			min = histogram.getMin() / NANOS_PER_MILLI;
+			max = histogram.getMax() / NANOS_PER_MILLI;
+			stdDev = histogram.getStdDev() / NANOS_PER_MILLI;
+			p50 = histogram.getValueAtPercentile(50) / NANOS_PER_MILLI;
+			p95 = histogram.getValueAtPercentile(95) / NANOS_PER_MILLI;
+			p99 = histogram.getValueAtPercentile(99) / NANOS_PER_MILLI;
+		}
+
+		/**
+		 *
+		 * @param test
+		 *            name of the test.
+		 * @param fields
+		 *            the fields of a line of the file.
+		 * @param start
+		 *            index of the first field of the monitor.
+		 * @throws IOException
+		 *             if a value is no number.
+		 */
+		private Row(String test, String[] fields, int start) throws IOException {
+			this.test = test;
+			label = unescape(fields[start]);
+			units = unescape(fields[start + 1]);
+			hits = value(fields[start + 2]);
+			avg = value(fields[start + 3]);
+			total = value(fields[start + 4]);
+			min = value(fields[start + 5]);
+			max = value(fields[start + 6]);
+			stdDev = value(fields[start + 7]);
+			p50 = value(fields[start + 8]);
+			p95 = value(fields[start + 9]);
+			p99 = value(fields[start + 10]);
+		}
+
+		/**
+		 * Appends the fields of the monitor to a line.
+		 *
+		 * @param sb
+		 *            the line.
+		 */
+		private void appendTo(StringBuilder sb) {
+			sb.append('\t').append(escapeField(label)).append('\t').append(escapeField(units)).append('\t')
+					.append(hits).append('\t').append(avg).append('\t').append(total).append('\t').append(min)
+					.append('\t').append(max).append('\t').append(stdDev).append('\t').append(p50).append('\t')
+					.append(p95).append('\t').append(p99);
+		}
+
+		/**
+		 *
+		 * @param field
+		 *            a number field of the file.
+		 * @return the value.
+		 * @throws IOException
+		 *             if the field is no number.
+		 */
+		private static double value(String field) throws IOException {
+			try {
+				return Double.parseDouble(field);
+			} catch (NumberFormatException e) {
+				throw new IOException("Invalid number: " + field, e);
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @param file
+	 *            the record file.
+	 */
+	private JamonRecordLog(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Provides the log of a file. The log renders its HTML report and closes
+	 * the file at JVM shutdown.
+	 *
+	 * @param file
+	 *            the record file.
+	 * @return the log shared by all users of the file.
+	 */
+	public static synchronized JamonRecordLog forFile(File file) {
+		File key = file.getAbsoluteFile();
+		JamonRecordLog log = LOGS.get(key);
+		if (log == null) {
+			final JamonRecordLog newLog = new JamonRecordLog(key);
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					newLog.close();
+				}
+			});
+			LOGS.put(key, newLog);
+			log = newLog;
+		}
+		return log;
+	}
+
+	/**
+	 * Appends the monitors of a test.
+	 *
+	 * @param testName
+	 *            name of the test.
+	 * @param monitors
+	 *            the monitors of the test.
+	 * @throws IOException
+	 *             on writing.
+	 */
+	public synchronized void write(String testName, MonitorComposite monitors) throws IOException {
+		List<Row> testRows = new ArrayList<Row>();
+		Monitor[] all = monitors.getMonitors();
+		if (all != null) {
+			for (Monitor monitor : all) {
+				testRows.add(new Row(testName, monitor));
+			}
+		}
+		write(testName, testRows);
+	}
+
+	/**
+	 * Appends the command latencies of a test.
+	 *
+	 * @param testName
+	 *            name of the test.
+	 * @param commands
+	 *            latencies by command name.
+	 * @throws IOException
+	 *             on writing.
+	 */
+	public synchronized void write(String testName, Map<String, LatencyHistogram> commands) throws IOException {
+		List<Row> testRows = new ArrayList<Row>();
+		for (Map.Entry<String, LatencyHistogram> entry : commands.entrySet()) {
+			testRows.add(new Row(testName, entry.getKey(), entry.getValue()));
+		}
+		write(testName, testRows);
+	}
+
+	/**
+	 * Appends the rows of a test as one line.
+	 *
+	 * @param testName
+	 *            name of the test.
+	 * @param testRows
+	 *            the rows.
+	 * @throws IOException
+	 *             on writing.
+	 */
+	private void write(String testName, List<Row> testRows) throws IOException {
+		if (writer == null || !file.exists()) {
+			openWriter();
+		}
+		StringBuilder sb = new StringBuilder(256);
+		sb.append(escapeField(testName)).append('\t').append(testRows.size());
+		for (Row row : testRows) {
+			row.appendTo(sb);
+		}
+		sb.append('\n');
+		writer.write(sb.toString());
+		writer.flush();
+	}
+
+	/**
+	 *
+	 * @param html
+	 *            the file the HTML report is rendered to at JVM shutdown.
+	 */
+	public synchronized void setHtmlReport(File html) {
+		htmlReport = html;
+	}
+
+	/**
+	 * Renders the HTML report of all tests in the file, if a report file is
+	 * set. The file is read line by line; a line that can't be read, like the
+	 * last line of a run killed while writing, is skipped.
+	 *
+	 * @throws IOException
+	 *             on writing the report.
+	 */
+	public synchronized void writeHtmlReport() throws IOException {
+		if (htmlReport == null) {
+			return;
+		}
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(htmlReport), UTF_8));
+		try {
+			out.write("<!DOCTYPE HTML PUBLIC \"-//W3C//DTD HTML 4.01 Transitional//EN\">"
+					+ "<html><head><meta http-equiv=\"content-type\" content=\"text/html; charset=UTF-8\">"
+					+ "<title>JAMon Report</title></head><body>\n");
+			if (file.exists()) {
+				writeTables(out);
+			}
+			out.write("</body></html>\n");
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes one table per line of the file.
+	 *
+	 * @param out
+	 *            the HTML report.
+	 * @throws IOException
+	 *             on reading the file or writing the report.
+	 */
+	private void writeTables(Writer out) throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
+		try {
+			String line = in.readLine();
+			while (line != null) {
+				if (!line.trim().isEmpty()) {
+					try {
+						writeTable(out, line);
+					} catch (IOException e) {
+						LOGGER.warn("Skipping unreadable line of JAMon log " + file + ": " + e.getMessage());
+					}
+				}
+				line = in.readLine();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes the table of one test.
+	 *
+	 * @param out
+	 *            the HTML report.
+	 * @param line
+	 *            the test as written to the file.
+	 * @throws IOException
+	 *             if the line is incomplete or on writing the report.
+	 */
+	private static void writeTable(Writer out, String line) throws IOException {
+		String[] fields = line.split("\t", -1);
+		if (fields.length < 2 || (fields.length - 2) % MONITOR_FIELDS != 0
+				|| !fields[1].equals(Integer.toString((fields.length - 2) / MONITOR_FIELDS))) {
+			throw new IOException("Incomplete line: " + line);
+		}
+		String testName = unescape(fields[0]);
+		List<Row> testRows = new ArrayList<Row>();
+		for (int i = 2; i < fields.length; i += MONITOR_FIELDS) {
+			testRows.add(new Row(testName, fields, i));
+		}
+		StringBuilder sb = new StringBuilder(256);
+		sb.append("<h1>").append(escape(testName)).append("</h1>\n<table border=\"1\"><tr><th>Label</th>")
+				.append("<th>Units</th><th>Hits</th><th>Avg</th><th>Total</th><th>StdDev</th><th>Min</th>")
+				.append("<th>Max</th><th>P50</th><th>P95</th><th>P99</th></tr>\n");
+		for (Row row : testRows) {
+			sb.append("<tr><td>").append(escape(row.label)).append("</td><td>").append(escape(row.units))
+					.append("</td><td>").append(cell(row.hits)).append("</td><td>").append(cell(row.avg))
+					.append("</td><td>").append(cell(row.total)).append("</td><td>").append(cell(row.stdDev))
+					.append("</td><td>").append(cell(row.min)).append("</td><td>").append(cell(row.max))
+					.append("</td><td>").append(cell(row.p50)).append("</td><td>").append(cell(row.p95))
+					.append("</td><td>").append(cell(row.p99)).append("</td></tr>\n");
+		}
+		sb.append("</table>\n");
+		out.write(sb.toString());
+	}
+
+	/**
+	 * Renders the HTML report and closes the file.
+	 */
+	public synchronized void close() {
+		try {
+			writeHtmlReport();
+			if (writer != null) {
+				writer.close();
+				writer = null;
+			}
+		} catch (IOException e) {
+			LOGGER.error("Error closing JAMon log " + file, e);
+		}
+	}
+
+	/**
+	 * Opens the file for appending. A file deleted while the log was open
+	 * starts a new suite.
+	 *
+	 * @throws IOException
+	 *             on opening.
+	 */
+	private void openWriter() throws IOException {
+		if (writer != null) {
+			writer.close();
+		}
+		writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), UTF_8));
+	}
+
+	/**
+	 *
+	 * @param value
+	 *            a text.
+	 * @return the text as field of a line, with tabs, line breaks and
+	 *         backslashes escaped.
+	 */
+	private static String escapeField(String value) {
+		if (value == null) {
+			return "";
+		}
+		StringBuilder sb = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '\\') {
+				sb.append("\\\\");
+			} else if (c == '\t') {
+				sb.append("\\t");
+			} else if (c == '\n') {
+				sb.append("\\n");
+			} else if (c == '\r') {
+				sb.append("\\r");
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 *
+	 * @param field
+	 *            a field of a line.
+	 * @return the text of the field.
+	 */
+	private static String unescape(String field) {
+		StringBuilder sb = new StringBuilder(field.length());
+		for (int i = 0; i < field.length(); i++) {
+			char c = field.charAt(i);
+			if (c == '\\' && i + 1 < field.length()) {
+				i++;
+				c = field.charAt(i);
+				if (c == 't') {
+					c = '\t';
+				} else if (c == 'n') {
+					c = '\n';
+				} else if (c == 'r') {
+					c = '\r';
+				}
+			}
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 *
+	 * @param value
+	 *            a number.
+	 * @return the number as table cell, empty if it is not finite.
+	 */
+	private static String cell(double value) {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			return "";
+		}
+		return Double.toString(value);
+	}
+
+	/**
+	 *
+	 * @param value
+	 *            a text.
+	 * @return the text with HTML special characters replaced by entities.
+	 */
+	private static String escape(String value) {
+		if (value == null) {
+			return "";
+		}
+		return PlotInputWriter.escape(value);
+	}
+
+}
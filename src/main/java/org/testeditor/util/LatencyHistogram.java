@@ -0,0 +1,234 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds with a fixed, preallocated set of
+ * buckets. Values below 64 ns are counted exactly; every higher power of two
+ * is split into 32 buckets, so a value is known within about 3 percent.
+ * Values above about 2.4 hours are counted in the last bucket. Recording is
+ * lock free; histograms of the same layout can be merged.
+ */
+public class LatencyHistogram {
+
+	private static final int LINEAR_BUCKETS = 64;
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int FIRST_EXPONENT = 6;
+	private static final int LAST_EXPONENT = 42;
+	private static final int BUCKETS = LINEAR_BUCKETS + (LAST_EXPONENT - FIRST_EXPONENT + 1) * SUB_BUCKETS;
+	private static final long MAX_VALUE = (1L << (LAST_EXPONENT + 1)) - 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records one latency.
+	 *
+	 * @param nanos
+	 *            the latency in nanoseconds.
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		counts.incrementAndGet(indexOf(Math.min(value, MAX_VALUE)));
+		count.incrementAndGet();
+		total.addAndGet(value);
+		long current = min.get();
+		while (value < current && !min.compareAndSet(current, value)) {
+			current = min.get();
+		}
+		current = max.get();
+		while (value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+
+	/**
+	 * Adds all values of another histogram.
+	 *
+	 * @param other
+	 *            histogram to add.
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKETS; i++) {
+			long bucket = other.counts.get(i);
+			if (bucket > 0) {
+				counts.addAndGet(i, bucket);
+			}
+		}
+		count.addAndGet(other.count.get());
+		total.addAndGet(other.total.get());
+		long otherMin = other.min.get();
+		long current = min.get();
+		while (otherMin < current && !min.compareAndSet(current, otherMin)) {
+			current = min.get();
+		}
+		long otherMax = other.max.get();
+		current = max.get();
+		while (otherMax > current && !max.compareAndSet(current, otherMax)) {
+			current = max.get();
+		}
+	}
+
+	/**
+	 * Moves all values into a new histogram and resets this one.
+	 *
+	 * @return the values recorded since the last drain.
+	 */
+	public LatencyHistogram drain() {
+		LatencyHistogram copy = new LatencyHistogram();
+		for (int i = 0; i < BUCKETS; i++) {
+			long bucket = counts.getAndSet(i, 0);
+			if (bucket > 0) {
+				copy.counts.set(i, bucket);
+			}
+		}
+		copy.count.set(count.getAndSet(0));
+		copy.total.set(total.getAndSet(0));
+		copy.min.set(min.getAndSet(Long.MAX_VALUE));
+		copy.max.set(max.getAndSet(0));
+		return copy;
+	}
+
+	/**
+	 *
+	 * @return number of recorded values.
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 *
+	 * @return sum of all values in nanoseconds.
+	 */
+	public long getTotal() {
+		return total.get();
+	}
+
+	/**
+	 *
+	 * @return smallest value in nanoseconds, 0 if empty.
+	 */
+	public long getMin() {
+		long value = min.get();
+		if (value == Long.MAX_VALUE) {
+			return 0;
+		}
+		return value;
+	}
+
+	/**
+	 *
+	 * @return largest value in nanoseconds.
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 *
+	 * @return mean in nanoseconds, 0 if empty.
+	 */
+	public double getMean() {
+		long n = count.get();
+		if (n == 0) {
+			return 0;
+		}
+		return (double) total.get() / n;
+	}
+
+	/**
+	 *
+	 * @return standard deviation in nanoseconds, estimated from the buckets.
+	 */
+	public double getStdDev() {
+		long n = 0;
+		double sum = 0;
+		double sumOfSquares = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			long bucket = counts.get(i);
+			if (bucket > 0) {
+				double value = valueOf(i);
+				n += bucket;
+				sum += value * bucket;
+				sumOfSquares += value * value * bucket;
+			}
+		}
+		if (n < 2) {
+			return 0;
+		}
+		double mean = sum / n;
+		return Math.sqrt(Math.max(0, sumOfSquares / n - mean * mean));
+	}
+
+	/**
+	 *
+	 * @param percentile
+	 *            between 0 and 100.
+	 * @return the value in nanoseconds below or at which the given percentage
+	 *         of the values lies, 0 if empty.
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long n = count.get();
+		if (n == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.max(getMin(), Math.min(valueOf(i), getMax()));
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 *
+	 * @param value
+	 *            in nanoseconds, at most {@link #MAX_VALUE}.
+	 * @return index of the bucket.
+	 */
+	private static int indexOf(long value) {
+		if (value < LINEAR_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+		return LINEAR_BUCKETS + (exponent - FIRST_EXPONENT) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 *
+	 * @param index
+	 *            of a bucket.
+	 * @return the highest value counted in the bucket.
+	 */
+	private static long valueOf(int index) {
+		if (index < LINEAR_BUCKETS) {
+			return index;
+		}
+		int exponent = (index - LINEAR_BUCKETS) / SUB_BUCKETS + FIRST_EXPONENT;
+		int subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+		int shift = exponent - SUB_BUCKET_BITS;
+		return ((long) (subBucket + 1) << shift) - 1;
+	}
+
+}
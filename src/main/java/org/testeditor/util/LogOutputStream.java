@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+/**
+ * OutputStream writing each line of UTF-8 text as one log message. Bytes are
+ * decoded per complete line, so multi byte characters are never split. Lines
+ * longer than 8192 bytes are logged in parts, each ending
+ * before the character crossing the limit. {@link #flush()} keeps an
+ * incomplete line; {@link #close()} logs it, after which the stream can be
+ * used for the next text.
+ */
+public class LogOutputStream extends OutputStream {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final int MAX_LINE_LENGTH = 8192;
+
+	private final Logger logger;
+	private final Level level;
+	private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+	/**
+	 *
+	 * @param logger
+	 *            to write to.
+	 * @param level
+	 *            of the log messages.
+	 */
+	public LogOutputStream(Logger logger, Level level) {
+		this.logger = logger;
+		this.level = level;
+	}
+
+	@Override
+	public void write(int b) {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		if (!logger.isEnabledFor(level)) {
+			return;
+		}
+		int start = off;
+		int end = off + len;
+		for (int i = off; i < end; i++) {
+			if (b[i] == '\n') {
+				appendLine(b, start, i - start);
+				logLine();
+				start = i + 1;
+			}
+		}
+		appendLine(b, start, end - start);
+	}
+
+	/**
+	 * Keeps the incomplete line, as the rest of it may follow.
+	 */
+	@Override
+	public void flush() {
+		// a line is logged when it is complete
+	}
+
+	/**
+	 * Logs the incomplete line, if there is one.
+	 */
+	@Override
+	public void close() {
+		logLine();
+	}
+
+	/**
+	 * Appends bytes without line break to the current line.
+	 *
+	 * @param b
+	 *            bytes
+	 * @param off
+	 *            start in b
+	 * @param len
+	 *            number of bytes
+	 */
+	private void appendLine(byte[] b, int off, int len) {
+		int offset = off;
+		int remaining = len;
+		while (remaining > 0) {
+			int count = Math.min(remaining, MAX_LINE_LENGTH - line.size());
+			line.write(b, offset, count);
+			offset += count;
+			remaining -= count;
+			if (line.size() >= MAX_LINE_LENGTH) {
+				logLinePart();
+			}
+		}
+	}
+
+	/**
+	 * Logs the current line up to the last complete character and keeps the
+	 * bytes of an incomplete one.
+	 */
+	private void logLinePart() {
+		byte[] bytes = line.toByteArray();
+		int split = characterStart(bytes);
+		logger.log(level, new String(bytes, 0, split, UTF_8));
+		line.reset();
+		line.write(bytes, split, bytes.length - split);
+	}
+
+	/**
+	 *
+	 * @param bytes
+	 *            UTF-8 text.
+	 * @return the start of the incomplete character at the end of the text,
+	 *         or the length of the text if its last character is complete or
+	 *         the bytes are no UTF-8.
+	 */
+	private static int characterStart(byte[] bytes) {
+		int lead = bytes.length - 1;
+		// continuation bytes are 10xxxxxx, a character has at most 4 bytes
+		while (lead > 0 && bytes.length - lead < 4 && (bytes[lead] & 0xC0) == 0x80) {
+			lead--;
+		}
+		int length;
+		if ((bytes[lead] & 0xE0) == 0xC0) {
+			length = 2;
+		} else if ((bytes[lead] & 0xF0) == 0xE0) {
+			length = 3;
+		} else if ((bytes[lead] & 0xF8) == 0xF0) {
+			length = 4;
+		} else {
+			length = 1;
+		}
+		if (lead > 0 && lead + length > bytes.length) {
+			return lead;
+		}
+		return bytes.length;
+	}
+
+	/**
+	 * Logs the current line, if there is one.
+	 */
+	private void logLine() {
+		if (line.size() > 0) {
+			byte[] bytes = line.toByteArray();
+			int length = bytes.length;
+			if (bytes[length - 1] == '\r') {
+				length--;
+			}
+			logger.log(level, new String(bytes, 0, length, UTF_8));
+			line.reset();
+		}
+	}
+
+}
@@ -15,12 +15,13 @@
 package org.testeditor.util;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -52,6 +53,8 @@ public class PerformanceLogHandler {
 
 	File plotInput = new File("plotInput.xml");
 	File jmonFile = new File("jamonReport.html");
+	File jmonRecords = new File("jamonReport.tsv");
+	File summaryFile = new File("performanceSummary.json");
 
 	private Document doc;
 	private Element rootElement;
@@ -161,68 +164,31 @@ public class PerformanceLogHandler {
 	}
 
 	/**
+	 * Appends the JAMon monitors of the test to the record log.
 	 * 
-	 */
-	private void writeJamonFile(String testName) {
-
-		if (!jmonFile.exists()) {
-			createAndInsertToJamonFile(testName);
-		} else {
-			addToJamonFile(testName);
-		}
-
-	}
-
-	/**
 	 * @param testName
+	 *            name of the test.
+	 * @throws IOException
+	 *             on writing the log.
 	 */
-	private void addToJamonFile(String testName) {
-		try {
-			String report = MonitorFactory.getRootMonitor().getReport();
-
-			FileWriter jmonFileWriter = new FileWriter(jmonFile, true);
-
-			jmonFileWriter.write("<h1>" + testName + "</h1><br>");
-
-			jmonFileWriter.write(report);
-
-			jmonFileWriter.flush();
-			jmonFileWriter.close();
-		} catch (IOException e) {
-
-			e.printStackTrace();
-		}
-
+	private void writeJamonFile(String testName) throws IOException {
+		JamonRecordLog log = JamonRecordLog.forFile(jmonRecords);
+		log.setHtmlReport(jmonFile);
+		log.write(testName, MonitorFactory.getRootMonitor());
 	}
 
 	/**
+	 * Renders <b>jamonReport.html</b> from all tests in
+	 * <b>jamonReport.tsv</b>, which is read line by line. The report is
+	 * rendered automatically at JVM shutdown.
 	 * 
+	 * @throws IOException
+	 *             on writing the report.
 	 */
-	private void createAndInsertToJamonFile(String testName) {
-		try {
-			String report = MonitorFactory.getRootMonitor().getReport();
-
-			FileWriter jmonFileWriter = new FileWriter(jmonFile);
-
-			String jmonFileAsHtmlString = "<!DOCTYPE HTML PUBLIC \"-//W3C//DTD HTML 4.01 Transitional//EN\">"
-					+ "<html><head><meta http-equiv=\"content-type\" content=\"text/html; charset=windows-1250\">"
-					+ "<meta name=\"generator\" content=\"PSPad editor, www.pspad.com\">"
-					+ "<title></title></head><body>";
-
-			jmonFileWriter.write("<h1>" + testName + "</h1><br>");
-			jmonFileWriter.write(jmonFileAsHtmlString);
-
-			jmonFileWriter.write(report);
-
-			jmonFileWriter.write("</body></html>");
-
-			jmonFileWriter.flush();
-			jmonFileWriter.close();
-		} catch (IOException e) {
-
-			e.printStackTrace();
-		}
-
+	public void writeJamonReport() throws IOException {
+		JamonRecordLog log = JamonRecordLog.forFile(jmonRecords);
+		log.setHtmlReport(jmonFile);
+		log.writeHtmlReport();
 	}
 
 	/**
@@ -240,8 +206,9 @@ public class PerformanceLogHandler {
 
 	/**
 	 * Writes 2 type of files in current workspace for <br>
-	 * <b>jamonReport.html</b> file : analyzes performance measure of runnig
-	 * test. <br>
+	 * <b>jamonReport.tsv</b> file : analyzes performance measure of runnig
+	 * test, one tab separated line per test. <b>jamonReport.html</b> is
+	 * rendered from it at the end of the suite. <br>
 	 * <b>plotInput.xml</b> : based on jamonReport.html contains total runtime
 	 * of each test. Is needed for displaying a chart on a Jenkins server within
 	 * the plot plugin.
@@ -255,18 +222,10 @@ public class PerformanceLogHandler {
 			// 1. write jamon file
 			writeJamonFile(testcaseName);
 
-			// 2. write plot file
-			if (!fileExists()) {
-				createSuite();
-			} else {
-				loadFile();
-			}
-
+			// 2. append to plot file
 			double time = MonitorFactory.getRootMonitor().getTotal();
 
-			addTestcase(testcaseName, Double.toString(time));
-
-			writeFile();
+			new PlotInputWriter().append(plotInput, testcaseName, Double.toString(time));
 
 		} catch (Exception e) {
 			LOGGER.error(e.getMessage());
@@ -276,6 +235,57 @@ public class PerformanceLogHandler {
 
 	}
 
+	/**
+	 * Writes the performance files like {@link #logPerformanceData(String)}
+	 * from the latencies of the fixture commands instead of JAMon monitors.
+	 * The plot file gets the percentiles of the test and of each command, and
+	 * <b>performanceSummary.json</b> the percentiles of each command over the
+	 * whole suite.
+	 * 
+	 * @param testcaseName
+	 *            name of the test.
+	 * @param commands
+	 *            latencies of the test by command name.
+	 */
+	public void logPerformanceData(String testcaseName, Map<String, LatencyHistogram> commands) {
+		logPerformanceData(testcaseName, commands, new HashMap<String, Map<String, LatencyHistogram>>());
+	}
+
+	/**
+	 * Writes the performance files like
+	 * {@link #logPerformanceData(String, Map)} including the mean time of
+	 * each phase of the commands.
+	 * 
+	 * @param testcaseName
+	 *            name of the test.
+	 * @param commands
+	 *            latencies of the test by command name.
+	 * @param phases
+	 *            latencies of the test by command name and phase.
+	 */
+	public void logPerformanceData(String testcaseName, Map<String, LatencyHistogram> commands,
+			Map<String, Map<String, LatencyHistogram>> phases) {
+
+		try {
+			JamonRecordLog log = JamonRecordLog.forFile(jmonRecords);
+			log.setHtmlReport(jmonFile);
+			log.write(testcaseName, commands);
+
+			long totalNanos = 0;
+			for (LatencyHistogram histogram : commands.values()) {
+				totalNanos += histogram.getTotal();
+			}
+			new PlotInputWriter().append(plotInput, testcaseName, Double.toString(totalNanos / 1000000.0), commands,
+					phases);
+
+			PerformanceSummary.forFile(summaryFile).add(commands, phases);
+
+		} catch (Exception e) {
+			LOGGER.error(e.getMessage());
+		}
+
+	}
+
 	/**
 	 * Formats a given argument for logging. This method is intended to handle
 	 * arrays as theses would otherwise be logged as something like
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Latency percentiles of the fixture commands over all tests of a suite as
+ * JSON. The histograms of each test are merged into the suite histograms and
+ * the file is rewritten after each test; its size depends only on the number
+ * of commands.
+ */
+public final class PerformanceSummary {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final double NANOS_PER_MILLI = 1000000.0;
+	private static final Map<File, PerformanceSummary> SUMMARIES = new HashMap<File, PerformanceSummary>();
+
+	private final File file;
+	private final Map<String, LatencyHistogram> commands = new TreeMap<String, LatencyHistogram>();
+	private final Map<String, Map<String, LatencyHistogram>> phases = new TreeMap<String, Map<String, LatencyHistogram>>();
+	private int tests;
+
+	/**
+	 *
+	 * @param file
+	 *            the JSON file.
+	 */
+	private PerformanceSummary(File file) {
+		this.file = file;
+	}
+
+	/**
+	 *
+	 * @param file
+	 *            the JSON file.
+	 * @return the summary shared by all users of the file.
+	 */
+	public static synchronized PerformanceSummary forFile(File file) {
+		File key = file.getAbsoluteFile();
+		PerformanceSummary summary = SUMMARIES.get(key);
+		if (summary == null) {
+			summary = new PerformanceSummary(key);
+			SUMMARIES.put(key, summary);
+		}
+		return summary;
+	}
+
+	/**
+	 * Merges the latencies of a test without phases and writes the summary.
+	 *
+	 * @param testCommands
+	 *            latencies of the test by command name.
+	 * @throws IOException
+	 *             on writing the summary.
+	 */
+	public void add(Map<String, LatencyHistogram> testCommands) throws IOException {
+		add(testCommands, new HashMap<String, Map<String, LatencyHistogram>>());
+	}
+
+	/**
+	 * Merges the latencies of a test and writes the summary.
+	 *
+	 * @param testCommands
+	 *            latencies of the test by command name.
+	 * @param testPhases
+	 *            latencies of the test by command name and phase.
+	 * @throws IOException
+	 *             on writing the summary.
+	 */
+	public synchronized void add(Map<String, LatencyHistogram> testCommands,
+			Map<String, Map<String, LatencyHistogram>> testPhases) throws IOException {
+		tests++;
+		merge(commands, testCommands);
+		for (Map.Entry<String, Map<String, LatencyHistogram>> entry : testPhases.entrySet()) {
+			Map<String, LatencyHistogram> commandPhases = phases.get(entry.getKey());
+			if (commandPhases == null) {
+				commandPhases = new TreeMap<String, LatencyHistogram>();
+				phases.put(entry.getKey(), commandPhases);
+			}
+			merge(commandPhases, entry.getValue());
+		}
+		Files.write(file.toPath(), toJson().getBytes(UTF_8));
+	}
+
+	/**
+	 * Adds histograms to the histograms of the same name.
+	 *
+	 * @param target
+	 *            the merged histograms.
+	 * @param source
+	 *            histograms to add.
+	 */
+	private static void merge(Map<String, LatencyHistogram> target, Map<String, LatencyHistogram> source) {
+		for (Map.Entry<String, LatencyHistogram> entry : source.entrySet()) {
+			LatencyHistogram histogram = target.get(entry.getKey());
+			if (histogram == null) {
+				histogram = new LatencyHistogram();
+				target.put(entry.getKey(), histogram);
+			}
+			histogram.add(entry.getValue());
+		}
+	}
+
+	/**
+	 *
+	 * @return the summary as JSON, latencies in milliseconds.
+	 */
+	public synchronized String toJson() {
+		StringBuilder sb = new StringBuilder(256 + commands.size() * 128);
+		sb.append("{\"tests\":").append(tests).append(",\"units\":\"ms\",\"commands\":{");
+		boolean first = true;
+		for (Map.Entry<String, LatencyHistogram> entry : commands.entrySet()) {
+			if (!first) {
+				sb.append(',');
+			}
+			first = false;
+			LatencyHistogram histogram = entry.getValue();
+			sb.append("\n\"").append(entry.getKey()).append("\":");
+			appendStatistics(sb, histogram);
+			Map<String, LatencyHistogram> commandPhases = phases.get(entry.getKey());
+			if (commandPhases != null && !commandPhases.isEmpty()) {
+				sb.setLength(sb.length() - 1);
+				sb.append(",\"phases\":{");
+				boolean firstPhase = true;
+				for (Map.Entry<String, LatencyHistogram> phase : commandPhases.entrySet()) {
+					if (!firstPhase) {
+						sb.append(',');
+					}
+					firstPhase = false;
+					sb.append('"').append(phase.getKey()).append("\":");
+					appendStatistics(sb, phase.getValue());
+				}
+				sb.append("}}");
+			}
+		}
+		sb.append("}}\n");
+		return sb.toString();
+	}
+
+	/**
+	 * Appends count, mean, percentiles and maximum as JSON object.
+	 *
+	 * @param sb
+	 *            the JSON.
+	 * @param histogram
+	 *            the latencies.
+	 */
+	private static void appendStatistics(StringBuilder sb, LatencyHistogram histogram) {
+		sb.append("{\"count\":").append(histogram.getCount()).append(",\"mean\":")
+				.append(histogram.getMean() / NANOS_PER_MILLI).append(",\"p50\":")
+				.append(histogram.getValueAtPercentile(50) / NANOS_PER_MILLI).append(",\"p95\":")
+				.append(histogram.getValueAtPercentile(95) / NANOS_PER_MILLI).append(",\"p99\":")
+				.append(histogram.getValueAtPercentile(99) / NANOS_PER_MILLI).append(",\"max\":")
+				.append(histogram.getMax() / NANOS_PER_MILLI).append('}');
+	}
+
+}
@@ -0,0 +1,305 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Appends <code>testcase</code> elements to the plotInput.xml read by the
+ * Jenkins plot plugin. Instead of parsing and rewriting the document, the
+ * closing <code>&lt;/testsuite&gt;</code> is overwritten by the new element
+ * followed by the closing tag, so an append costs the same for every test.
+ * <p>
+ * A file left without closing tag by a terminated JVM is repaired on the next
+ * append: an incomplete trailing element is cut off.
+ * <p>
+ * Appends to the same file are serialized: within the JVM by a lock per
+ * file, as several fixtures may run at once, and between JVMs by a lock on
+ * the file.
+ */
+public class PlotInputWriter {
+
+	private static final Logger LOGGER = Logger.getLogger(PlotInputWriter.class);
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final String HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>";
+	private static final String SUITE_START = "<testsuite>";
+	private static final String SUITE_END = "</testsuite>";
+	private static final String EMPTY_SUITE = "<testsuite/>";
+	private static final int TAIL_SIZE = 4096;
+	private static final double NANOS_PER_MILLI = 1000000.0;
+	private static final Map<String, Object> FILE_LOCKS = new HashMap<String, Object>();
+
+	/**
+	 * Appends one testcase to the file, creating it if necessary.
+	 *
+	 * @param file
+	 *            the plotInput.xml.
+	 * @param name
+	 *            of the testcase.
+	 * @param time
+	 *            runtime of the testcase.
+	 * @throws IOException
+	 *             on writing the file.
+	 */
+	public void append(File file, String name, String time) throws IOException {
+		appendRecord(file, "<testcase name=\"" + escape(name) + "\" time=\"" + escape(time) + "\"/>");
+	}
+
+	/**
+	 * Appends one testcase like {@link #append(File, String, String, Map, Map)}
+	 * without phases.
+	 *
+	 * @param file
+	 *            the plotInput.xml.
+	 * @param name
+	 *            of the testcase.
+	 * @param time
+	 *            runtime of the testcase.
+	 * @param commands
+	 *            latencies of the test by command name.
+	 * @throws IOException
+	 *             on writing the file.
+	 */
+	public void append(File file, String name, String time, Map<String, LatencyHistogram> commands)
+			throws IOException {
+		append(file, name, time, commands, new HashMap<String, Map<String, LatencyHistogram>>());
+	}
+
+	/**
+	 * Appends one testcase with the latency percentiles of the test and one
+	 * <code>command</code> element per fixture command. The values are in
+	 * milliseconds and can be selected as plot series by XPath, for example
+	 * <code>//command[@name='clickButton']/@p95</code>.
+	 *
+	 * @param file
+	 *            the plotInput.xml.
+	 * @param name
+	 *            of the testcase.
+	 * @param time
+	 *            runtime of the testcase.
+	 * @param commands
+	 *            latencies of the test by command name.
+	 * @param phases
+	 *            latencies by command name and phase, written as mean per
+	 *            call in an attribute named like the phase.
+	 * @throws IOException
+	 *             on writing the file.
+	 */
+	public void append(File file, String name, String time, Map<String, LatencyHistogram> commands,
+			Map<String, Map<String, LatencyHistogram>> phases) throws IOException {
+		LatencyHistogram test = new LatencyHistogram();
+		for (LatencyHistogram histogram : commands.values()) {
+			test.add(histogram);
+		}
+		StringBuilder record = new StringBuilder(128 + commands.size() * 128);
+		record.append("<testcase name=\"").append(escape(name)).append("\" time=\"").append(escape(time))
+				.append('"');
+		appendPercentiles(record, test);
+		record.append("/>");
+		for (Map.Entry<String, LatencyHistogram> entry : commands.entrySet()) {
+			record.append("<command test=\"").append(escape(name)).append("\" name=\"")
+					.append(escape(entry.getKey())).append("\" count=\"").append(entry.getValue().getCount())
+					.append('"');
+			appendPercentiles(record, entry.getValue());
+			Map<String, LatencyHistogram> commandPhases = phases.get(entry.getKey());
+			if (commandPhases != null) {
+				for (Map.Entry<String, LatencyHistogram> phase : commandPhases.entrySet()) {
+					double mean = (double) phase.getValue().getTotal() / entry.getValue().getCount();
+					record.append(' ').append(phase.getKey()).append("=\"").append(mean / NANOS_PER_MILLI)
+							.append('"');
+				}
+			}
+			record.append("/>");
+		}
+		appendRecord(file, record.toString());
+	}
+
+	/**
+	 * Appends the attributes p50, p95, p99 and max in milliseconds.
+	 *
+	 * @param record
+	 *            the element to extend.
+	 * @param histogram
+	 *            the latencies.
+	 */
+	private void appendPercentiles(StringBuilder record, LatencyHistogram histogram) {
+		record.append(" p50=\"").append(histogram.getValueAtPercentile(50) / NANOS_PER_MILLI).append('"');
+		record.append(" p95=\"").append(histogram.getValueAtPercentile(95) / NANOS_PER_MILLI).append('"');
+		record.append(" p99=\"").append(histogram.getValueAtPercentile(99) / NANOS_PER_MILLI).append('"');
+		record.append(" max=\"").append(histogram.getMax() / NANOS_PER_MILLI).append('"');
+	}
+
+	/**
+	 * Appends elements to the testsuite.
+	 *
+	 * @param file
+	 *            the plotInput.xml.
+	 * @param record
+	 *            the elements.
+	 * @throws IOException
+	 *             on writing the file.
+	 */
+	private void appendRecord(File file, String record) throws IOException {
+		synchronized (lockFor(file)) {
+			RandomAccessFile out = new RandomAccessFile(file, "rw");
+			try {
+				FileLock lock = out.getChannel().lock();
+				try {
+					insertRecord(file, out, record);
+				} finally {
+					lock.release();
+				}
+			} finally {
+				out.close();
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @param file
+	 *            the plotInput.xml.
+	 * @return the lock of the appends to the file in this JVM.
+	 * @throws IOException
+	 *             on resolving the canonical path.
+	 */
+	private static Object lockFor(File file) throws IOException {
+		String path = file.getCanonicalPath();
+		synchronized (FILE_LOCKS) {
+			Object lock = FILE_LOCKS.get(path);
+			if (lock == null) {
+				lock = new Object();
+				FILE_LOCKS.put(path, lock);
+			}
+			return lock;
+		}
+	}
+
+	/**
+	 * Overwrites the end of the testsuite by the elements and the closing
+	 * tag.
+	 *
+	 * @param file
+	 *            the plotInput.xml.
+	 * @param out
+	 *            the opened file.
+	 * @param record
+	 *            the elements.
+	 * @throws IOException
+	 *             on writing the file.
+	 */
+	private void insertRecord(File file, RandomAccessFile out, String record) throws IOException {
+		long insertAt = findInsertPosition(out);
+		String prefix = "";
+		if (insertAt < 0) {
+			if (out.length() > 0) {
+				LOGGER.error("No testsuite found in " + file + ", the file is created again.");
+			}
+			insertAt = 0;
+			prefix = HEADER + SUITE_START;
+		}
+		byte[] bytes = (prefix + record + SUITE_END).getBytes(UTF_8);
+		out.seek(insertAt);
+		out.write(bytes);
+		out.setLength(insertAt + bytes.length);
+	}
+
+	/**
+	 * Looks up the position of the next testcase in the tail of the file.
+	 *
+	 * @param file
+	 *            the plotInput.xml.
+	 * @return the position or -1 if the file contains no testsuite.
+	 * @throws IOException
+	 *             on reading the file.
+	 */
+	private long findInsertPosition(RandomAccessFile file) throws IOException {
+		long length = file.length();
+		if (length == 0) {
+			return -1;
+		}
+		long tailStart = Math.max(0, length - TAIL_SIZE);
+		byte[] bytes = new byte[(int) (length - tailStart)];
+		file.seek(tailStart);
+		file.readFully(bytes);
+		// ISO-8859-1 keeps one char per byte, so indices are byte offsets
+		String tail = new String(bytes, Charset.forName("ISO-8859-1"));
+		String trimmed = tail.trim();
+		if (trimmed.endsWith(SUITE_END)) {
+			return tailStart + tail.lastIndexOf(SUITE_END);
+		}
+		if (trimmed.endsWith(EMPTY_SUITE)) {
+			long position = tailStart + tail.lastIndexOf(EMPTY_SUITE);
+			file.seek(position);
+			file.write(SUITE_START.getBytes(UTF_8));
+			return position + SUITE_START.length();
+		}
+		int lastRecord = tail.lastIndexOf("/>");
+		int suiteStart = tail.lastIndexOf(SUITE_START);
+		if (lastRecord < 0 && suiteStart < 0) {
+			return -1;
+		}
+		LOGGER.warn("Repairing incomplete plot file.");
+		if (lastRecord > suiteStart) {
+			return tailStart + lastRecord + 2;
+		}
+		return tailStart + suiteStart + SUITE_START.length();
+	}
+
+	/**
+	 *
+	 * @param value
+	 *            of an attribute.
+	 * @return the value with XML special characters replaced by entities.
+	 */
+	static String escape(String value) {
+		StringBuilder sb = new StringBuilder(value.length() + 16);
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '&':
+				sb.append("&amp;");
+				break;
+			case '<':
+				sb.append("&lt;");
+				break;
+			case '>':
+				sb.append("&gt;");
+				break;
+			case '"':
+				sb.append("&quot;");
+				break;
+			case '\n':
+				sb.append("&#10;");
+				break;
+			case '\r':
+				sb.append("&#13;");
+				break;
+			case '\t':
+				sb.append("&#9;");
+				break;
+			default:
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+/**
+ * Module tests for the {@link AgentResponseReader}.
+ *
+ */
+public class AgentResponseReaderTest {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * Tests the status of short replies.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testStatusOfShortReplies() throws Exception {
+		AgentResponseReader reader = new AgentResponseReader();
+		assertTrue(reader.read(stream("true"), -1, null).isTrue());
+		assertFalse(reader.read(stream("false"), -1, null).isTrue());
+		assertFalse(reader.read(stream("tru"), -1, null).isTrue());
+		AgentResponse error = reader.read(stream("ERROR widget not found"), -1, null);
+		assertTrue(error.isError());
+		assertEquals("ERROR widget not found", error.getMessage());
+	}
+
+	/**
+	 * Tests a large reply streamed to a sink while only the head is kept.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testLargeReplyIsStreamedToSink() throws Exception {
+		StringBuilder body = new StringBuilder("true");
+		while (body.length() < 100000) {
+			body.append("\nwidget äöü ").append(body.length());
+		}
+		AgentResponseReader reader = new AgentResponseReader(16);
+		ByteArrayOutputStream sink = new ByteArrayOutputStream();
+		AgentResponse response = reader.read(stream(body.toString()), -1, sink);
+		assertTrue(response.isTrue());
+		assertTrue(response.isTruncated());
+		assertEquals(body.toString().getBytes(UTF_8).length, response.getLength());
+		assertEquals(body.toString(), new String(sink.toByteArray(), UTF_8));
+		int more = body.toString().getBytes(UTF_8).length - 16;
+		assertTrue(response.getMessage(), response.getMessage().endsWith("... (" + more + " bytes more)"));
+		assertTrue(response.getMessage().startsWith("true\nwidget"));
+	}
+
+	/**
+	 * Tests the detection of the error marker after the kept head and across
+	 * buffer boundaries.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testErrorMarkerBehindHead() throws Exception {
+		StringBuilder body = new StringBuilder();
+		while (body.length() < 8190) {
+			body.append('E');
+		}
+		body.append("ERROR in widget tree");
+		AgentResponse response = new AgentResponseReader(16).read(stream(body.toString()), -1, null);
+		assertTrue(response.isError());
+		assertFalse(new AgentResponseReader().read(stream("ERRORS"), -1, null).isError());
+	}
+
+	/**
+	 * Tests that a reply of known length leaves the following bytes unread.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testReplyOfKnownLength() throws Exception {
+		ByteArrayInputStream in = stream("truefalse");
+		AgentResponseReader reader = new AgentResponseReader();
+		assertTrue(reader.read(in, 4, null).isTrue());
+		assertEquals("false", reader.read(in, 5, null).getMessage());
+	}
+
+	/**
+	 *
+	 * @param content
+	 *            of the stream.
+	 * @return stream with the UTF-8 bytes of the content.
+	 */
+	private ByteArrayInputStream stream(String content) {
+		return new ByteArrayInputStream(content.getBytes(UTF_8));
+	}
+
+}
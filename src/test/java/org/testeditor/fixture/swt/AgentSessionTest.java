@@ -0,0 +1,376 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Module tests for the {@link AgentSession}.
+ *
+ */
+public class AgentSessionTest {
+
+	/**
+	 * Tests that a framed agent is served over one connection.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testFramedAgentKeepsConnection() throws Exception {
+		FakeSwtBotAgent agent = new FakeSwtBotAgent(true);
+		try {
+			AgentSession session = new AgentSession("localhost", agent.getPort());
+			for (int i = 0; i < 10; i++) {
+				assertTrue(session.send("clickButton;ID::ok" + i).isTrue());
+			}
+			assertEquals(AgentSession.Mode.FRAMED, session.getMode());
+			assertEquals(1, agent.getConnectionCount());
+			assertEquals(10, agent.getMessages().size());
+			session.close();
+		} finally {
+			agent.close();
+		}
+	}
+
+	/**
+	 * Tests the phase timings of a reply with and without the execution time
+	 * reported by the agent.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testReplyTimings() throws Exception {
+		FakeSwtBotAgent agent = new FakeSwtBotAgent(true);
+		try {
+			AgentSession session = new AgentSession("localhost", agent.getPort());
+			AgentResponse first = session.send("clickButton;ID::ok");
+			assertEquals(-1, first.getAgentNanos());
+			assertTrue(first.getConnectNanos() > 0);
+			assertTrue(first.getReadNanos() > 0);
+			session.close();
+
+			agent.setReportedMicros(1500);
+			session = new AgentSession("localhost", agent.getPort());
+			AgentResponse reply = session.send("clickButton;ID::ok");
+			assertTrue(reply.isTrue());
+			assertTrue(session.supports("timing"));
+			assertEquals(1500000L, reply.getAgentNanos());
+			assertTrue(reply.getWriteNanos() >= 0);
+			AgentResponse pooled = session.send("clickButton;ID::cancel");
+			assertTrue(pooled.getConnectNanos() < first.getConnectNanos());
+			session.close();
+		} finally {
+			agent.close();
+		}
+	}
+
+	/**
+	 * Tests the fallback to one connection per message.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testLegacyAgentFallback() throws Exception {
+		FakeSwtBotAgent agent = new FakeSwtBotAgent(false);
+		try {
+			AgentSession session = new AgentSession("localhost", agent.getPort());
+			assertTrue(session.send("clickButton;ID::ok").isTrue());
+			assertTrue(session.send("clickButton;ID::cancel").isTrue());
+			assertEquals(AgentSession.Mode.LEGACY, session.getMode());
+			// handshake plus one connection per message
+			assertEquals(3, agent.getConnectionCount());
+			assertEquals("clickButton;ID::cancel", agent.getMessages().get(1));
+		} finally {
+			agent.close();
+		}
+	}
+
+	/**
+	 * Tests that multi line arguments survive the framing.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testFramedMessageWithLineBreaks() throws Exception {
+		FakeSwtBotAgent agent = new FakeSwtBotAgent(true);
+		try {
+			AgentSession session = new AgentSession("localhost", agent.getPort());
+			session.send("setTextById;ID::text;first line\nsecond line äöü");
+			assertEquals("setTextById;ID::text;first line\nsecond line äöü", agent.getMessages().get(0));
+			session.close();
+		} finally {
+			agent.close();
+		}
+	}
+
+	/**
+	 * Tests the reconnect after the agent dropped the pooled connection.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testReconnectAfterAgentRestart() throws Exception {
+		FakeSwtBotAgent agent = new FakeSwtBotAgent(true);
+		try {
+			AgentSession session = new AgentSession("localhost", agent.getPort());
+			assertTrue(session.send("isLaunched").isTrue());
+			agent.disconnectAll();
+			assertTrue(session.send("isLaunched").isTrue());
+			assertEquals(2, agent.getConnectionCount());
+			session.close();
+		} finally {
+			agent.close();
+		}
+	}
+
+	/**
+	 * Tests that an action is not sent again if the pooled connection is lost
+	 * after the action was written, while a query is.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testNoResendOfWrittenAction() throws Exception {
+		FakeSwtBotAgent agent = new FakeSwtBotAgent(true);
+		try {
+			AgentSession session = new AgentSession("localhost", agent.getPort());
+			assertTrue(session.send("isLaunched").isTrue());
+			agent.injectFault("clickButton", FakeSwtBotAgent.Fault.DISCONNECT, 1);
+			try {
+				session.send("clickButton;ID::ok");
+				fail("lost action sent again");
+			} catch (IOException e) {
+				assertEquals(1, Collections.frequency(agent.getMessages(), "clickButton;ID::ok"));
+			}
+			assertTrue(session.send("isLaunched").isTrue());
+			agent.injectFault("isButtonEnabled", FakeSwtBotAgent.Fault.DISCONNECT, 1);
+			assertTrue(session.send("isButtonEnabled;ID::ok").isTrue());
+			assertEquals(2, Collections.frequency(agent.getMessages(), "isButtonEnabled;ID::ok"));
+			session.close();
+		} finally {
+			agent.close();
+		}
+	}
+
+	/**
+	 * Tests that reconnecting after a stale pooled connection keeps the
+	 * negotiated capabilities instead of starting the session again.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testStaleConnectionKeepsNegotiation() throws Exception {
+		FakeSwtBotAgent agent = new FakeSwtBotAgent(true);
+		try {
+			AgentSession session = new AgentSession("localhost", agent.getPort());
+			assertTrue(session.send("isLaunched").isTrue());
+			agent.announce("timing");
+			agent.injectFault("isLaunched", FakeSwtBotAgent.Fault.DISCONNECT, 1);
+			assertTrue(session.send("isLaunched").isTrue());
+			assertEquals(2, agent.getConnectionCount());
+			assertFalse(session.supports("timing"));
+
+			session.reset();
+			assertTrue(session.supports("timing"));
+			session.close();
+		} finally {
+			agent.close();
+		}
+	}
+
+	/**
+	 * Tests that failures of asynchronous commands survive the reconnect after
+	 * a stale pooled connection and a reset of the session.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testAsyncFailuresSurviveReconnectAndReset() throws Exception {
+		FakeSwtBotAgent agent = new FakeSwtBotAgent(true);
+		try {
+			agent.script("clickButton", "ERROR widget not found");
+			AgentSession session = new AgentSession("localhost", agent.getPort());
+			assertTrue(session.send("isLaunched").isTrue());
+			assertTrue(session.sendAsync(AgentCommand.parse("clickButton;ID::first")));
+			agent.injectFault("isLaunched", FakeSwtBotAgent.Fault.DISCONNECT, 1);
+			assertTrue(session.send("isLaunched").isTrue());
+			List<String> errors = session.awaitAsync();
+			assertEquals(1, errors.size());
+			assertTrue(errors.get(0), errors.get(0).contains("clickButton;ID::first"));
+
+			assertTrue(session.sendAsync(AgentCommand.parse("clickButton;ID::second")));
+			session.reset();
+			errors = session.awaitAsync();
+			assertEquals(1, errors.size());
+			assertTrue(errors.get(0), errors.get(0).contains("clickButton;ID::second"));
+			assertTrue(session.awaitAsync().isEmpty());
+			session.close();
+		} finally {
+			agent.close();
+		}
+	}
+
+	/**
+	 * Tests a pipelined batch on one framed connection.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testBatchIsPipelined() throws Exception {
+		FakeSwtBotAgent agent = new FakeSwtBotAgent(true);
+		try {
+			AgentSession session = new AgentSession("localhost", agent.getPort());
+			List<AgentResponse> results = session.sendBatch(createClicks(100));
+			assertEquals(100, results.size());
+			for (AgentResponse result : results) {
+				assertTrue(result.isTrue());
+			}
+			assertEquals(1, agent.getConnectionCount());
+			assertEquals("clickButton;ID::button99", agent.getMessages().get(99));
+			session.close();
+		} finally {
+			agent.close();
+		}
+	}
+
+	/**
+	 * Tests that the batch stops at the first error.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testBatchStopsAtFirstError() throws Exception {
+		for (boolean framed : new boolean[] { true, false }) {
+			FakeSwtBotAgent agent = new FakeSwtBotAgent(framed);
+			agent.setResponder(new FakeSwtBotAgent.Responder() {
+				@Override
+				public String reply(String message) {
+					if (message.endsWith("button5")) {
+						return "ERROR widget not found";
+					}
+					return "true";
+				}
+			});
+			try {
+				AgentSession session = new AgentSession("localhost", agent.getPort());
+				List<AgentResponse> results = session.sendBatch(createClicks(100));
+				assertEquals(6, results.size());
+				assertTrue(results.get(5).isError());
+				assertFalse(results.get(4).isError());
+				// no action after the failing one was executed
+				assertEquals(6, agent.getMessages().size());
+				// the session is still usable after the batch
+				assertTrue(session.send("isLaunched").isTrue());
+				session.close();
+			} finally {
+				agent.close();
+			}
+		}
+	}
+
+	/**
+	 * Tests that the binary format transmits arguments containing the
+	 * delimiter of the text format and the status and timing of the reply.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testBinaryFramesKeepArguments() throws Exception {
+		FakeSwtBotAgent agent = new FakeSwtBotAgent(true);
+		agent.announce(BinaryAgentCodec.CAPABILITY);
+		agent.setReportedMicros(250);
+		agent.setResponder(new FakeSwtBotAgent.Responder() {
+			@Override
+			public String reply(String message) {
+				if (message.startsWith("clickButton")) {
+					return "ERROR widget not found";
+				}
+				return "true";
+			}
+		});
+		try {
+			AgentSession session = new AgentSession("localhost", agent.getPort());
+			AgentResponse reply = session.send(new AgentCommand("setTextById", "ID::text", "a;b\nc"), null);
+			assertTrue(reply.isTrue());
+			assertEquals(250000, reply.getAgentNanos());
+			AgentResponse error = session.send(new AgentCommand("clickButton", "ID::ok"), null);
+			assertTrue(error.isError());
+			assertEquals(Arrays.asList("ID::text", "a;b\nc"), agent.getArguments().get(0));
+			List<AgentResponse> results = session.sendAll(Arrays.asList(new AgentCommand("isLaunched"),
+					new AgentCommand("clickButton", "ID;cancel"), new AgentCommand("isLaunched")));
+			assertEquals(2, results.size());
+			assertEquals(Arrays.asList("ID;cancel"), agent.getArguments().get(3));
+			assertEquals(1, agent.getConnectionCount());
+			session.close();
+		} finally {
+			agent.close();
+		}
+	}
+
+	/**
+	 * Tests that the text format is kept if the binary format is disabled.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testTextFramesIfBinaryDisabled() throws Exception {
+		FakeSwtBotAgent agent = new FakeSwtBotAgent(true);
+		agent.announce(BinaryAgentCodec.CAPABILITY);
+		try {
+			AgentSession session = new AgentSession("localhost", agent.getPort());
+			session.setBinaryEnabled(false);
+			assertTrue(session.send(new AgentCommand("setTextById", "ID::text", "a;b"), null).isTrue());
+			assertEquals(Arrays.asList("ID::text", "a", "b"), agent.getArguments().get(0));
+			session.close();
+		} finally {
+			agent.close();
+		}
+	}
+
+	/**
+	 *
+	 * @param count
+	 *            number of messages.
+	 * @return click messages for different buttons.
+	 */
+	private List<String> createClicks(int count) {
+		List<String> messages = new ArrayList<String>();
+		for (int i = 0; i < count; i++) {
+			messages.add("clickButton;ID::button" + i);
+		}
+		return messages;
+	}
+
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Module tests for the {@link AutConfigurationManager}.
+ *
+ */
+public class AutConfigurationManagerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File configIni;
+
+	/**
+	 * Creates the config.ini of a fake AUT.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Before
+	public void setUp() throws Exception {
+		File configDir = folder.newFolder("aut", "configuration");
+		configIni = new File(configDir, "config.ini");
+		Files.write(configIni.toPath(), "osgi.bundles=org.eclipse.core.runtime@start\n".getBytes("UTF-8"));
+	}
+
+	/**
+	 * Tests that the agent bundle is added and the config.ini is written only
+	 * once.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testConfigIsWrittenOnce() throws Exception {
+		AutConfigurationManager manager = new AutConfigurationManager(false, folder.getRoot());
+		File dir = manager.prepare(configIni, "/agent.jar");
+		File generated = new File(dir, "config.ini");
+		String content = new String(Files.readAllBytes(generated.toPath()), Charset.forName("UTF-8"));
+		assertTrue(content, content.contains("reference\\:file\\:/agent.jar"));
+		assertTrue(manager.isCleanRequired());
+		assertTrue(generated.setLastModified(1000));
+		assertEquals(dir, manager.prepare(configIni, "/agent.jar"));
+		assertEquals(1000, generated.lastModified());
+		manager.dispose();
+		assertFalse(dir.exists());
+	}
+
+	/**
+	 * Tests that two managers don't share a temporary directory.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testManagersUseOwnDirectories() throws Exception {
+		AutConfigurationManager first = new AutConfigurationManager(false, folder.getRoot());
+		AutConfigurationManager second = new AutConfigurationManager(false, folder.getRoot());
+		assertNotEquals(first.prepare(configIni, "/agent.jar"), second.prepare(configIni, "/agent.jar"));
+		first.dispose();
+		second.dispose();
+	}
+
+	/**
+	 * Tests that a kept OSGi cache is reused without clean and that a locked
+	 * directory is not shared.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testWarmCacheIsReusedAndLocked() throws Exception {
+		File root = folder.newFolder("warm");
+		AutConfigurationManager first = new AutConfigurationManager(true, root);
+		File dir = first.prepare(configIni, "/agent.jar");
+		assertTrue(first.isCleanRequired());
+		first.release();
+		assertEquals(dir, first.prepare(configIni, "/agent.jar"));
+		assertFalse(first.isCleanRequired());
+
+		AutConfigurationManager second = new AutConfigurationManager(true, root);
+		File otherDir = second.prepare(configIni, "/agent.jar");
+		assertNotEquals(dir, otherDir);
+		assertTrue(otherDir.getName().endsWith("-1"));
+		second.dispose();
+		first.dispose();
+		assertTrue(dir.exists());
+	}
+
+}
@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Module tests for the {@link AutOutputCapture}.
+ *
+ */
+public class AutOutputCaptureTest {
+
+	/**
+	 * Tests that only the last lines are kept.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testKeepsLastLines() throws Exception {
+		AutOutputCapture capture = new AutOutputCapture(null, 3);
+		String output = "line 1\r\nline 2\nagent started\nline 4\nline 5";
+		capture.start(new ByteArrayInputStream(output.getBytes(Charset.forName("UTF-8"))));
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!capture.isFinished() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+
+		assertTrue(capture.isFinished());
+		assertEquals(Arrays.asList("agent started", "line 4", "line 5"), capture.getLastLines(10));
+		assertEquals(Arrays.asList("line 5"), capture.getLastLines(1));
+	}
+
+}
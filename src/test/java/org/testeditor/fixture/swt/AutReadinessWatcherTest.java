@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * Module tests for the {@link AutReadinessWatcher}.
+ *
+ */
+public class AutReadinessWatcherTest {
+
+	/**
+	 * Tests that readiness is detected shortly after the probe succeeds.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testReadinessIsDetectedWithoutPollingDelay() throws Exception {
+		final long readyAt = System.nanoTime() + 100000000L;
+		AutReadinessWatcher watcher = new AutReadinessWatcher(null);
+		boolean ready = watcher.awaitReady(null, 5000, new AutReadinessWatcher.Probe() {
+			@Override
+			public boolean isReady() {
+				return System.nanoTime() >= readyAt;
+			}
+		});
+		long lateMillis = (System.nanoTime() - readyAt) / 1000000L;
+		assertTrue(ready);
+		assertTrue("detected " + lateMillis + " ms late", lateMillis < AutReadinessWatcher.MAX_PROBE_INTERVAL + 40);
+	}
+
+	/**
+	 * Tests the timeout.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testTimeout() throws Exception {
+		AutReadinessWatcher watcher = new AutReadinessWatcher(null);
+		long start = System.currentTimeMillis();
+		assertFalse(watcher.awaitReady(null, 50, new AutReadinessWatcher.Probe() {
+			@Override
+			public boolean isReady() {
+				return false;
+			}
+		}));
+		assertTrue(System.currentTimeMillis() - start >= 50);
+	}
+
+	/**
+	 * Tests that the ready marker in the output triggers a probe.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testReadyMarkerTriggersProbe() throws Exception {
+		final AutReadinessWatcher watcher = new AutReadinessWatcher("agent started");
+		final AtomicLong markerAt = new AtomicLong();
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(20);
+				} catch (InterruptedException e) {
+					return;
+				}
+				watcher.onOutput("loading bundles\n");
+				markerAt.set(System.nanoTime());
+				watcher.onOutput("agent started on port 9090\n");
+			}
+		}).start();
+		assertTrue(watcher.awaitReady(null, 5000, new AutReadinessWatcher.Probe() {
+			@Override
+			public boolean isReady() {
+				return markerAt.get() != 0;
+			}
+		}));
+		assertTrue((System.nanoTime() - markerAt.get()) / 1000000L < AutReadinessWatcher.MAX_PROBE_INTERVAL + 40);
+	}
+
+}
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Module tests for the {@link AutStandbyPool}.
+ *
+ */
+public class AutStandbyPoolTest {
+
+	/**
+	 * Launcher of fake AUTs named by their workspace.
+	 */
+	private static class FakeLauncher implements AutStandbyPool.Launcher<String> {
+
+		private final AtomicInteger launches = new AtomicInteger();
+		private final Set<String> stopped = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+		@Override
+		public String launch(String workspace) throws Exception {
+			launches.incrementAndGet();
+			return workspace;
+		}
+
+		@Override
+		public boolean isAlive(String instance) {
+			return !stopped.contains(instance);
+		}
+
+		@Override
+		public void stop(String instance) {
+			stopped.add(instance);
+		}
+	}
+
+	/**
+	 * Tests that a taken AUT is replaced and its workspace is reused after
+	 * release.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testTakeAndRelease() throws Exception {
+		FakeLauncher launcher = new FakeLauncher();
+		List<String> workspaces = Arrays.asList("ws0", "ws1");
+		AutStandbyPool<String> pool = new AutStandbyPool<String>(1, workspaces, launcher);
+
+		assertNull(pool.take());
+		awaitReady(pool, 1);
+		String first = pool.take();
+		assertEquals("ws0", first);
+		awaitReady(pool, 1);
+		String second = pool.take();
+		assertEquals("ws1", second);
+		Thread.sleep(100);
+		assertEquals("no workspace free", 0, pool.getReadyCount());
+
+		pool.release(first);
+		awaitReady(pool, 1);
+		assertEquals(3, launcher.launches.get());
+		pool.shutdown();
+		assertEquals(0, pool.getReadyCount());
+	}
+
+	/**
+	 * Tests that a terminated standby AUT is not handed out.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testSkipsTerminatedStandby() throws Exception {
+		FakeLauncher launcher = new FakeLauncher();
+		AutStandbyPool<String> pool = new AutStandbyPool<String>(2, Arrays.asList("ws0", "ws1", "ws2"), launcher);
+		pool.fill();
+		awaitReady(pool, 2);
+		launcher.stopped.add("ws0");
+
+		String taken = pool.take();
+		assertNotNull(taken);
+		assertEquals("ws1", taken);
+		pool.shutdown();
+	}
+
+	/**
+	 * Tests that the shutdown waits for a launch in progress and stops its
+	 * AUT.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testShutdownStopsLaunchInProgress() throws Exception {
+		final CountDownLatch launching = new CountDownLatch(1);
+		final CountDownLatch proceed = new CountDownLatch(1);
+		FakeLauncher launcher = new FakeLauncher() {
+			@Override
+			public String launch(String workspace) throws Exception {
+				launching.countDown();
+				proceed.await();
+				return super.launch(workspace);
+			}
+		};
+		final AutStandbyPool<String> pool = new AutStandbyPool<String>(1, Arrays.asList("ws0", "ws1"), launcher);
+		pool.fill();
+		assertTrue(launching.await(5, TimeUnit.SECONDS));
+		Thread shutdown = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				pool.shutdown();
+			}
+		});
+		shutdown.start();
+		proceed.countDown();
+		shutdown.join(5000);
+		assertFalse(shutdown.isAlive());
+		assertEquals(Collections.singleton("ws0"), launcher.stopped);
+		assertEquals(1, launcher.launches.get());
+	}
+
+	/**
+	 * Waits until the pool has the number of ready AUTs.
+	 *
+	 * @param pool
+	 *            to wait for.
+	 * @param count
+	 *            of ready AUTs.
+	 * @throws InterruptedException
+	 *             while waiting.
+	 */
+	private void awaitReady(AutStandbyPool<String> pool, int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (pool.getReadyCount() < count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(count, pool.getReadyCount());
+	}
+
+}
@@ -0,0 +1,739 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Logger;
+
+/**
+ * Stand-in for the SWTBot agent on a loopback port. Speaks the line protocol
+ * of the agent and, if enabled, the framed protocol of the
+ * {@link AgentSession}. Framed connections accept text and binary frames; the
+ * fixture sends binary frames if the capability
+ * {@link BinaryAgentCodec#CAPABILITY} is announced.
+ * <p>
+ * Replies come from scripted replies per command, else from the
+ * {@link Responder}. A latency range delays each reply, and faults can be
+ * injected per command or at random. Connections are served concurrently; in
+ * the serialized mode the commands are executed one at a time like on the UI
+ * thread of a real AUT. Started by {@link #main(String[])} the agent serves
+ * port 9090 for a fixture on a machine without AUT.
+ */
+public class FakeSwtBotAgent implements Closeable {
+
+	private static final Logger LOGGER = Logger.getLogger(FakeSwtBotAgent.class);
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * Creates the reply of the agent to a message.
+	 */
+	public interface Responder {
+
+		/**
+		 *
+		 * @param message
+		 *            received by the agent.
+		 * @return the reply.
+		 */
+		String reply(String message);
+	}
+
+	/**
+	 * Faults the agent can inject instead of a regular reply.
+	 */
+	public enum Fault {
+		/** Replies with an error of the agent. */
+		ERROR_REPLY,
+		/** Closes the connection without a reply. */
+		DISCONNECT,
+		/** Keeps the connection open without a reply, like a hanging AUT. */
+		NO_REPLY,
+		/** Replies with a frame the fixture can't decode. */
+		GARBAGE
+	}
+
+	/** Reply of an injected {@link Fault#ERROR_REPLY}. */
+	public static final String INJECTED_ERROR = AgentResponse.ERROR_MARKER + "injected fault";
+
+	private static final int DEFAULT_PORT = 9090;
+	private static final String STOP_COMMAND = "stop";
+
+	private final ServerSocket serverSocket;
+	private final boolean framedSupported;
+	private final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+	private final List<List<String>> receivedArguments = Collections.synchronizedList(new ArrayList<List<String>>());
+	private final AtomicInteger connections = new AtomicInteger();
+	private final AtomicInteger activeConnections = new AtomicInteger();
+	private final AtomicInteger maxActiveConnections = new AtomicInteger();
+	private final Map<String, Deque<String>> scripts = new ConcurrentHashMap<String, Deque<String>>();
+	private final Map<String, Deque<Fault>> faults = new ConcurrentHashMap<String, Deque<Fault>>();
+	private final Object uiThread = new Object();
+	private final CountDownLatch closed = new CountDownLatch(1);
+	private final CountDownLatch stopped = new CountDownLatch(1);
+	private final Random random = new Random(1);
+	private volatile long minLatencyMillis;
+	private volatile long maxLatencyMillis;
+	private volatile boolean serialized;
+	private volatile Fault randomFault;
+	private volatile double randomFaultRate;
+	private final List<String> capabilities = new CopyOnWriteArrayList<String>();
+	private volatile long reportedMicros = -1;
+	private final List<Socket> openSockets = Collections.synchronizedList(new ArrayList<Socket>());
+	private volatile Responder responder = new Responder() {
+		@Override
+		public String reply(String message) {
+			return "true";
+		}
+	};
+
+	/**
+	 * Starts the agent on a free loopback port.
+	 *
+	 * @param framedSupported
+	 *            true if the agent accepts the framed handshake.
+	 * @throws IOException
+	 *             on opening the server socket.
+	 */
+	public FakeSwtBotAgent(boolean framedSupported) throws IOException {
+		this(0, framedSupported);
+	}
+
+	/**
+	 * Starts the agent on a loopback port.
+	 *
+	 * @param port
+	 *            of the agent, 0 for a free port.
+	 * @param framedSupported
+	 *            true if the agent accepts the framed handshake.
+	 * @throws IOException
+	 *             on opening the server socket.
+	 */
+	public FakeSwtBotAgent(int port, boolean framedSupported) throws IOException {
+		this.framedSupported = framedSupported;
+		serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				acceptConnections();
+			}
+		}, "fake-swtbot-agent");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 *
+	 * @return the port of the agent.
+	 */
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 *
+	 * @param responder
+	 *            creating the replies of the agent.
+	 */
+	public void setResponder(Responder responder) {
+		this.responder = responder;
+	}
+
+	/**
+	 * Announces the capability <code>timing</code> on the next handshakes and
+	 * reports the given execution time in the header of each framed reply.
+	 *
+	 * @param micros
+	 *            reported execution time in microseconds, or -1 to report
+	 *            none.
+	 */
+	public void setReportedMicros(long micros) {
+		this.reportedMicros = micros;
+		if (micros >= 0) {
+			announce("timing");
+		}
+	}
+
+	/**
+	 * Scripts the replies to a command. The replies are used in order; the
+	 * last one is repeated. Scripted replies take precedence over the
+	 * {@link Responder}.
+	 *
+	 * @param command
+	 *            name of the agent command.
+	 * @param replies
+	 *            replies to the following messages of the command.
+	 */
+	public void script(String command, String... replies) {
+		scripts.put(command, new ArrayDeque<String>(Arrays.asList(replies)));
+	}
+
+	/**
+	 * Delays each reply by a random time in the range, e.g. to reproduce a
+	 * slow AUT.
+	 *
+	 * @param minMillis
+	 *            minimal delay.
+	 * @param maxMillis
+	 *            maximal delay.
+	 */
+	public void setLatency(long minMillis, long maxMillis) {
+		this.minLatencyMillis = minMillis;
+		this.maxLatencyMillis = Math.max(minMillis, maxMillis);
+	}
+
+	/**
+	 *
+	 * @param serialized
+	 *            true to execute one command at a time over all connections,
+	 *            like the UI thread of the AUT does.
+	 */
+	public void setSerialized(boolean serialized) {
+		this.serialized = serialized;
+	}
+
+	/**
+	 * Injects a fault into the next messages of a command.
+	 *
+	 * @param command
+	 *            name of the agent command.
+	 * @param fault
+	 *            replacing the regular reply.
+	 * @param count
+	 *            number of messages with the fault.
+	 */
+	public void injectFault(String command, Fault fault, int count) {
+		Deque<Fault> pending = new ArrayDeque<Fault>();
+		for (int i = 0; i < count; i++) {
+			pending.add(fault);
+		}
+		faults.put(command, pending);
+	}
+
+	/**
+	 * Injects a fault into a random share of all messages. The random
+	 * sequence is the same in every run.
+	 *
+	 * @param fault
+	 *            replacing the regular reply or null for none.
+	 * @param rate
+	 *            share of the messages between 0 and 1.
+	 */
+	public void setRandomFault(Fault fault, double rate) {
+		this.randomFault = fault;
+		this.randomFaultRate = rate;
+	}
+
+	/**
+	 * Announces a capability on the next framed handshakes.
+	 *
+	 * @param capability
+	 *            name of the capability.
+	 */
+	public void announce(String capability) {
+		if (!capabilities.contains(capability)) {
+			capabilities.add(capability);
+		}
+	}
+
+	/**
+	 *
+	 * @return all messages received so far, without handshakes.
+	 */
+	public List<String> getMessages() {
+		synchronized (messages) {
+			return new ArrayList<String>(messages);
+		}
+	}
+
+	/**
+	 *
+	 * @return the arguments of all messages received so far, split by the
+	 *         format of each frame.
+	 */
+	public List<List<String>> getArguments() {
+		synchronized (receivedArguments) {
+			return new ArrayList<List<String>>(receivedArguments);
+		}
+	}
+
+	/**
+	 *
+	 * @return number of accepted connections.
+	 */
+	public int getConnectionCount() {
+		return connections.get();
+	}
+
+	/**
+	 *
+	 * @return highest number of connections served at the same time.
+	 */
+	public int getMaxActiveConnections() {
+		return maxActiveConnections.get();
+	}
+
+	/**
+	 * Waits until the agent received the stop command of the fixture.
+	 *
+	 * @param timeoutMillis
+	 *            maximal time to wait.
+	 * @return true if the stop command was received.
+	 * @throws InterruptedException
+	 *             while waiting.
+	 */
+	public boolean awaitStop(long timeoutMillis) throws InterruptedException {
+		return stopped.await(timeoutMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Drops all open connections like a restarted AUT does.
+	 *
+	 * @throws IOException
+	 *             on closing a connection.
+	 */
+	public void disconnectAll() throws IOException {
+		synchronized (openSockets) {
+			for (Socket socket : openSockets) {
+				socket.close();
+			}
+			openSockets.clear();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed.countDown();
+		serverSocket.close();
+		disconnectAll();
+	}
+
+	/**
+	 * Accepts connections until the server socket is closed.
+	 */
+	private void acceptConnections() {
+		while (!serverSocket.isClosed()) {
+			try {
+				final Socket socket = serverSocket.accept();
+				// replies are written in parts, don't let them wait for acks
+				socket.setTcpNoDelay(true);
+				connections.incrementAndGet();
+				openSockets.add(socket);
+				Thread handler = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						handle(socket);
+					}
+				}, "fake-swtbot-agent-connection");
+				handler.setDaemon(true);
+				handler.start();
+			} catch (IOException e) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Serves one connection.
+	 *
+	 * @param socket
+	 *            of the client.
+	 */
+	private void handle(Socket socket) {
+		int active = activeConnections.incrementAndGet();
+		int max = maxActiveConnections.get();
+		while (active > max && !maxActiveConnections.compareAndSet(max, active)) {
+			max = maxActiveConnections.get();
+		}
+		try {
+			InputStream in = new BufferedInputStream(socket.getInputStream());
+			OutputStream out = socket.getOutputStream();
+			String first = readLine(in);
+			if (first == null) {
+				return;
+			}
+			if (AgentSession.FRAMED_HANDSHAKE.equals(first) && framedSupported) {
+				StringBuilder ack = new StringBuilder(AgentSession.FRAMED_ACK);
+				for (String capability : capabilities) {
+					ack.append(';').append(capability);
+				}
+				out.write((ack + "\n").getBytes(UTF_8));
+				out.flush();
+				while (true) {
+					in.mark(1);
+					int lead = in.read();
+					if (lead == -1) {
+						return;
+					}
+					if (lead == BinaryAgentCodec.MAGIC) {
+						if (!handleBinaryFrame(new DataInputStream(in), out)) {
+							return;
+						}
+						continue;
+					}
+					in.reset();
+					String header = readLine(in);
+					byte[] payload = new byte[Integer.parseInt(header)];
+					int read = 0;
+					while (read < payload.length) {
+						read += in.read(payload, read, payload.length - read);
+					}
+					String message = new String(payload, UTF_8);
+					Fault fault = receive(message, AgentCommand.parse(message).getArguments());
+					if (fault == Fault.GARBAGE) {
+						out.write("garbage\n".getBytes(UTF_8));
+						out.flush();
+						continue;
+					}
+					if (!deliver(fault)) {
+						return;
+					}
+					String answer = answer(message, fault);
+					byte[] reply = answer.getBytes(UTF_8);
+					String replyHeader = Integer.toString(reply.length);
+					if (reportedMicros >= 0) {
+						replyHeader += ";" + reportedMicros;
+					}
+					out.write((replyHeader + "\n").getBytes(UTF_8));
+					out.write(reply);
+					out.flush();
+				}
+			} else if (AgentSession.FRAMED_HANDSHAKE.equals(first)) {
+				out.write("ERROR unknown command".getBytes(UTF_8));
+			} else {
+				Fault fault = receive(first, AgentCommand.parse(first).getArguments());
+				if (fault == Fault.GARBAGE) {
+					out.write("garbage".getBytes(UTF_8));
+				} else if (deliver(fault)) {
+					out.write(answer(first, fault).getBytes(UTF_8));
+				}
+			}
+		} catch (SocketException e) {
+			return;
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		} finally {
+			activeConnections.decrementAndGet();
+			openSockets.remove(socket);
+			try {
+				socket.close();
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	/**
+	 * Serves one frame of the binary format after its first byte.
+	 *
+	 * @param in
+	 *            the rest of the frame.
+	 * @param out
+	 *            for the reply.
+	 * @return false if the connection is to be closed.
+	 * @throws IOException
+	 *             on socket errors.
+	 */
+	private boolean handleBinaryFrame(DataInputStream in, OutputStream out) throws IOException {
+		in.readInt();
+		String command = readString(in, in.readUnsignedShort());
+		int count = in.readUnsignedShort();
+		List<String> arguments = new ArrayList<String>();
+		StringBuilder message = new StringBuilder(command);
+		for (int i = 0; i < count; i++) {
+			String argument = readString(in, in.readInt());
+			arguments.add(argument);
+			message.append(AgentCommand.DELIMITER).append(argument);
+		}
+		Fault fault = receive(message.toString(), arguments);
+		if (fault == Fault.GARBAGE) {
+			out.write(0);
+			out.flush();
+			return true;
+		}
+		if (!deliver(fault)) {
+			return false;
+		}
+		String reply = answer(message.toString(), fault);
+		byte[] payload = reply.getBytes(UTF_8);
+		ByteArrayOutputStream frame = new ByteArrayOutputStream(payload.length + 14);
+		DataOutputStream data = new DataOutputStream(frame);
+		data.write(BinaryAgentCodec.MAGIC);
+		if (reply.startsWith(AgentResponse.ERROR_MARKER)) {
+			data.write(BinaryAgentCodec.STATUS_ERROR);
+		} else {
+			data.write(BinaryAgentCodec.STATUS_OK);
+		}
+		data.writeLong(reportedMicros);
+		data.writeInt(payload.length);
+		data.write(payload);
+		out.write(frame.toByteArray());
+		out.flush();
+		return true;
+	}
+
+	/**
+	 *
+	 * @param in
+	 *            to read from.
+	 * @param length
+	 *            of the string in bytes.
+	 * @return the UTF-8 decoded string.
+	 * @throws IOException
+	 *             on read errors.
+	 */
+	private String readString(DataInputStream in, int length) throws IOException {
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	/**
+	 * Records the message.
+	 *
+	 * @param message
+	 *            received, in the text format.
+	 * @param arguments
+	 *            of the message as decoded by the agent.
+	 * @return the fault to inject into the message or null.
+	 */
+	private Fault receive(String message, List<String> arguments) {
+		messages.add(message);
+		receivedArguments.add(arguments);
+		String command = AgentCommand.parse(message).getName();
+		if (STOP_COMMAND.equals(command)) {
+			stopped.countDown();
+		}
+		return nextFault(command);
+	}
+
+	/**
+	 * Creates the reply.
+	 *
+	 * @param message
+	 *            received, in the text format.
+	 * @param fault
+	 *            injected fault or null.
+	 * @return the reply.
+	 */
+	private String answer(String message, Fault fault) {
+		String command = AgentCommand.parse(message).getName();
+		if (serialized) {
+			synchronized (uiThread) {
+				return execute(message, command, fault);
+			}
+		}
+		return execute(message, command, fault);
+	}
+
+	/**
+	 * Waits for the latency and creates the reply.
+	 *
+	 * @param message
+	 *            received.
+	 * @param command
+	 *            name of the command.
+	 * @param fault
+	 *            injected fault or null.
+	 * @return the reply.
+	 */
+	private String execute(String message, String command, Fault fault) {
+		long latency = minLatencyMillis;
+		if (maxLatencyMillis > minLatencyMillis) {
+			synchronized (random) {
+				latency += (long) (random.nextDouble() * (maxLatencyMillis - minLatencyMillis));
+			}
+		}
+		if (latency > 0) {
+			try {
+				Thread.sleep(latency);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (fault == Fault.ERROR_REPLY) {
+			return INJECTED_ERROR;
+		}
+		Deque<String> script = scripts.get(command);
+		if (script != null) {
+			synchronized (script) {
+				if (script.size() > 1) {
+					return script.pollFirst();
+				}
+				if (!script.isEmpty()) {
+					return script.peekFirst();
+				}
+			}
+		}
+		return responder.reply(message);
+	}
+
+	/**
+	 *
+	 * @param command
+	 *            name of the command.
+	 * @return the fault to inject into the message or null.
+	 */
+	private Fault nextFault(String command) {
+		Deque<Fault> pending = faults.get(command);
+		if (pending != null) {
+			synchronized (pending) {
+				Fault fault = pending.pollFirst();
+				if (fault != null) {
+					return fault;
+				}
+			}
+		}
+		Fault fault = randomFault;
+		if (fault != null) {
+			synchronized (random) {
+				if (random.nextDouble() < randomFaultRate) {
+					return fault;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Handles the faults without a reply.
+	 *
+	 * @param fault
+	 *            injected fault or null.
+	 * @return true if the reply is to be written, false if the connection is
+	 *         to be closed.
+	 */
+	private boolean deliver(Fault fault) {
+		if (fault == Fault.DISCONNECT) {
+			return false;
+		}
+		if (fault == Fault.NO_REPLY) {
+			try {
+				closed.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Reads a line terminated by a line break.
+	 *
+	 * @param in
+	 *            to read from.
+	 * @return the line or null on end of stream.
+	 * @throws IOException
+	 *             on read errors.
+	 */
+	private String readLine(InputStream in) throws IOException {
+		StringBuilder line = new StringBuilder();
+		int c;
+		while ((c = in.read()) != -1) {
+			if (c == '\n') {
+				return line.toString();
+			}
+			if (c != '\r') {
+				line.append((char) c);
+			}
+		}
+		if (line.length() == 0) {
+			return null;
+		}
+		return line.toString();
+	}
+
+	/**
+	 * Serves the fixture on a machine without AUT until it sends the stop
+	 * command. Every message is logged.
+	 *
+	 * <pre>
+	 * FakeSwtBotAgent [port] [--legacy] [--binary] [--serialized]
+	 *                 [--latency=&lt;min ms&gt;-&lt;max ms&gt;] [--error-rate=&lt;share&gt;]
+	 * </pre>
+	 *
+	 * @param args
+	 *            the options.
+	 * @throws Exception
+	 *             on opening the port.
+	 */
+	public static void main(String[] args) throws Exception {
+		int port = DEFAULT_PORT;
+		boolean framed = true;
+		List<String> options = new ArrayList<String>();
+		for (String arg : args) {
+			if (arg.equals("--legacy")) {
+				framed = false;
+			} else if (arg.startsWith("--")) {
+				options.add(arg);
+			} else {
+				port = Integer.parseInt(arg);
+			}
+		}
+		if (!Logger.getRootLogger().getAllAppenders().hasMoreElements()) {
+			BasicConfigurator.configure();
+		}
+		FakeSwtBotAgent agent = new FakeSwtBotAgent(port, framed);
+		for (String option : options) {
+			if (option.equals("--binary")) {
+				agent.announce(BinaryAgentCodec.CAPABILITY);
+			} else if (option.equals("--serialized")) {
+				agent.setSerialized(true);
+			} else if (option.startsWith("--latency=")) {
+				String[] range = option.substring("--latency=".length()).split("-");
+				agent.setLatency(Long.parseLong(range[0]), Long.parseLong(range[range.length - 1]));
+			} else if (option.startsWith("--error-rate=")) {
+				agent.setRandomFault(Fault.ERROR_REPLY, Double.parseDouble(option.substring("--error-rate=".length())));
+			} else {
+				throw new IllegalArgumentException("Unknown option " + option);
+			}
+		}
+		agent.setResponder(new Responder() {
+			@Override
+			public String reply(String message) {
+				LOGGER.info(message);
+				return "true";
+			}
+		});
+		LOGGER.info("Fake SWTBot agent listening on port " + agent.getPort());
+		agent.awaitStop(Long.MAX_VALUE);
+		agent.close();
+	}
+
+}
@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Module tests for the {@link FakeSwtBotAgent} used in load and latency
+ * tests.
+ *
+ */
+public class FakeSwtBotAgentTest {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * Tests that scripted replies are used in order and injected errors
+	 * replace them.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testScriptedRepliesAndInjectedError() throws Exception {
+		FakeSwtBotAgent agent = new FakeSwtBotAgent(true);
+		try {
+			agent.script("isButtonEnabled", "false", "true");
+			agent.injectFault("clickButton", FakeSwtBotAgent.Fault.ERROR_REPLY, 1);
+			AgentSession session = new AgentSession("localhost", agent.getPort());
+			assertFalse(session.send("isButtonEnabled;ID::ok").isTrue());
+			assertTrue(session.send("isButtonEnabled;ID::ok").isTrue());
+			assertTrue(session.send("isButtonEnabled;ID::ok").isTrue());
+			assertTrue(session.send("clickButton;ID::ok").isError());
+			assertTrue(session.send("clickButton;ID::ok").isTrue());
+			session.close();
+		} finally {
+			agent.close();
+		}
+	}
+
+	/**
+	 * Tests that the agent drops the connection or keeps it without reply.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testDisconnectAndNoReplyFaults() throws Exception {
+		FakeSwtBotAgent agent = new FakeSwtBotAgent(false);
+		try {
+			agent.injectFault("clickButton", FakeSwtBotAgent.Fault.DISCONNECT, 1);
+			assertEquals(-1, sendLine(agent, "clickButton;ID::ok"));
+
+			agent.injectFault("clickButton", FakeSwtBotAgent.Fault.NO_REPLY, 1);
+			try {
+				sendLine(agent, "clickButton;ID::ok");
+				fail("reply of a hanging agent");
+			} catch (SocketTimeoutException e) {
+				assertEquals(2, agent.getMessages().size());
+			}
+		} finally {
+			agent.close();
+		}
+	}
+
+	/**
+	 * Tests that concurrent sessions are served in parallel, unless the agent
+	 * executes the commands one at a time.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testConcurrentSessions() throws Exception {
+		FakeSwtBotAgent agent = new FakeSwtBotAgent(true);
+		ExecutorService clients = Executors.newFixedThreadPool(4);
+		try {
+			// the first command of each session waits until all sessions are in
+			final CountDownLatch allInside = new CountDownLatch(4);
+			agent.setResponder(new FakeSwtBotAgent.Responder() {
+				@Override
+				public String reply(String message) {
+					allInside.countDown();
+					try {
+						return Boolean.toString(allInside.await(10, TimeUnit.SECONDS));
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return "false";
+					}
+				}
+			});
+			runClients(agent, clients, 4);
+			assertTrue(agent.getMaxActiveConnections() >= 4);
+
+			final AtomicInteger executing = new AtomicInteger();
+			final AtomicInteger maxExecuting = new AtomicInteger();
+			agent.setResponder(new FakeSwtBotAgent.Responder() {
+				@Override
+				public String reply(String message) {
+					int now = executing.incrementAndGet();
+					int max = maxExecuting.get();
+					while (now > max && !maxExecuting.compareAndSet(max, now)) {
+						max = maxExecuting.get();
+					}
+					try {
+						Thread.sleep(5);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					executing.decrementAndGet();
+					return "true";
+				}
+			});
+			agent.setSerialized(true);
+			runClients(agent, clients, 4);
+			assertEquals(1, maxExecuting.get());
+			assertEquals(16, agent.getMessages().size());
+		} finally {
+			clients.shutdown();
+			agent.close();
+		}
+	}
+
+	/**
+	 * Sends two commands in each of the sessions.
+	 *
+	 * @param agent
+	 *            serving the sessions.
+	 * @param clients
+	 *            running the sessions.
+	 * @param count
+	 *            number of sessions.
+	 * @throws Exception
+	 *             on failure of a session.
+	 */
+	private void runClients(final FakeSwtBotAgent agent, ExecutorService clients, int count) throws Exception {
+		List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+		for (int i = 0; i < count; i++) {
+			results.add(clients.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws Exception {
+					AgentSession session = new AgentSession("localhost", agent.getPort());
+					try {
+						return session.send("clickButton;ID::ok").isTrue() && session.send("clickButton;ID::ok").isTrue();
+					} finally {
+						session.close();
+					}
+				}
+			}));
+		}
+		for (Future<Boolean> result : results) {
+			assertTrue(result.get());
+		}
+	}
+
+	/**
+	 * Sends a line to the agent on a new connection.
+	 *
+	 * @param agent
+	 *            receiving the line.
+	 * @param line
+	 *            the message.
+	 * @return the first byte of the reply or -1 if the agent closed the
+	 *         connection.
+	 * @throws Exception
+	 *             on socket errors, a timeout after 500 ms included.
+	 */
+	private int sendLine(FakeSwtBotAgent agent, String line) throws Exception {
+		Socket socket = new Socket("localhost", agent.getPort());
+		try {
+			socket.setSoTimeout(500);
+			socket.getOutputStream().write((line + "\n").getBytes(UTF_8));
+			socket.getOutputStream().flush();
+			return socket.getInputStream().read();
+		} finally {
+			socket.close();
+		}
+	}
+
+}
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Module tests for the {@link FitNesseProbe} against a stub HTTP server.
+ *
+ */
+public class FitNesseProbeTest {
+
+	private HttpServer server;
+	private FitNesseProbe probe;
+	private final AtomicInteger requests = new AtomicInteger();
+	private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+	private volatile int readyAfter;
+
+	/**
+	 * Starts a server answering the search of the project DemoWebTests.
+	 *
+	 * @throws Exception
+	 *             on starting the server.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				clientPorts.add(exchange.getRemoteAddress().getPort());
+				StringBuilder page = new StringBuilder("<html><body>");
+				for (int i = 0; i < 2000; i++) {
+					page.append("<a href=\"Other").append(i).append("\">Other</a>");
+				}
+				if (requests.incrementAndGet() > readyAfter) {
+					page.append("<a href=\"DemoWebTests\">DemoWebTests</a>");
+				}
+				page.append("</body></html>");
+				byte[] body = page.toString().getBytes(Charset.forName("UTF-8"));
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.close();
+			}
+		});
+		server.start();
+		probe = new FitNesseProbe();
+	}
+
+	/**
+	 * Stops the server.
+	 */
+	@After
+	public void tearDown() {
+		probe.shutdown();
+		server.stop(0);
+	}
+
+	/**
+	 * Tests the search on one kept alive connection.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testProbeReusesConnection() throws Exception {
+		assertTrue(probe.isProjectServed(getBaseUrl(), "DemoWebTests"));
+		assertFalse(probe.isProjectServed(getBaseUrl(), "Unknown"));
+		assertTrue(probe.isProjectServed(getBaseUrl(), "DemoWebTests"));
+		assertEquals(3, requests.get());
+		assertEquals(1, clientPorts.size());
+	}
+
+	/**
+	 * Tests waiting for a server which serves the project after some
+	 * requests.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testAwaitProjectServed() throws Exception {
+		readyAfter = 3;
+		assertTrue(probe.awaitProjectServed(getBaseUrl(), "DemoWebTests", 5000));
+		assertEquals(4, requests.get());
+		assertFalse(probe.awaitProjectServed("http://localhost:1/", "DemoWebTests", 100));
+	}
+
+	/**
+	 *
+	 * @return URL of the stub server.
+	 */
+	private String getBaseUrl() {
+		return "http://localhost:" + server.getAddress().getPort() + "/";
+	}
+
+}
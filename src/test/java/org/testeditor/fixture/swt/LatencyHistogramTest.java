@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+
+import org.junit.Test;
+import org.testeditor.util.CommandTimer;
+import org.testeditor.util.CommandTimer.Phase;
+import org.testeditor.util.LatencyHistogram;
+
+/**
+ * Module tests for the {@link LatencyHistogram} and the {@link CommandTimer}.
+ *
+ */
+public class LatencyHistogramTest {
+
+	/**
+	 * Tests the percentiles of a uniform distribution.
+	 */
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000000L);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000000L, histogram.getMin());
+		assertEquals(1000000000L, histogram.getMax());
+		assertWithin(500000000L, histogram.getValueAtPercentile(50));
+		assertWithin(950000000L, histogram.getValueAtPercentile(95));
+		assertWithin(990000000L, histogram.getValueAtPercentile(99));
+		assertEquals(1000000000L, histogram.getValueAtPercentile(100));
+	}
+
+	/**
+	 * Tests merging and draining.
+	 */
+	@Test
+	public void testAddAndDrain() {
+		LatencyHistogram first = new LatencyHistogram();
+		LatencyHistogram second = new LatencyHistogram();
+		first.record(10);
+		second.record(5000);
+		first.add(second);
+		assertEquals(2, first.getCount());
+		assertEquals(10, first.getMin());
+		assertEquals(5000, first.getMax());
+
+		LatencyHistogram drained = first.drain();
+		assertEquals(2, drained.getCount());
+		assertEquals(5010, drained.getTotal());
+		assertEquals(0, first.getCount());
+		assertEquals(0, first.getValueAtPercentile(50));
+	}
+
+	/**
+	 * Tests that the timer reports the called methods by name.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testCommandTimer() throws Exception {
+		CommandTimer timer = new CommandTimer();
+		Method method = SwtBotFixture.class.getMethod("clickButton", String.class);
+		timer.record(method, 2000000L);
+		timer.record(method, 4000000L);
+
+		Map<String, LatencyHistogram> commands = timer.drain();
+		assertEquals(1, commands.size());
+		assertEquals(2, commands.get("clickButton").getCount());
+		assertTrue(timer.drain().isEmpty());
+	}
+
+	/**
+	 * Tests that phases are recorded with the command they were added to.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testCommandTimerPhases() throws Exception {
+		CommandTimer timer = new CommandTimer();
+		Method method = SwtBotFixture.class.getMethod("clickButton", String.class);
+		timer.addPhase(Phase.READ, 7000000L);
+		timer.begin();
+		timer.addPhase(Phase.RESOLVE, 1000L);
+		timer.addPhase(Phase.READ, 3000000L);
+		timer.record(method, 4000000L);
+
+		Map<String, Map<String, LatencyHistogram>> phases = timer.drainPhases();
+		assertEquals(2, phases.get("clickButton").size());
+		assertEquals(1000L, phases.get("clickButton").get("resolve").getTotal());
+		assertEquals(3000000L, phases.get("clickButton").get("read").getTotal());
+		assertTrue(timer.drainPhases().isEmpty());
+	}
+
+	/**
+	 *
+	 * @param expected
+	 *            value
+	 * @param actual
+	 *            value, expected within the precision of the histogram.
+	 */
+	private void assertWithin(long expected, long actual) {
+		assertTrue(actual + " not near " + expected, Math.abs(actual - expected) <= expected * 0.04);
+	}
+
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.testeditor.fixture.core.elementlist.ElementListService;
+import org.testeditor.fixture.core.exceptions.ElementKeyNotFoundException;
+
+/**
+ * Module tests for the {@link LocatorCache}.
+ *
+ */
+public class LocatorCacheTest {
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	/**
+	 * Element list with one key that records the keys asked for.
+	 */
+	private static class CountingElementList extends ElementListService {
+
+		private final List<String> lookups = Collections.synchronizedList(new ArrayList<String>());
+
+		@Override
+		public String getValue(String elementKey) throws ElementKeyNotFoundException {
+			lookups.add(elementKey);
+			if (elementKey.equals("okButton")) {
+				return "ID::ok";
+			}
+			if (elementKey.equals("emptyButton")) {
+				return null;
+			}
+			throw new ElementKeyNotFoundException(elementKey);
+		}
+	}
+
+	/**
+	 * Tests the detection of literal locators.
+	 */
+	@Test
+	public void testIsLiteral() {
+		assertTrue(LocatorCache.isLiteral("ID::okButton"));
+		assertTrue(LocatorCache.isLiteral("TEXT::OK"));
+		assertTrue(LocatorCache.isLiteral("REGEX::O.*"));
+		assertFalse(LocatorCache.isLiteral("okButton"));
+		assertFalse(LocatorCache.isLiteral("id::okButton"));
+	}
+
+	/**
+	 * Tests that keys are passed through without an element list.
+	 */
+	@Test
+	public void testWithoutElementList() {
+		LocatorCache cache = new LocatorCache(null);
+		assertEquals("okButton", cache.getLocator("okButton"));
+		assertEquals("ID::okButton", cache.getLocator("ID::okButton"));
+	}
+
+	/**
+	 * Tests that the element list is asked once per key, for found and for
+	 * missing keys, and never for literal locators. A key without value is
+	 * passed through like a missing one.
+	 */
+	@Test
+	public void testLookUpOncePerKey() {
+		CountingElementList elementList = new CountingElementList();
+		LocatorCache cache = new LocatorCache(elementList);
+		for (int i = 0; i < 3; i++) {
+			assertEquals("ID::ok", cache.getLocator("okButton"));
+			assertEquals("cancelButton", cache.getLocator("cancelButton"));
+			assertEquals("emptyButton", cache.getLocator("emptyButton"));
+			assertEquals("ID::okButton", cache.getLocator("ID::okButton"));
+		}
+		assertEquals(Arrays.asList("okButton", "cancelButton", "emptyButton"), elementList.lookups);
+	}
+
+	/**
+	 * Tests that a new element list of the fixture replaces the cached
+	 * locators of the old one.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testSetElementlistInvalidatesCache() throws Exception {
+		FakeSwtBotAgent agent = new FakeSwtBotAgent(true);
+		try {
+			File first = tempFolder.newFile("first.conf");
+			Files.write(first.toPath(), Arrays.asList("okButton=ID::first"), Charset.forName("UTF-8"));
+			File second = tempFolder.newFile("second.conf");
+			Files.write(second.toPath(), Arrays.asList("okButton=ID::second", "newButton=ID::new"),
+					Charset.forName("UTF-8"));
+			SwtBotFixture swtBotFixture = new SwtBotFixture();
+			swtBotFixture.setAgentPort(Integer.toString(agent.getPort()));
+
+			swtBotFixture.setElementlist(first.getAbsolutePath());
+			assertTrue(swtBotFixture.clickButton("okButton"));
+			assertTrue(swtBotFixture.clickButton("newButton"));
+			swtBotFixture.setElementlist(second.getAbsolutePath());
+			assertTrue(swtBotFixture.clickButton("okButton"));
+			assertTrue(swtBotFixture.clickButton("newButton"));
+
+			assertEquals(Arrays.asList("clickButton;ID::first", "clickButton;newButton", "clickButton;ID::second",
+					"clickButton;ID::new"), agent.getMessages());
+		} finally {
+			agent.close();
+		}
+	}
+
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.testeditor.util.LogOutputStream;
+
+/**
+ * Module tests for the {@link LogOutputStream}.
+ *
+ */
+public class LogOutputStreamTest {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final Logger logger = Logger.getLogger(LogOutputStreamTest.class);
+	private final List<String> messages = new ArrayList<String>();
+	private final AppenderSkeleton appender = new AppenderSkeleton() {
+		@Override
+		protected void append(LoggingEvent event) {
+			messages.add(event.getRenderedMessage());
+		}
+
+		@Override
+		public void close() {
+		}
+
+		@Override
+		public boolean requiresLayout() {
+			return false;
+		}
+	};
+
+	/**
+	 * Captures the messages of the logger.
+	 */
+	@Before
+	public void setUp() {
+		logger.addAppender(appender);
+		logger.setLevel(Level.INFO);
+	}
+
+	/**
+	 * Removes the capture.
+	 */
+	@After
+	public void tearDown() {
+		logger.removeAppender(appender);
+	}
+
+	/**
+	 * Tests that lines are logged when complete and an incomplete line is
+	 * kept by flush and logged by close.
+	 */
+	@Test
+	public void testLines() {
+		LogOutputStream out = new LogOutputStream(logger, Level.INFO);
+		byte[] text = "first\r\nsecond\nthi".getBytes(UTF_8);
+		out.write(text, 0, text.length);
+		out.flush();
+		text = "rd".getBytes(UTF_8);
+		out.write(text, 0, text.length);
+		assertEquals(2, messages.size());
+		out.close();
+		assertEquals("[first, second, third]", messages.toString());
+	}
+
+	/**
+	 * Tests that a long line is split between characters, written in one
+	 * piece and byte by byte.
+	 */
+	@Test
+	public void testLongLineKeepsCharacters() {
+		StringBuilder line = new StringBuilder("x");
+		while (line.length() < 6000) {
+			// 3 bytes, so the split at 8192 bytes falls inside a character
+			line.append('\u20ac');
+		}
+		byte[] text = line.toString().getBytes(UTF_8);
+		LogOutputStream out = new LogOutputStream(logger, Level.INFO);
+		out.write(text, 0, text.length);
+		out.close();
+		for (byte b : text) {
+			out.write(b);
+		}
+		out.close();
+
+		assertEquals(6, messages.size());
+		for (int i = 0; i < messages.size(); i += 3) {
+			assertEquals(line.toString(), messages.get(i) + messages.get(i + 1) + messages.get(i + 2));
+			assertTrue(messages.get(i).getBytes(UTF_8).length <= 8192);
+		}
+		for (String message : messages) {
+			assertFalse(message.contains("\uFFFD"));
+		}
+	}
+
+}
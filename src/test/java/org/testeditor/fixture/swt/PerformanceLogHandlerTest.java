@@ -20,8 +20,11 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 
@@ -50,6 +53,7 @@ public class PerformanceLogHandlerTest {
 	public void init() {
 		new File("plotInput.xml").delete();
 		new File("jamonReport.html").delete();
+		new File("jamonReport.tsv").delete();
 	}
 
 	/**
@@ -174,6 +178,10 @@ public class PerformanceLogHandlerTest {
 			handler.logPerformanceData(testName);
 
 			assertTrue(new File("plotInput.xml").exists());
+			assertTrue(new File("jamonReport.tsv").exists());
+			assertFalse(new File("jamonReport.html").exists());
+
+			handler.writeJamonReport();
 			assertTrue(new File("jamonReport.html").exists());
 
 		} catch (Exception e) {
@@ -212,7 +220,12 @@ public class PerformanceLogHandlerTest {
 			handler.logPerformanceData(testName);
 
 			assertTrue(new File("plotInput.xml").exists());
-			assertTrue(new File("jamonReport.html").exists());
+			assertEquals(3, Files.readAllLines(Paths.get("jamonReport.tsv"), Charset.forName("UTF-8")).size());
+
+			handler.writeJamonReport();
+			String report = new String(Files.readAllBytes(Paths.get("jamonReport.html")), Charset.forName("UTF-8"));
+			assertTrue(report.contains("<h1>Testcase 3</h1>"));
+			assertEquals(report.indexOf("</html>"), report.lastIndexOf("</html>"));
 
 		} catch (Exception e) {
 			assertFalse(e.getMessage(), true);
@@ -220,4 +233,35 @@ public class PerformanceLogHandlerTest {
 
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Tests that the report is rendered from all lines of the record file,
+	 * including lines of other runs, and skips unreadable lines.
+	 * 
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void writeJamonReportFromRecordFile() throws Exception {
+		PerformanceLogHandler handler = new PerformanceLogHandler();
+		createsSomeDummyJamonData("labelX");
+		handler.logPerformanceData("Testcase 1");
+		Files.write(Paths.get("jamonReport.tsv"),
+				Arrays.asList("Earlier \"run\"\t1\ta<b\tms.\t2.0\t1.5\t3.0\t1.0\t2.0\t0.5\tNaN\tNaN\tNaN",
+						"Cut\t1\tlabel\tms.\t2.0",
+						"Bad number\t1\tlabel\tms.\t2.0\t1.5\t3.0\t1.0\t2.0\t0.5\t1.0\t1.0\tx",
+						"Escaped\\\\\\tname\t0"),
+				Charset.forName("UTF-8"), StandardOpenOption.APPEND);
+		createsSomeDummyJamonData("labelY");
+		handler.logPerformanceData("Testcase\n2");
+
+		handler.writeJamonReport();
+		String report = new String(Files.readAllBytes(Paths.get("jamonReport.html")), Charset.forName("UTF-8"));
+		assertTrue(report.indexOf("<h1>Testcase 1</h1>") < report.indexOf("<h1>Earlier &quot;run&quot;</h1>"));
+		assertTrue(report.indexOf("<h1>Earlier &quot;run&quot;</h1>") < report.indexOf("<h1>Testcase&#10;2</h1>"));
+		assertTrue(report, report.contains("<td>a&lt;b</td><td>ms.</td><td>2.0</td><td>1.5</td>"));
+		assertTrue(report.contains("<h1>Escaped\\&#9;name</h1>"));
+		assertFalse(report.contains("Cut"));
+		assertFalse(report.contains("Bad number"));
+	}
+
+}
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.testeditor.util.LatencyHistogram;
+import org.testeditor.util.PerformanceLogHandler;
+import org.testeditor.util.PerformanceSummary;
+import org.testeditor.util.PlotInputWriter;
+import org.w3c.dom.Document;
+
+/**
+ * Module tests for the {@link PlotInputWriter}.
+ *
+ */
+public class PlotInputWriterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Tests that appended testcases form a valid document.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testAppendCreatesReadableDocument() throws Exception {
+		File file = new File(folder.getRoot(), "plotInput.xml");
+		PlotInputWriter writer = new PlotInputWriter();
+		writer.append(file, "Testfall 1", "800.0");
+		writer.append(file, "Testfall \"2\" <&>", "2000.0");
+
+		assertEquals(2, readTestCases(file).size());
+		assertEquals("Testcase: testcase Name : Testfall \"2\" <&> Time : 2000.0", readTestCases(file).get(1));
+	}
+
+	/**
+	 * Tests appending to a file written by the DOM of the
+	 * {@link PerformanceLogHandler}.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testAppendToExistingDocument() throws Exception {
+		File file = new File(folder.getRoot(), "plotInput.xml");
+		Files.copy(new File("src/test/resources/plotInputTemplate.xml").toPath(), file.toPath());
+		new PlotInputWriter().append(file, "Testfall 2", "5000.0");
+
+		assertEquals(2, readTestCases(file).size());
+	}
+
+	/**
+	 * Tests that a file cut off during a write is repaired.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testRecoveryOfIncompleteFile() throws Exception {
+		File file = new File(folder.getRoot(), "plotInput.xml");
+		Files.write(file.toPath(), ("<?xml version=\"1.0\" encoding=\"UTF-8\"?><testsuite>"
+				+ "<testcase name=\"Testfall 1\" time=\"800\"/><testcase name=\"Test").getBytes(Charset
+				.forName("UTF-8")));
+		new PlotInputWriter().append(file, "Testfall 2", "5000.0");
+
+		assertEquals(2, readTestCases(file).size());
+	}
+
+	/**
+	 * Tests that fixtures appending to the same file at once keep the
+	 * document valid and lose no testcase.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testConcurrentAppends() throws Exception {
+		final File file = new File(folder.getRoot(), "plotInput.xml");
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService fixtures = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Void>> results = new ArrayList<Future<Void>>();
+			for (int i = 0; i < 4; i++) {
+				final int fixture = i;
+				results.add(fixtures.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						start.await();
+						// a writer per fixture, on its own view of the path
+						PlotInputWriter writer = new PlotInputWriter();
+						File path = new File(file.getParentFile(), "./" + file.getName());
+						for (int j = 0; j < 50; j++) {
+							writer.append(path, "Fixture " + fixture + " test " + j, "1.0");
+						}
+						return null;
+					}
+				}));
+			}
+			start.countDown();
+			for (Future<Void> result : results) {
+				result.get();
+			}
+		} finally {
+			fixtures.shutdown();
+		}
+
+		assertEquals(200, readTestCases(file).size());
+	}
+
+	/**
+	 * Tests the percentiles of the commands as plot series and in the suite
+	 * summary.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testCommandPercentiles() throws Exception {
+		Map<String, LatencyHistogram> commands = new TreeMap<String, LatencyHistogram>();
+		LatencyHistogram clickButton = new LatencyHistogram();
+		for (int i = 1; i <= 100; i++) {
+			clickButton.record(i * 1000000L);
+		}
+		commands.put("clickButton", clickButton);
+		File file = new File(folder.getRoot(), "plotInput.xml");
+		new PlotInputWriter().append(file, "Testfall 1", "5050.0", commands);
+
+		Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file);
+		XPath xpath = XPathFactory.newInstance().newXPath();
+		double p95 = (Double) xpath.evaluate("//command[@name='clickButton']/@p95", doc, XPathConstants.NUMBER);
+		assertEquals(95.0, p95, 3.0);
+		assertEquals("100", xpath.evaluate("//command[@name='clickButton']/@count", doc));
+		assertEquals(1, readTestCases(file).size());
+
+		PerformanceSummary summary = PerformanceSummary.forFile(new File(folder.getRoot(), "summary.json"));
+		summary.add(commands);
+		summary.add(commands);
+		String json = summary.toJson();
+		assertTrue(json, json.contains("\"tests\":2"));
+		assertTrue(json, json.contains("\"clickButton\":{\"count\":200,"));
+	}
+
+	/**
+	 *
+	 * @param file
+	 *            plot file.
+	 * @return the testcases parsed by the {@link PerformanceLogHandler}.
+	 * @throws Exception
+	 *             on parsing
+	 */
+	private List<String> readTestCases(File file) throws Exception {
+		PerformanceLogHandler handler = new PerformanceLogHandler();
+		handler.setFile(file);
+		handler.loadFile();
+		return handler.getTestCases();
+	}
+
+}
@@ -15,11 +15,25 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.testeditor.fixture.core.exceptions.StopTestException;
 
 /**
  * Module tests for the SWTBotFixture.
@@ -27,6 +41,9 @@ import org.junit.Test;
  */
 public class SWTBotFixtureTest {
 
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
 	@Test
 	public void testMarkForRunningApplication() throws Exception {
 		final Set<String> monitor = new HashSet<String>();
@@ -73,6 +90,128 @@ public class SWTBotFixtureTest {
 		assertTrue(monitor.contains("first finished"));
 	}
 
+	/**
+	 * Tests that a running application of one fixture doesn't block the launch
+	 * of a fixture with its own agent port and workspace.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testInstancesDoNotBlockEachOther() throws Exception {
+		SwtBotFixture first = new SwtBotFixture();
+		SwtBotFixture second = new SwtBotFixture();
+		second.setAgentPort("auto");
+		second.setWorkspacePath(tempFolder.newFolder().getAbsolutePath());
+		first.markApplicationStarted();
+		long start = System.currentTimeMillis();
+		second.waitUntilPreviousLaunchIsFinished();
+		assertTrue(System.currentTimeMillis() - start < 1000);
+		first.markApplicationStopped();
+	}
+
+	/**
+	 * Tests that fixtures sharing the agent port wait for each other.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testInstancesOnSamePortAreSerialized() throws Exception {
+		SwtBotFixture first = new SwtBotFixture();
+		final SwtBotFixture second = new SwtBotFixture();
+		second.setWorkspacePath(tempFolder.newFolder().getAbsolutePath());
+		first.markApplicationStarted();
+		final CountDownLatch launched = new CountDownLatch(1);
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					second.waitUntilPreviousLaunchIsFinished();
+					launched.countDown();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}).start();
+		assertFalse(launched.await(300, TimeUnit.MILLISECONDS));
+		first.markApplicationStopped();
+		assertTrue(launched.await(5, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Tests that a fixture waiting for the agent port of another fixture gives
+	 * up after the timeout without stopping the AUT of the other fixture or
+	 * releasing its port.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testForeignAutIsNotStopped() throws Exception {
+		FakeSwtBotAgent agent = new FakeSwtBotAgent(false);
+		System.setProperty("aut.resource.timeout", "200");
+		try {
+			SwtBotFixture first = new SwtBotFixture();
+			first.setAgentPort(Integer.toString(agent.getPort()));
+			first.markApplicationStarted();
+			for (int i = 0; i < 2; i++) {
+				SwtBotFixture other = new SwtBotFixture();
+				other.setAgentPort(Integer.toString(agent.getPort()));
+				other.setWorkspacePath(tempFolder.newFolder().getAbsolutePath());
+				try {
+					other.waitUntilPreviousLaunchIsFinished();
+					fail("launch on the port of a running AUT");
+				} catch (StopTestException e) {
+					assertTrue(agent.getMessages().isEmpty());
+				}
+				other.markApplicationStopped();
+			}
+			first.markApplicationStopped();
+		} finally {
+			System.clearProperty("aut.resource.timeout");
+			agent.close();
+		}
+	}
+
+	/**
+	 * Tests that a fixture without an application of its own sends no stop
+	 * command to the agent port, which may belong to another fixture.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testStopWithoutOwnAutSendsNoStop() throws Exception {
+		FakeSwtBotAgent agent = new FakeSwtBotAgent(false);
+		try {
+			SwtBotFixture swtBotFixture = new SwtBotFixture();
+			swtBotFixture.setAgentPort(Integer.toString(agent.getPort()));
+			assertEquals(Integer.valueOf(-1), swtBotFixture.stopApplicationAsync().get(5, TimeUnit.SECONDS));
+			assertTrue(swtBotFixture.tearDown());
+			assertTrue(agent.getMessages().isEmpty());
+		} finally {
+			agent.close();
+		}
+	}
+
+	/**
+	 * Tests the allocation of free agent ports per fixture.
+	 */
+	@Test
+	public void testAutoAgentPort() {
+		SwtBotFixture first = new SwtBotFixture();
+		SwtBotFixture second = new SwtBotFixture();
+		assertEquals(9090, first.getAgentPort());
+		first.setAgentPort("auto");
+		second.setAgentPort("auto");
+		assertTrue(first.getAgentPort() > 0);
+		assertFalse(first.getAgentPort() == 9090);
+		assertFalse(first.getAgentPort() == second.getAgentPort());
+		second.setAgentPort("9191");
+		assertEquals(9191, second.getAgentPort());
+	}
+
 	/**
 	 * Tests the tear Down operation.
 	 */
@@ -99,4 +238,389 @@ public class SWTBotFixtureTest {
 		assertFalse(userHomePath.equals(externalPath));
 	}
 
+	/**
+	 * Tests that a wait is sent as one message to an agent supporting server
+	 * side waits.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testWaitUntilInAgent() throws Exception {
+		FakeSwtBotAgent agent = new FakeSwtBotAgent(true);
+		try {
+			agent.announce(WaitCondition.WAIT_COMMAND);
+			SwtBotFixture swtBotFixture = new SwtBotFixture();
+			swtBotFixture.setAgentPort(Integer.toString(agent.getPort()));
+
+			assertTrue(swtBotFixture.waitUntilTextEquals("ID::name", "max", 5));
+			assertEquals(1, agent.getMessages().size());
+			assertEquals("waitUntil;textEquals;5000;ID::name;max", agent.getMessages().get(0));
+		} finally {
+			agent.close();
+		}
+	}
+
+	/**
+	 * Tests the polling of agents without server side waits.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testWaitUntilPollsOlderAgents() throws Exception {
+		for (boolean framed : new boolean[] { true, false }) {
+			FakeSwtBotAgent agent = new FakeSwtBotAgent(framed);
+			try {
+				final AtomicInteger polls = new AtomicInteger();
+				agent.setResponder(new FakeSwtBotAgent.Responder() {
+					@Override
+					public String reply(String message) {
+						return Boolean.toString(message.startsWith("isButtonEnabled") && polls.incrementAndGet() > 3);
+					}
+				});
+				SwtBotFixture swtBotFixture = new SwtBotFixture();
+				swtBotFixture.setAgentPort(Integer.toString(agent.getPort()));
+
+				assertTrue(swtBotFixture.waitUntilButtonEnabled("ID::ok", 5));
+				assertEquals(4, agent.getMessages().size());
+				assertEquals("isButtonEnabled;ID::ok", agent.getMessages().get(3));
+				assertFalse(swtBotFixture.waitUntilTextIsVisible("never", 0));
+			} finally {
+				agent.close();
+			}
+		}
+	}
+
+	/**
+	 * Tests that polled and fixed waits in a batch follow the commands queued
+	 * before them and that an error reply ends the polling.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testPolledWaitInBatchKeepsOrder() throws Exception {
+		FakeSwtBotAgent agent = new FakeSwtBotAgent(true);
+		try {
+			agent.script("isCheckBoxChecked", "ERROR widget not found");
+			SwtBotFixture swtBotFixture = new SwtBotFixture();
+			swtBotFixture.setAgentPort(Integer.toString(agent.getPort()));
+
+			swtBotFixture.startBatch();
+			swtBotFixture.clickButton("ID::first");
+			assertTrue(swtBotFixture.waitUntilButtonEnabled("ID::ok", 5));
+			swtBotFixture.clickButton("ID::second");
+			assertTrue(swtBotFixture.executeBatch());
+			assertEquals(Arrays.asList("clickButton;ID::first", "isButtonEnabled;ID::ok", "clickButton;ID::second"),
+					agent.getMessages());
+
+			try {
+				swtBotFixture.waitUntilCheckBoxChecked("ID::missing", 5);
+				fail("error of the agent ignored");
+			} catch (RuntimeException e) {
+				assertTrue(e.getMessage(), e.getMessage().contains("widget not found"));
+			}
+			assertEquals(4, agent.getMessages().size());
+
+			swtBotFixture.startBatch();
+			swtBotFixture.clickButton("ID::third");
+			assertTrue(swtBotFixture.waitUntilUiIdle("0"));
+			assertEquals("clickButton;ID::third", agent.getMessages().get(4));
+			assertTrue(swtBotFixture.executeBatch());
+		} finally {
+			agent.close();
+		}
+	}
+
+	/**
+	 * Tests that an idle wait ends with the reply of the agent and reports
+	 * the saved time.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testWaitUntilUiIdle() throws Exception {
+		FakeSwtBotAgent agent = new FakeSwtBotAgent(true);
+		try {
+			agent.announce("waitUntilUiIdle");
+			SwtBotFixture swtBotFixture = new SwtBotFixture();
+			swtBotFixture.setAgentPort(Integer.toString(agent.getPort()));
+
+			long start = System.nanoTime();
+			assertTrue(swtBotFixture.waitUntilUiIdle("3"));
+			assertTrue(System.nanoTime() - start < 2000000000L);
+			assertEquals("waitUntilUiIdle;3000", agent.getMessages().get(0));
+			assertTrue(swtBotFixture.getSavedWaitMillis() > 1000);
+			swtBotFixture.writePerformanceLog();
+			assertEquals(0, swtBotFixture.getSavedWaitMillis());
+		} finally {
+			agent.close();
+		}
+	}
+
+	/**
+	 * Tests that actions in the asynchronous mode return before their reply
+	 * and that a failed action is raised by the next check.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testAsyncActionErrorRaisedAtNextCheck() throws Exception {
+		FakeSwtBotAgent agent = new FakeSwtBotAgent(true);
+		try {
+			agent.setResponder(new FakeSwtBotAgent.Responder() {
+				@Override
+				public String reply(String message) {
+					if (message.equals("clickButton;ID::broken")) {
+						return "ERROR widget not found";
+					}
+					return "true";
+				}
+			});
+			SwtBotFixture swtBotFixture = new SwtBotFixture();
+			swtBotFixture.setAgentPort(Integer.toString(agent.getPort()));
+			swtBotFixture.startAsyncActions();
+
+			assertTrue(swtBotFixture.clickButton("ID::ok"));
+			assertTrue(swtBotFixture.clickButton("ID::broken"));
+			assertTrue(swtBotFixture.setTextById("ID::name", "value"));
+			try {
+				swtBotFixture.compareTextById("ID::name", "value");
+				fail("error of the asynchronous click not raised");
+			} catch (RuntimeException e) {
+				assertTrue(e.getMessage(), e.getMessage().contains("clickButton;ID::broken"));
+			}
+			assertEquals(Arrays.asList("clickButton;ID::ok", "clickButton;ID::broken", "setTextById;ID::name;value"),
+					agent.getMessages());
+
+			assertTrue(swtBotFixture.compareTextById("ID::name", "value"));
+			assertTrue(swtBotFixture.stopAsyncActions());
+		} finally {
+			agent.close();
+		}
+	}
+
+	/**
+	 * Tests that an asynchronous action answered with false is raised by the
+	 * tear down, if no other command follows it.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testAsyncActionFalseRaisedAtTearDown() throws Exception {
+		FakeSwtBotAgent agent = new FakeSwtBotAgent(true);
+		try {
+			agent.setResponder(new FakeSwtBotAgent.Responder() {
+				@Override
+				public String reply(String message) {
+					if (message.startsWith("clickContextMenu")) {
+						return "false";
+					}
+					return "true";
+				}
+			});
+			SwtBotFixture swtBotFixture = new SwtBotFixture();
+			swtBotFixture.setAgentPort(Integer.toString(agent.getPort()));
+			swtBotFixture.startAsyncActions();
+
+			assertTrue(swtBotFixture.clickButton("ID::ok"));
+			assertTrue(swtBotFixture.clickContextMenu("Delete"));
+			try {
+				swtBotFixture.tearDown();
+				fail("false reply of the asynchronous action not raised");
+			} catch (RuntimeException e) {
+				assertTrue(e.getMessage(), e.getMessage().startsWith("1 asynchronous message(s) failed"));
+				assertTrue(e.getMessage(), e.getMessage().contains("clickContextMenu"));
+			}
+		} finally {
+			agent.close();
+		}
+	}
+
+	/**
+	 * Tests that a batch queues actions and rejects checks.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testBatchRejectsChecks() throws Exception {
+		FakeSwtBotAgent agent = new FakeSwtBotAgent(true);
+		try {
+			SwtBotFixture swtBotFixture = new SwtBotFixture();
+			swtBotFixture.setAgentPort(Integer.toString(agent.getPort()));
+			swtBotFixture.startBatch();
+			assertTrue(swtBotFixture.clickButton("ID::ok"));
+			try {
+				swtBotFixture.isButtonEnabled("ID::ok");
+				fail("check accepted in a batch");
+			} catch (RuntimeException e) {
+				assertTrue(e.getMessage(), e.getMessage().contains("isButtonEnabled"));
+			}
+			assertTrue(agent.getMessages().isEmpty());
+			assertTrue(swtBotFixture.executeBatch());
+			assertEquals(Arrays.asList("clickButton;ID::ok"), agent.getMessages());
+		} finally {
+			agent.close();
+		}
+	}
+
+	/**
+	 * Tests the escalation from waiting over destroy to destroy forcibly.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testAwaitTerminationEscalates() throws Exception {
+		final List<String> calls = new ArrayList<String>();
+		final CountDownLatch killed = new CountDownLatch(1);
+		Process stubborn = new Process() {
+			@Override
+			public int waitFor() throws InterruptedException {
+				killed.await();
+				return 137;
+			}
+
+			@Override
+			public int exitValue() {
+				if (killed.getCount() > 0) {
+					throw new IllegalThreadStateException();
+				}
+				return 137;
+			}
+
+			@Override
+			public void destroy() {
+				calls.add("destroy");
+			}
+
+			@Override
+			public Process destroyForcibly() {
+				calls.add("destroyForcibly");
+				killed.countDown();
+				return this;
+			}
+
+			@Override
+			public OutputStream getOutputStream() {
+				return null;
+			}
+
+			@Override
+			public InputStream getInputStream() {
+				return null;
+			}
+
+			@Override
+			public InputStream getErrorStream() {
+				return null;
+			}
+		};
+		assertEquals(137, SwtBotFixture.awaitTermination(stubborn, true, 50, 50));
+		assertEquals(Arrays.asList("destroy", "destroyForcibly"), calls);
+		assertEquals(-1, SwtBotFixture.awaitTermination(null, true, 50, 50));
+	}
+
+	/**
+	 * Tests that an asynchronous stop without AUT completes.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testStopApplicationAsync() throws Exception {
+		SwtBotFixture swtBotFixture = new SwtBotFixture();
+		swtBotFixture.setAgentPort("auto");
+		swtBotFixture.markApplicationStarted();
+		Future<Integer> stop = swtBotFixture.stopApplicationAsync();
+		assertEquals(Integer.valueOf(-1), stop.get(5, TimeUnit.SECONDS));
+		long start = System.currentTimeMillis();
+		swtBotFixture.waitUntilPreviousLaunchIsFinished();
+		assertTrue(System.currentTimeMillis() - start < 1000);
+	}
+
+
+	/**
+	 * Tests that another fixture with the same agent port and workspace
+	 * launches only after the AUT stopped by a tear down has terminated.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testLaunchWaitsForStopOfOtherFixture() throws Exception {
+		FakeSwtBotAgent agent = new FakeSwtBotAgent(false);
+		try {
+			final CountDownLatch terminated = new CountDownLatch(1);
+			String workspace = tempFolder.newFolder().getAbsolutePath();
+			SwtBotFixture first = new SwtBotFixture();
+			first.setAgentPort(Integer.toString(agent.getPort()));
+			first.setWorkspacePath(workspace);
+			first.setProcess(new Process() {
+				@Override
+				public int waitFor() throws InterruptedException {
+					terminated.await();
+					return 0;
+				}
+
+				@Override
+				public int exitValue() {
+					if (terminated.getCount() > 0) {
+						throw new IllegalThreadStateException();
+					}
+					return 0;
+				}
+
+				@Override
+				public void destroy() {
+					terminated.countDown();
+				}
+
+				@Override
+				public OutputStream getOutputStream() {
+					return null;
+				}
+
+				@Override
+				public InputStream getInputStream() {
+					return null;
+				}
+
+				@Override
+				public InputStream getErrorStream() {
+					return null;
+				}
+			});
+			first.markApplicationStarted();
+			assertTrue(first.tearDown());
+
+			final SwtBotFixture second = new SwtBotFixture();
+			second.setAgentPort(Integer.toString(agent.getPort()));
+			second.setWorkspacePath(workspace);
+			final CountDownLatch launched = new CountDownLatch(1);
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						second.startApplication(new File(tempFolder.getRoot(), "missing").getPath());
+					} catch (Exception e) {
+						// the executable doesn't exist
+						launched.countDown();
+					}
+				}
+			}).start();
+			assertFalse(launched.await(300, TimeUnit.MILLISECONDS));
+			terminated.countDown();
+			assertTrue(launched.await(5, TimeUnit.SECONDS));
+			second.markApplicationStopped();
+		} finally {
+			agent.close();
+		}
+	}
+
 }
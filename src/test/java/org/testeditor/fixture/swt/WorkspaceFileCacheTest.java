@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Module tests for the {@link WorkspaceFileCache}.
+ *
+ */
+public class WorkspaceFileCacheTest {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Tests that lines are split like {@link Files#readAllLines(Path, Charset)}.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testLinesLikeReadAllLines() throws Exception {
+		Path file = folder.newFile("content.txt").toPath();
+		Files.write(file, "Line1: foo, B\u00e4r \r\nLine2\rLine3\n\nAnd a Third one".getBytes(UTF_8));
+		WorkspaceFileCache cache = new WorkspaceFileCache(UTF_8);
+
+		List<String> expected = Files.readAllLines(file, UTF_8);
+		WorkspaceFileCache.IndexedFile indexed = cache.get(file);
+		assertEquals(expected.size(), indexed.getLineCount());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i), indexed.getLine(i));
+		}
+	}
+
+	/**
+	 * Tests that an unchanged file is read once and a changed file again.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testReadAgainAfterChange() throws Exception {
+		Path file = folder.newFile("content.txt").toPath();
+		Files.write(file, "first".getBytes(UTF_8));
+		FileTime past = FileTime.fromMillis(System.currentTimeMillis() - 60000);
+		Files.setLastModifiedTime(file, past);
+		WorkspaceFileCache cache = new WorkspaceFileCache(UTF_8);
+
+		WorkspaceFileCache.IndexedFile first = cache.get(file);
+		assertSame(first, cache.get(file));
+
+		Files.write(file, "other".getBytes(UTF_8));
+		Files.setLastModifiedTime(file, past);
+		assertSame(first, cache.get(file));
+		cache.invalidate(folder.getRoot().toPath());
+		assertEquals("other", cache.get(file).getLine(0));
+
+		Files.write(file, "changed".getBytes(UTF_8));
+		assertNotSame(first, cache.get(file));
+		assertEquals("changed", cache.get(file).getLine(0));
+	}
+
+}
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Module tests for the {@link WorkspaceFileOperations}.
+ *
+ */
+public class WorkspaceFileOperationsTest {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Tests that a copy merges into an existing target and overwrites files.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testCopyMergesAndOverwrites() throws Exception {
+		Path source = folder.newFolder("source").toPath();
+		for (int i = 0; i < 20; i++) {
+			Path page = Files.createDirectories(source.resolve("Suite").resolve("Page" + i));
+			Files.write(page.resolve("content.txt"), ("content " + i).getBytes(UTF_8));
+			Files.write(page.resolve("properties.xml"), "<properties/>".getBytes(UTF_8));
+		}
+		Path target = folder.newFolder("target").toPath();
+		Files.createDirectories(target.resolve("Suite").resolve("Page3"));
+		Files.write(target.resolve("Suite").resolve("Page3").resolve("content.txt"), "old and longer".getBytes(UTF_8));
+		Files.write(target.resolve("Suite").resolve("extra.txt"), "extra".getBytes(UTF_8));
+
+		WorkspaceFileOperations.Progress progress = new WorkspaceFileOperations().copy(source, target);
+
+		assertEquals(40, progress.getFiles());
+		assertEquals(22, progress.getDirectories());
+		assertEquals("content 3",
+				new String(Files.readAllBytes(target.resolve("Suite").resolve("Page3").resolve("content.txt")), UTF_8));
+		assertTrue(Files.exists(target.resolve("Suite").resolve("Page19").resolve("properties.xml")));
+		assertTrue(Files.exists(target.resolve("Suite").resolve("extra.txt")));
+	}
+
+	/**
+	 * Tests the recursive delete.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testDeleteTree() throws Exception {
+		Path root = folder.newFolder("root").toPath();
+		for (int i = 0; i < 5; i++) {
+			Path dir = Files.createDirectories(root.resolve("a" + i).resolve("b"));
+			Files.write(dir.resolve("file.txt"), new byte[] { 1, 2, 3 });
+		}
+
+		WorkspaceFileOperations.Progress progress = new WorkspaceFileOperations().delete(root);
+
+		assertFalse(Files.exists(root));
+		assertEquals(5, progress.getFiles());
+		assertEquals(11, progress.getDirectories());
+	}
+
+}
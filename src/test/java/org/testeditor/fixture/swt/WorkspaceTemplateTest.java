@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright (c) 2012 - 2015 Signal Iduna Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Signal Iduna Corporation - initial API and implementation
+ * akquinet AG
+ *******************************************************************************/
+package org.testeditor.fixture.swt;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Module tests for the {@link WorkspaceTemplate}.
+ *
+ */
+public class WorkspaceTemplateTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Tests that a reset restores changed, deleted and added files and leaves
+	 * an untouched workspace alone.
+	 *
+	 * @throws Exception
+	 *             on test failure
+	 */
+	@Test
+	public void testDifferentialRestore() throws Exception {
+		WorkspaceTemplate template = new WorkspaceTemplate("/DemoWebTests.zip");
+		Path workspace = folder.getRoot().toPath().resolve("ws");
+		assertTrue(template.restore(workspace) > 100);
+		Path metaData = workspace.resolve("DemoWebTests").resolve("MetaData.properties");
+		byte[] original = Files.readAllBytes(metaData);
+		assertTrue(Files.exists(workspace.resolve("DemoWebTests.zip")));
+
+		assertEquals(0, template.restore(workspace));
+
+		Files.write(metaData, "changed".getBytes("UTF-8"));
+		Files.delete(workspace.resolve(".repo").resolve("testrepo").resolve("conf").resolve("authz"));
+		Files.createDirectories(workspace.resolve("new").resolve("dir"));
+		Files.write(workspace.resolve("new").resolve("dir").resolve("file.txt"), new byte[] { 1 });
+
+		assertEquals(4, template.restore(workspace));
+		assertArrayEquals(original, Files.readAllBytes(metaData));
+		assertTrue(Files.exists(workspace.resolve(".repo").resolve("testrepo").resolve("conf").resolve("authz")));
+		assertFalse(Files.exists(workspace.resolve("new")));
+	}
+
+}